@@ -27,6 +27,7 @@ import com.kryptnostic.rhizome.pods.JettyContainerPod;
 import com.kryptnostic.rhizome.pods.LoamPod;
 import com.kryptnostic.rhizome.pods.MetricsPod;
 import com.kryptnostic.rhizome.startup.Requirement;
+import com.openlattice.postgres.streams.OpenCursorsServlet;
 import io.prometheus.client.CollectorRegistry;
 import org.apache.commons.lang3.StringUtils;
 import org.eclipse.jetty.servlet.DefaultServlet;
@@ -144,6 +145,14 @@ public class Rhizome implements WebApplicationInitializer {
         adminServlet.addMapping( "/admin/*" );
         adminServlet.setInitParameter( "show-jvm-metrics", "true" );
 
+        /*
+         * Setup open cursors servlet
+         */
+
+        ServletRegistration.Dynamic cursorsServlet = servletContext.addServlet( "cursors", OpenCursorsServlet.class );
+        cursorsServlet.setLoadOnStartup( 1 );
+        cursorsServlet.addMapping( "/admin/cursors" );
+
         /*
          * Setup prometheus servlet
          */
@@ -1,6 +1,7 @@
 package com.kryptnostic.rhizome.pods;
 
 import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.SharedMetricRegistries;
 import com.codahale.metrics.health.HealthCheckRegistry;
 import com.kryptnostic.rhizome.configuration.RhizomeConfiguration;
 import com.ryantenney.metrics.spring.config.annotation.EnableMetrics;
@@ -24,9 +25,15 @@ import java.net.UnknownHostException;
 @EnableMetrics( proxyTargetClass = true )
 @Import( { AsyncPod.class, ConfigurationPod.class } )
 public class MetricsPod implements MetricsConfigurer {
+    /**
+     * Name under which the metric registry is shared, so that components not managed by spring, such as mapstores,
+     * can report into the same registry.
+     */
+    public static final String METRIC_REGISTRY_NAME = "rhizome";
 
     private static final Logger              logger              = LoggerFactory.getLogger( MetricsPod.class );
-    private static final MetricRegistry      metricRegistry      = new MetricRegistry();
+    private static final MetricRegistry      metricRegistry      = SharedMetricRegistries
+            .getOrCreate( METRIC_REGISTRY_NAME );
     private static final HealthCheckRegistry healthCheckRegistry = new HealthCheckRegistry();
 
     @Inject
@@ -61,6 +61,7 @@ public class JdbcPod {
 
             hc.setHealthCheckRegistry( healthCheckRegistry );
             hc.setMetricRegistry( metricRegistry );
+            DataSourceManager.applyStatementCacheDefaults( hc );
 
             logger.info( "JDBC URL = {}", hc.getJdbcUrl() );
 
@@ -70,7 +71,7 @@ public class JdbcPod {
         }
     }
 
-    @Bean
+    @Bean( destroyMethod = "shutdown" )
     public DataSourceManager dataSourceManager() {
         return new DataSourceManager(
                 rhizomeConfiguration.getDatasourceConfigurations(),
@@ -0,0 +1,212 @@
+/*
+ * Copyright (C) 2021. OpenLattice, Inc
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * You can contact the owner of the copyright at support@openlattice.com
+ *
+ */
+
+package com.openlattice.postgres;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.OptionalInt;
+import java.util.UUID;
+import java.util.function.Function;
+
+/**
+ * Maps values of the distribution column of a hash distributed citus table to the shard that stores them.
+ * <p>
+ * The hash ranges of the shards are read from {@code pg_dist_shard} and cached for {@code ttlMillis}, and values are
+ * hashed on the client using {@link PostgresHash}. Before the map is used, the client side hash of a sample value is
+ * compared with {@code worker_hash} on the server. If they don't match, or the type of the distribution column isn't
+ * supported, every value is mapped to {@link #UNKNOWN_SHARD}.
+ *
+ * @author Matthew Tamayo-Rios &lt;matthew@openlattice.com&gt;
+ */
+public class CitusShardMap {
+    public static final long UNKNOWN_SHARD      = -1L;
+    public static final long DEFAULT_TTL_MILLIS = 300_000L;
+
+    private static final Logger logger = LoggerFactory.getLogger( CitusShardMap.class );
+
+    private static final String SHARDS_SQL = "SELECT shardid, shardminvalue::integer, shardmaxvalue::integer "
+            + "FROM pg_catalog.pg_dist_shard WHERE logicalrelid = ?::regclass ORDER BY shardminvalue::integer";
+
+    private final HikariDataSource hds;
+    private final String           table;
+    private final PostgresDatatype datatype;
+    private final long             ttlMillis;
+
+    private volatile Shards  shards;
+    private volatile long    nextRefresh = 0;
+    private volatile boolean supported;
+
+    public CitusShardMap( HikariDataSource hds, String table, PostgresDatatype datatype ) {
+        this( hds, table, datatype, DEFAULT_TTL_MILLIS );
+    }
+
+    public CitusShardMap( HikariDataSource hds, String table, PostgresDatatype datatype, long ttlMillis ) {
+        this.hds = hds;
+        this.table = table;
+        this.datatype = datatype;
+        this.ttlMillis = ttlMillis;
+        this.supported = PostgresHash.isSupported( datatype );
+        if ( !supported ) {
+            logger.warn( "Distribution column of table {} has unsupported type {}, so keys won't be grouped by shard.",
+                    table,
+                    datatype );
+        }
+    }
+
+    /**
+     * @return The id of the shard storing {@code value} or {@link #UNKNOWN_SHARD}.
+     */
+    public long getShard( Object value ) {
+        final Shards current = getShards();
+        if ( current == null || value == null ) {
+            return UNKNOWN_SHARD;
+        }
+
+        final OptionalInt hash = PostgresHash.hash( datatype, value );
+        return hash.isPresent() ? current.getShard( hash.getAsInt() ) : UNKNOWN_SHARD;
+    }
+
+    /**
+     * Groups items by the shard of their distribution column value, keeping the order of items within each group.
+     * Items whose shard is unknown are grouped together.
+     */
+    public <T> Collection<List<T>> group( Collection<T> items, Function<? super T, Object> distributionValue ) {
+        if ( getShards() == null ) {
+            return List.of( new ArrayList<>( items ) );
+        }
+
+        final Map<Long, List<T>> groups = new LinkedHashMap<>();
+        for ( T item : items ) {
+            groups.computeIfAbsent( getShard( distributionValue.apply( item ) ), shard -> new ArrayList<>() )
+                    .add( item );
+        }
+        return groups.values();
+    }
+
+    public boolean isSupported() {
+        return supported;
+    }
+
+    private Shards getShards() {
+        if ( supported && System.currentTimeMillis() >= nextRefresh ) {
+            refresh();
+        }
+        return supported ? shards : null;
+    }
+
+    private synchronized void refresh() {
+        if ( System.currentTimeMillis() < nextRefresh ) {
+            return;
+        }
+        //Failed refreshes are also retried only once the ttl has passed, instead of on every call.
+        nextRefresh = System.currentTimeMillis() + ttlMillis;
+
+        try ( Connection connection = hds.getConnection() ) {
+            if ( shards == null && !verifyHash( connection ) ) {
+                supported = false;
+                return;
+            }
+            shards = loadShards( connection );
+            logger.debug( "Loaded {} shards of table {}.", shards.ids.length, table );
+        } catch ( SQLException e ) {
+            logger.error( "Unable to load shards of table {}.", table, e );
+        }
+    }
+
+    private Shards loadShards( Connection connection ) throws SQLException {
+        final List<long[]> rows = new ArrayList<>();
+        try ( PreparedStatement ps = connection.prepareStatement( SHARDS_SQL ) ) {
+            ps.setString( 1, table );
+            try ( ResultSet rs = ps.executeQuery() ) {
+                while ( rs.next() ) {
+                    rows.add( new long[] { rs.getLong( 1 ), rs.getInt( 2 ), rs.getInt( 3 ) } );
+                }
+            }
+        }
+
+        final Shards loaded = new Shards( rows.size() );
+        for ( int i = 0; i < rows.size(); ++i ) {
+            loaded.ids[ i ] = rows.get( i )[ 0 ];
+            loaded.mins[ i ] = (int) rows.get( i )[ 1 ];
+            loaded.maxs[ i ] = (int) rows.get( i )[ 2 ];
+        }
+        return loaded;
+    }
+
+    private boolean verifyHash( Connection connection ) throws SQLException {
+        final Object sample = getSampleValue();
+        try ( PreparedStatement ps = connection.prepareStatement( "SELECT worker_hash(?::" + datatype.sql() + ")" ) ) {
+            ps.setObject( 1, sample );
+            try ( ResultSet rs = ps.executeQuery() ) {
+                rs.next();
+                final int expected = rs.getInt( 1 );
+                final int actual = PostgresHash.hash( datatype, sample ).getAsInt();
+                if ( expected != actual ) {
+                    logger.warn( "Client side hash {} of {} doesn't match worker hash {}, so keys of table {} won't be "
+                            + "grouped by shard.", actual, sample, expected, table );
+                }
+                return expected == actual;
+            }
+        }
+    }
+
+    private Object getSampleValue() {
+        if ( datatype == PostgresDatatype.UUID ) {
+            return new UUID( 0x0123456789abcdefL, 0xfedcba9876543210L );
+        } else if ( datatype == PostgresDatatype.TEXT ) {
+            return "rhizome-shard-sample";
+        } else if ( datatype == PostgresDatatype.BIGINT ) {
+            return -0x123456789L;
+        } else {
+            return 42;
+        }
+    }
+
+    private static final class Shards {
+        private final long[] ids;
+        private final int[]  mins;
+        private final int[]  maxs;
+
+        private Shards( int size ) {
+            this.ids = new long[ size ];
+            this.mins = new int[ size ];
+            this.maxs = new int[ size ];
+        }
+
+        private long getShard( int hash ) {
+            final int index = Arrays.binarySearch( mins, hash );
+            final int shard = index >= 0 ? index : -index - 2;
+            return shard >= 0 && hash <= maxs[ shard ] ? ids[ shard ] : UNKNOWN_SHARD;
+        }
+    }
+}
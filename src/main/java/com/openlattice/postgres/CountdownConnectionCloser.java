@@ -22,53 +22,30 @@ package com.openlattice.postgres;
 
 import java.sql.Connection;
 import java.sql.ResultSet;
-import java.sql.SQLException;
-import java.util.concurrent.CountDownLatch;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
 
 /**
+ * Closes a connection once it has been counted down a fixed number of times. Kept for compatibility, new code should
+ * use {@link RefCountedCloser} directly.
+ *
  * @author Matthew Tamayo-Rios &lt;matthew@openlattice.com&gt;
  */
 @Deprecated( since = "Use Base/PostgresIterable instead" )
 public class CountdownConnectionCloser {
-    private static final ExecutorService executor = Executors.newCachedThreadPool();
-    private static final Logger          logger   = LoggerFactory.getLogger( CountdownConnectionCloser.class );
-    private final CountDownLatch latch;
+    private final RefCountedCloser closer;
 
     public CountdownConnectionCloser( ResultSet rs, Connection connection, int count ) {
-        this.latch = new CountDownLatch( count );
-        executor.execute( () -> {
-            try {
-                latch.await();
-                rs.close();
-                connection.close();
-            } catch ( InterruptedException e ) {
-                logger.error( "Interrupted while waiting to close connection.", e );
-            } catch ( SQLException e ) {
-                logger.error( "Error while closing connection.", e );
-            }
-        } );
+        this.closer = new RefCountedCloser( count, rs, connection );
     }
 
     public CountdownConnectionCloser( Connection connection, int count ) {
-        this.latch = new CountDownLatch( count );
-        executor.execute( () -> {
-            try {
-                latch.await();
-                connection.close();
-            } catch ( InterruptedException e ) {
-                logger.error( "Interrupted while waiting to close connection.", e );
-            } catch ( SQLException e ) {
-                logger.error( "Error while closing connection.", e );
-            }
-        } );
+        this.closer = new RefCountedCloser( count, connection );
     }
 
     public void countDown() {
-        latch.countDown();
-        logger.info( "Latch value: {}", latch.getCount() );
+        closer.release();
+    }
+
+    RefCountedCloser getCloser() {
+        return closer;
     }
 }
@@ -34,11 +34,19 @@ import org.slf4j.LoggerFactory;
 public class KeyIterator<T> implements Iterator<T> {
     private static final Logger logger = LoggerFactory.getLogger( KeyIterator.class );
     private final ResultSet                 rs;
-    private final CountdownConnectionCloser closer;
+    private final RefCountedCloser          closer;
     private final SqlFunction<ResultSet, T> mapper;
     private       boolean                   next;
+    private       boolean                   released;
 
     public KeyIterator( ResultSet rs, CountdownConnectionCloser closer, SqlFunction<ResultSet, T> mapper ) {
+        this( rs, closer.getCloser(), mapper );
+    }
+
+    /**
+     * @param closer Closer for the resources shared by this iterator, which releases one reference once exhausted.
+     */
+    public KeyIterator( ResultSet rs, RefCountedCloser closer, SqlFunction<ResultSet, T> mapper ) {
         this.closer = closer;
         this.rs = rs;
         this.mapper = mapper;
@@ -77,8 +85,9 @@ public class KeyIterator<T> implements Iterator<T> {
     }
 
     public void countDownIfExhausted() {
-        if ( !next ) {
-            closer.countDown();
+        if ( !next && !released ) {
+            released = true;
+            closer.release();
         }
     }
 }
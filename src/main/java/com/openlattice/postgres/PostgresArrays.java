@@ -94,6 +94,21 @@ public class PostgresArrays {
         return connection.createArrayOf( PostgresDatatype.SMALLINT.sql(), values.toArray( new Short[ 0 ] ) );
     }
 
+    /**
+     * Creates a Postgres array of the specified datatype. Prefer the type specific methods above when the element type
+     * is known at compile time.
+     *
+     * @param connection The JDBC connection to the database.
+     * @param datatype The datatype of the elements of the array.
+     * @param values The elements of the array.
+     * @return A postgres array of the values in order.
+     * @throws SQLException If something goes wrong.
+     */
+    public static Array createArray( Connection connection, PostgresDatatype datatype, Object[] values )
+            throws SQLException {
+        return connection.createArrayOf( datatype.sql(), values );
+    }
+
     public static String[] getTextArray( ResultSet rs, String column ) throws SQLException {
         return (String[]) rs.getArray( column ).getArray();
     }
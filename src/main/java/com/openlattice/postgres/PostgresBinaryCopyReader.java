@@ -0,0 +1,245 @@
+/*
+ * Copyright (C) 2021. OpenLattice, Inc
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * You can contact the owner of the copyright at support@openlattice.com
+ *
+ */
+
+package com.openlattice.postgres;
+
+import org.postgresql.PGConnection;
+import org.postgresql.copy.PGCopyInputStream;
+
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.time.temporal.ChronoUnit;
+import java.util.Arrays;
+import java.util.UUID;
+
+/**
+ * Streams the results of a query using {@code COPY (...) TO STDOUT (FORMAT binary)} and decodes tuples directly from
+ * the postgres binary tuple format, without going through a JDBC result set.
+ * <p>
+ * Call {@link #next()} to advance to each tuple and read its fields with the typed getters, which take zero-based
+ * field indexes in the order of the select list. Field values are only valid until the next call to {@link #next()}.
+ * Getters must match the type of the column, see {@link PostgresBinaryCopyWriter} for the supported types.
+ *
+ * @author Matthew Tamayo-Rios &lt;matthew@openlattice.com&gt;
+ */
+public class PostgresBinaryCopyReader implements AutoCloseable {
+    private static final byte[]    SIGNATURE     = new byte[] {
+            'P', 'G', 'C', 'O', 'P', 'Y', '\n', (byte) 0xFF, '\r', '\n', 0 };
+    private static final int       INITIAL_SIZE  = 1 << 12;
+    private static final LocalDate PG_EPOCH_DATE = LocalDate.of( 2000, 1, 1 );
+    private static final Instant   PG_EPOCH      = PG_EPOCH_DATE.atStartOfDay().toInstant( ZoneOffset.UTC );
+
+    private final PGCopyInputStream copyOut;
+    private final DataInputStream   in;
+    private       byte[]            tuple   = new byte[ INITIAL_SIZE ];
+    private       ByteBuffer        data    = ByteBuffer.wrap( tuple );
+    private       int[]             offsets = new int[ 0 ];
+    private       int[]             lengths = new int[ 0 ];
+    private       int               fieldCount;
+    private       long              rows    = 0;
+    private       boolean           open    = true;
+
+    public PostgresBinaryCopyReader( Connection connection, String query ) throws SQLException {
+        this.copyOut = new PGCopyInputStream( connection.unwrap( PGConnection.class ), copyQuery( query ) );
+        this.in = new DataInputStream( copyOut );
+        try {
+            readHeader();
+        } catch ( IOException | RuntimeException e ) {
+            close();
+            throw new SQLException( "Unable to read binary copy header.", e );
+        }
+    }
+
+    public static String copyQuery( String query ) {
+        return "COPY (" + query + ") TO STDOUT (FORMAT binary)";
+    }
+
+    /**
+     * Advances to the next tuple.
+     *
+     * @return True if a tuple was read, false if the copy is complete.
+     * @throws SQLException If unable to read from the copy stream.
+     */
+    public boolean next() throws SQLException {
+        if ( !open ) {
+            return false;
+        }
+        try {
+            fieldCount = in.readShort();
+            if ( fieldCount == -1 ) {
+                //Read to the end of the stream, so that the copy completes instead of being cancelled on close.
+                while ( in.read() != -1 ) {
+                    //Nothing is expected after the trailer.
+                }
+                open = false;
+                return false;
+            }
+
+            if ( offsets.length < fieldCount ) {
+                offsets = new int[ fieldCount ];
+                lengths = new int[ fieldCount ];
+            }
+
+            int offset = 0;
+            for ( int i = 0; i < fieldCount; ++i ) {
+                final int length = in.readInt();
+                offsets[ i ] = offset;
+                lengths[ i ] = length;
+                if ( length > 0 ) {
+                    ensureCapacity( offset + length );
+                    in.readFully( tuple, offset, length );
+                    offset += length;
+                }
+            }
+            rows++;
+            return true;
+        } catch ( IOException e ) {
+            throw new SQLException( "Unable to read tuple " + rows + " from binary copy.", e );
+        }
+    }
+
+    public int getFieldCount() {
+        return fieldCount;
+    }
+
+    public long getRows() {
+        return rows;
+    }
+
+    public boolean isNull( int field ) {
+        return length( field ) == -1;
+    }
+
+    public UUID getUUID( int field ) {
+        if ( isNull( field ) ) {
+            return null;
+        }
+        final int offset = offsets[ field ];
+        return new UUID( data.getLong( offset ), data.getLong( offset + Long.BYTES ) );
+    }
+
+    public String getString( int field ) {
+        if ( isNull( field ) ) {
+            return null;
+        }
+        return new String( tuple, offsets[ field ], lengths[ field ], StandardCharsets.UTF_8 );
+    }
+
+    /**
+     * Returns the text of a jsonb field, skipping the jsonb format version that precedes it.
+     */
+    public String getJsonb( int field ) {
+        if ( isNull( field ) ) {
+            return null;
+        }
+        return new String( tuple, offsets[ field ] + 1, lengths[ field ] - 1, StandardCharsets.UTF_8 );
+    }
+
+    public long getLong( int field ) {
+        return isNull( field ) ? 0 : data.getLong( offsets[ field ] );
+    }
+
+    public int getInt( int field ) {
+        return isNull( field ) ? 0 : data.getInt( offsets[ field ] );
+    }
+
+    public short getShort( int field ) {
+        return isNull( field ) ? 0 : data.getShort( offsets[ field ] );
+    }
+
+    public boolean getBoolean( int field ) {
+        return !isNull( field ) && tuple[ offsets[ field ] ] != 0;
+    }
+
+    public double getDouble( int field ) {
+        return isNull( field ) ? 0 : data.getDouble( offsets[ field ] );
+    }
+
+    public OffsetDateTime getOffsetDateTime( int field ) {
+        if ( isNull( field ) ) {
+            return null;
+        }
+        return PG_EPOCH.plus( data.getLong( offsets[ field ] ), ChronoUnit.MICROS ).atOffset( ZoneOffset.UTC );
+    }
+
+    public LocalDate getLocalDate( int field ) {
+        if ( isNull( field ) ) {
+            return null;
+        }
+        return PG_EPOCH_DATE.plusDays( data.getInt( offsets[ field ] ) );
+    }
+
+    public byte[] getBytes( int field ) {
+        if ( isNull( field ) ) {
+            return null;
+        }
+        return Arrays.copyOfRange( tuple, offsets[ field ], offsets[ field ] + lengths[ field ] );
+    }
+
+    public boolean isOpen() {
+        return open;
+    }
+
+    @Override
+    public void close() throws SQLException {
+        open = false;
+        try {
+            copyOut.close();
+        } catch ( IOException e ) {
+            throw new SQLException( "Unable to close binary copy.", e );
+        }
+    }
+
+    private int length( int field ) {
+        if ( field < 0 || field >= fieldCount ) {
+            throw new IndexOutOfBoundsException( "Field " + field + " is out of range for " + fieldCount + " fields." );
+        }
+        return lengths[ field ];
+    }
+
+    private void readHeader() throws IOException {
+        final byte[] signature = new byte[ SIGNATURE.length ];
+        in.readFully( signature );
+        if ( !Arrays.equals( signature, SIGNATURE ) ) {
+            throw new IllegalStateException( "Unexpected binary copy signature." );
+        }
+        in.readInt(); //Flags
+        final int extensionLength = in.readInt();
+        if ( in.skipBytes( extensionLength ) != extensionLength ) {
+            throw new EOFException( "Binary copy header extension was truncated." );
+        }
+    }
+
+    private void ensureCapacity( int size ) {
+        if ( tuple.length < size ) {
+            tuple = Arrays.copyOf( tuple, Math.max( size, 2 * tuple.length ) );
+            data = ByteBuffer.wrap( tuple );
+        }
+    }
+}
@@ -0,0 +1,213 @@
+/*
+ * Copyright (C) 2021. OpenLattice, Inc
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * You can contact the owner of the copyright at support@openlattice.com
+ *
+ */
+
+package com.openlattice.postgres;
+
+import org.postgresql.PGConnection;
+import org.postgresql.copy.CopyIn;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+import java.util.UUID;
+import java.util.stream.Collectors;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * Streams rows into a table using {@code COPY ... FROM STDIN (FORMAT binary)}. Rows are encoded directly into the
+ * postgres binary tuple format and shipped to the server in fixed size chunks, so memory use is bounded regardless of
+ * the number of rows written.
+ * <p>
+ * Values are encoded based on their java type. Strings bound to {@link PostgresDatatype#JSONB} columns are encoded
+ * as jsonb, everything else must map directly to the column type.
+ *
+ * @author Matthew Tamayo-Rios &lt;matthew@openlattice.com&gt;
+ */
+public class PostgresBinaryCopyWriter implements AutoCloseable {
+    private static final byte[]    HEADER        = new byte[] {
+            'P', 'G', 'C', 'O', 'P', 'Y', '\n', (byte) 0xFF, '\r', '\n', 0, 0, 0, 0, 0, 0, 0, 0, 0 };
+    private static final int       BUFFER_SIZE   = 1 << 16;
+    private static final byte      JSONB_VERSION = 1;
+    private static final LocalDate PG_EPOCH_DATE = LocalDate.of( 2000, 1, 1 );
+    private static final Instant   PG_EPOCH      = PG_EPOCH_DATE.atStartOfDay().toInstant( ZoneOffset.UTC );
+
+    private final CopyIn                         copyIn;
+    private final List<PostgresColumnDefinition> columns;
+    private final ByteBuffer                     buffer = ByteBuffer.allocate( BUFFER_SIZE );
+    private       long                           rows   = 0;
+    private       boolean                        open   = true;
+
+    public PostgresBinaryCopyWriter(
+            Connection connection,
+            String table,
+            List<PostgresColumnDefinition> columns ) throws SQLException {
+        this.columns = columns;
+        this.copyIn = connection.unwrap( PGConnection.class )
+                .getCopyAPI()
+                .copyIn( copyQuery( table, columns ) );
+        write( HEADER );
+    }
+
+    public static String copyQuery( String table, List<PostgresColumnDefinition> columns ) {
+        return "COPY " + table + " (" + columns.stream()
+                .map( PostgresColumnDefinition::getName )
+                .collect( Collectors.joining( "," ) ) + ") FROM STDIN (FORMAT binary)";
+    }
+
+    /**
+     * Writes a single tuple to the copy stream.
+     *
+     * @param values The values for the tuple in the same order as the columns this writer was created with.
+     * @throws SQLException If unable to write to the copy stream.
+     */
+    public void writeRow( Object... values ) throws SQLException {
+        checkArgument( values.length == columns.size(),
+                "Expected %s values, but received %s.",
+                columns.size(),
+                values.length );
+        ensureCapacity( Short.BYTES );
+        buffer.putShort( (short) values.length );
+        for ( int i = 0; i < values.length; ++i ) {
+            writeValue( columns.get( i ), values[ i ] );
+        }
+        rows++;
+    }
+
+    /**
+     * Flushes any buffered tuples, writes the trailer and completes the copy.
+     *
+     * @return The number of rows copied according to the server.
+     */
+    public long finish() throws SQLException {
+        ensureCapacity( Short.BYTES );
+        buffer.putShort( (short) -1 );
+        flush();
+        open = false;
+        return copyIn.endCopy();
+    }
+
+    public long getRows() {
+        return rows;
+    }
+
+    @Override
+    public void close() throws SQLException {
+        if ( open ) {
+            open = false;
+            if ( copyIn.isActive() ) {
+                copyIn.cancelCopy();
+            }
+        }
+    }
+
+    private void writeValue( PostgresColumnDefinition column, Object value ) throws SQLException {
+        if ( value == null ) {
+            ensureCapacity( Integer.BYTES );
+            buffer.putInt( -1 );
+        } else if ( value instanceof UUID ) {
+            final var id = (UUID) value;
+            ensureCapacity( Integer.BYTES + 2 * Long.BYTES );
+            buffer.putInt( 2 * Long.BYTES );
+            buffer.putLong( id.getMostSignificantBits() );
+            buffer.putLong( id.getLeastSignificantBits() );
+        } else if ( value instanceof String ) {
+            final var bytes = ( (String) value ).getBytes( StandardCharsets.UTF_8 );
+            if ( column.getDatatype().equals( PostgresDatatype.JSONB ) ) {
+                ensureCapacity( Integer.BYTES + 1 );
+                buffer.putInt( bytes.length + 1 );
+                buffer.put( JSONB_VERSION );
+            } else {
+                ensureCapacity( Integer.BYTES );
+                buffer.putInt( bytes.length );
+            }
+            write( bytes );
+        } else if ( value instanceof Long ) {
+            ensureCapacity( Integer.BYTES + Long.BYTES );
+            buffer.putInt( Long.BYTES );
+            buffer.putLong( (Long) value );
+        } else if ( value instanceof Integer ) {
+            ensureCapacity( 2 * Integer.BYTES );
+            buffer.putInt( Integer.BYTES );
+            buffer.putInt( (Integer) value );
+        } else if ( value instanceof Short ) {
+            ensureCapacity( Integer.BYTES + Short.BYTES );
+            buffer.putInt( Short.BYTES );
+            buffer.putShort( (Short) value );
+        } else if ( value instanceof Boolean ) {
+            ensureCapacity( Integer.BYTES + 1 );
+            buffer.putInt( 1 );
+            buffer.put( (byte) ( (Boolean) value ? 1 : 0 ) );
+        } else if ( value instanceof Double ) {
+            ensureCapacity( Integer.BYTES + Double.BYTES );
+            buffer.putInt( Double.BYTES );
+            buffer.putDouble( (Double) value );
+        } else if ( value instanceof OffsetDateTime || value instanceof Instant ) {
+            final var instant = value instanceof Instant ? (Instant) value : ( (OffsetDateTime) value ).toInstant();
+            ensureCapacity( Integer.BYTES + Long.BYTES );
+            buffer.putInt( Long.BYTES );
+            buffer.putLong( ChronoUnit.MICROS.between( PG_EPOCH, instant ) );
+        } else if ( value instanceof LocalDate ) {
+            ensureCapacity( 2 * Integer.BYTES );
+            buffer.putInt( Integer.BYTES );
+            buffer.putInt( (int) ChronoUnit.DAYS.between( PG_EPOCH_DATE, (LocalDate) value ) );
+        } else if ( value instanceof byte[] ) {
+            final var bytes = (byte[]) value;
+            ensureCapacity( Integer.BYTES );
+            buffer.putInt( bytes.length );
+            write( bytes );
+        } else {
+            throw new IllegalArgumentException( "Unable to binary encode value of type " + value.getClass()
+                    .getName() + " for column " + column.getName() );
+        }
+    }
+
+    private void write( byte[] bytes ) throws SQLException {
+        int offset = 0;
+        while ( offset < bytes.length ) {
+            if ( !buffer.hasRemaining() ) {
+                flush();
+            }
+            final int length = Math.min( buffer.remaining(), bytes.length - offset );
+            buffer.put( bytes, offset, length );
+            offset += length;
+        }
+    }
+
+    private void ensureCapacity( int bytes ) throws SQLException {
+        if ( buffer.remaining() < bytes ) {
+            flush();
+        }
+    }
+
+    private void flush() throws SQLException {
+        if ( buffer.position() > 0 ) {
+            copyIn.writeToCopy( buffer.array(), 0, buffer.position() );
+            buffer.clear();
+        }
+    }
+}
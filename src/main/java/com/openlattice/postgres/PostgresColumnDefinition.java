@@ -49,6 +49,10 @@ public class  PostgresColumnDefinition {
         return datatype;
     }
 
+    public Optional<PostgresTableDefinition> getForeignTableReference() {
+        return foreignTableReference;
+    }
+
     public PostgresColumnDefinition unique() {
         unique = true;
         return this;
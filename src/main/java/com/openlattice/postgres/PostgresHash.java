@@ -0,0 +1,207 @@
+/*
+ * Copyright (C) 2021. OpenLattice, Inc
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * You can contact the owner of the copyright at support@openlattice.com
+ *
+ */
+
+package com.openlattice.postgres;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.OptionalInt;
+import java.util.UUID;
+
+/**
+ * Client side implementations of the postgres hash functions citus uses to assign rows of hash distributed tables to
+ * shards, so that values can be mapped to shards without a round trip to the database.
+ * <p>
+ * The results only match servers with a little endian byte order and, for text, a deterministic collation.
+ * {@link CitusShardMap} checks the results against the server before relying on them.
+ *
+ * @author Matthew Tamayo-Rios &lt;matthew@openlattice.com&gt;
+ */
+public final class PostgresHash {
+    private static final int GOLDEN_RATIO = 0x9e3779b9;
+    private static final int SEED         = 3923095;
+
+    private PostgresHash() {
+    }
+
+    /**
+     * Hashes a value of a column with the given type the same way as {@code worker_hash} in citus.
+     *
+     * @return The hash of the value or empty if the type isn't supported.
+     */
+    public static OptionalInt hash( PostgresDatatype datatype, Object value ) {
+        if ( datatype == PostgresDatatype.UUID ) {
+            return OptionalInt.of( hashUuid( (UUID) value ) );
+        } else if ( datatype == PostgresDatatype.TEXT ) {
+            return OptionalInt.of( hashText( (String) value ) );
+        } else if ( datatype == PostgresDatatype.BIGINT ) {
+            return OptionalInt.of( hashInt8( ( (Number) value ).longValue() ) );
+        } else if ( datatype == PostgresDatatype.INTEGER ) {
+            return OptionalInt.of( hashUint32( ( (Number) value ).intValue() ) );
+        }
+        return OptionalInt.empty();
+    }
+
+    public static boolean isSupported( PostgresDatatype datatype ) {
+        return datatype == PostgresDatatype.UUID
+                || datatype == PostgresDatatype.TEXT
+                || datatype == PostgresDatatype.BIGINT
+                || datatype == PostgresDatatype.INTEGER;
+    }
+
+    /**
+     * Equivalent of {@code uuid_hash}.
+     */
+    public static int hashUuid( UUID value ) {
+        return hashBytes( ByteBuffer.allocate( 16 )
+                .putLong( value.getMostSignificantBits() )
+                .putLong( value.getLeastSignificantBits() )
+                .array() );
+    }
+
+    /**
+     * Equivalent of {@code hashtext} for deterministic collations.
+     */
+    public static int hashText( String value ) {
+        return hashBytes( value.getBytes( StandardCharsets.UTF_8 ) );
+    }
+
+    /**
+     * Equivalent of {@code hashint8}, which hashes values that fit in 32 bits the same way as {@code hashint4}.
+     */
+    public static int hashInt8( long value ) {
+        final int hihalf = (int) ( value >>> 32 );
+        final int lohalf = (int) value ^ ( value >= 0 ? hihalf : ~hihalf );
+        return hashUint32( lohalf );
+    }
+
+    /**
+     * Equivalent of {@code hash_uint32}, which is also used by {@code hashint4}.
+     */
+    public static int hashUint32( int value ) {
+        final int[] abc = new int[ 3 ];
+        abc[ 0 ] = abc[ 1 ] = abc[ 2 ] = GOLDEN_RATIO + 4 + SEED;
+        abc[ 0 ] += value;
+        finalMix( abc );
+        return abc[ 2 ];
+    }
+
+    /**
+     * Equivalent of {@code hash_bytes}, also known as {@code hash_any}.
+     */
+    public static int hashBytes( byte[] k ) {
+        final int[] abc = new int[ 3 ];
+        int len = k.length;
+        int offset = 0;
+        abc[ 0 ] = abc[ 1 ] = abc[ 2 ] = GOLDEN_RATIO + len + SEED;
+
+        while ( len >= 12 ) {
+            abc[ 0 ] += word( k, offset );
+            abc[ 1 ] += word( k, offset + 4 );
+            abc[ 2 ] += word( k, offset + 8 );
+            mix( abc );
+            offset += 12;
+            len -= 12;
+        }
+
+        //The lowest byte of c is reserved for the length.
+        switch ( len ) {
+            case 11:
+                abc[ 2 ] += ( k[ offset + 10 ] & 0xFF ) << 24;
+            case 10:
+                abc[ 2 ] += ( k[ offset + 9 ] & 0xFF ) << 16;
+            case 9:
+                abc[ 2 ] += ( k[ offset + 8 ] & 0xFF ) << 8;
+            case 8:
+                abc[ 1 ] += ( k[ offset + 7 ] & 0xFF ) << 24;
+            case 7:
+                abc[ 1 ] += ( k[ offset + 6 ] & 0xFF ) << 16;
+            case 6:
+                abc[ 1 ] += ( k[ offset + 5 ] & 0xFF ) << 8;
+            case 5:
+                abc[ 1 ] += k[ offset + 4 ] & 0xFF;
+            case 4:
+                abc[ 0 ] += ( k[ offset + 3 ] & 0xFF ) << 24;
+            case 3:
+                abc[ 0 ] += ( k[ offset + 2 ] & 0xFF ) << 16;
+            case 2:
+                abc[ 0 ] += ( k[ offset + 1 ] & 0xFF ) << 8;
+            case 1:
+                abc[ 0 ] += k[ offset ] & 0xFF;
+            default:
+        }
+
+        finalMix( abc );
+        return abc[ 2 ];
+    }
+
+    private static int word( byte[] k, int offset ) {
+        return ( k[ offset ] & 0xFF )
+                | ( k[ offset + 1 ] & 0xFF ) << 8
+                | ( k[ offset + 2 ] & 0xFF ) << 16
+                | ( k[ offset + 3 ] & 0xFF ) << 24;
+    }
+
+    private static void mix( int[] abc ) {
+        int a = abc[ 0 ], b = abc[ 1 ], c = abc[ 2 ];
+        a -= c;
+        a ^= Integer.rotateLeft( c, 4 );
+        c += b;
+        b -= a;
+        b ^= Integer.rotateLeft( a, 6 );
+        a += c;
+        c -= b;
+        c ^= Integer.rotateLeft( b, 8 );
+        b += a;
+        a -= c;
+        a ^= Integer.rotateLeft( c, 16 );
+        c += b;
+        b -= a;
+        b ^= Integer.rotateLeft( a, 19 );
+        a += c;
+        c -= b;
+        c ^= Integer.rotateLeft( b, 4 );
+        b += a;
+        abc[ 0 ] = a;
+        abc[ 1 ] = b;
+        abc[ 2 ] = c;
+    }
+
+    private static void finalMix( int[] abc ) {
+        int a = abc[ 0 ], b = abc[ 1 ], c = abc[ 2 ];
+        c ^= b;
+        c -= Integer.rotateLeft( b, 14 );
+        a ^= c;
+        a -= Integer.rotateLeft( c, 11 );
+        b ^= a;
+        b -= Integer.rotateLeft( a, 25 );
+        c ^= b;
+        c -= Integer.rotateLeft( b, 16 );
+        a ^= c;
+        a -= Integer.rotateLeft( c, 4 );
+        b ^= a;
+        b -= Integer.rotateLeft( a, 14 );
+        c ^= b;
+        c -= Integer.rotateLeft( b, 24 );
+        abc[ 0 ] = a;
+        abc[ 1 ] = b;
+        abc[ 2 ] = c;
+    }
+}
@@ -50,7 +50,7 @@ public class PostgresPod {
     @Autowired( required = false )
     private Set<PostgresTables> spt;
 
-    @Bean
+    @Bean( destroyMethod = "shutdown" )
     public PostgresTableManager tableManager() throws SQLException {
 
         if ( rhizomeConfiguration.getPostgresConfiguration().isPresent() ) {
@@ -58,7 +58,8 @@ public class PostgresPod {
             PostgresTableManager ptm = new PostgresTableManager( hds,
                     pgConfig.getUsingCitus(),
                     pgConfig.getInitializeIndices(),
-                    pgConfig.getInitializeTables() );
+                    pgConfig.getInitializeTables(),
+                    pgConfig.getDdlParallelism() );
             if ( spt != null ) {
                 ptm.registerTables( spt.stream().flatMap( PostgresTables::tables )::iterator );
             }
@@ -56,6 +56,8 @@ public class PostgresTableDefinition implements TableDefinition {
     private boolean unlogged;
     private boolean ifNotExists         = true;
     private boolean overwriteOnConflict = false;
+    private int     writeDelaySeconds   = 0;
+    private int     writeBatchSize      = 1;
 
     public PostgresTableDefinition( String name ) {
         this.name = name;
@@ -78,6 +80,21 @@ public class PostgresTableDefinition implements TableDefinition {
         return this;
     }
 
+    /**
+     * Configures maps backed by this table to buffer writes and flush them asynchronously, coalescing repeated writes
+     * to the same key.
+     *
+     * @param writeDelaySeconds The maximum number of seconds a write is buffered before being flushed.
+     * @param writeBatchSize The maximum number of entries flushed to the database in a single batch.
+     */
+    public PostgresTableDefinition writeBehind( int writeDelaySeconds, int writeBatchSize ) {
+        checkArgument( writeDelaySeconds >= 0, "Write delay must be nonnegative." );
+        checkArgument( writeBatchSize > 0, "Write batch size must be positive." );
+        this.writeDelaySeconds = writeDelaySeconds;
+        this.writeBatchSize = writeBatchSize;
+        return this;
+    }
+
     public PostgresTableDefinition unlogged() {
         this.unlogged = true;
         return this;
@@ -137,6 +154,14 @@ public class PostgresTableDefinition implements TableDefinition {
         return columnMap.get( name );
     }
 
+    public int getWriteDelaySeconds() {
+        return writeDelaySeconds;
+    }
+
+    public int getWriteBatchSize() {
+        return writeBatchSize;
+    }
+
     public boolean isIfNotExists() {
         return ifNotExists;
     }
@@ -187,6 +212,17 @@ public class PostgresTableDefinition implements TableDefinition {
     }
 
     public String insertQuery( Optional<String> onConflict, List<PostgresColumnDefinition> requestedColumns ) {
+        return insertQuery( onConflict, requestedColumns, 1 );
+    }
+
+    /**
+     * Builds an insert query that inserts {@code rows} rows per execution using a multi-row values list.
+     */
+    public String insertQuery(
+            Optional<String> onConflict,
+            List<PostgresColumnDefinition> requestedColumns,
+            int rows ) {
+        checkArgument( rows > 0, "Number of rows must be positive." );
         if ( this.columns.containsAll( requestedColumns ) ) {
             StringBuilder insertSql = new StringBuilder( "INSERT INTO " ).append( name );
 
@@ -198,11 +234,10 @@ public class PostgresTableDefinition implements TableDefinition {
                                 .collect( Collectors.joining( "," ) ) )
                         .append( ")" );
             }
-            insertSql.append( " VALUES (" )
-                    .append( insertCols.stream()
-                            .map( col -> col.getDatatype().equals( PostgresDatatype.JSONB ) ? "?::jsonb" : "?" )
-                            .collect( Collectors.joining( ", " ) ) )
-                    .append( ") " );
+            final String row = "(" + insertCols.stream()
+                    .map( col -> col.getDatatype().equals( PostgresDatatype.JSONB ) ? "?::jsonb" : "?" )
+                    .collect( Collectors.joining( ", " ) ) + ")";
+            insertSql.append( " VALUES " ).append( StringUtils.repeat( row, ",", rows ) ).append( " " );
 
             onConflict.ifPresent( insertSql::append );
 
@@ -357,6 +392,77 @@ public class PostgresTableDefinition implements TableDefinition {
         }
     }
 
+    /**
+     * Builds a select query that matches rows against keys bound as one array parameter per where column, instead of
+     * one parameter per key. The statement text is independent of the number of keys being selected.
+     *
+     * @param columnsToSelect The columns to select or an empty list to select all columns.
+     * @param whereToSelect The columns to match against, each of which must be bound as an array.
+     * @return A select query with {@code whereToSelect.size()} array parameters.
+     */
+    public String selectInArrayQuery(
+            List<PostgresColumnDefinition> columnsToSelect,
+            List<PostgresColumnDefinition> whereToSelect ) {
+        checkState( !whereToSelect.isEmpty(), "where columns must be specified." );
+        final String selectSql = selectQuery( columnsToSelect );
+
+        if ( whereToSelect.size() == 1 ) {
+            return selectSql + " WHERE " + whereToSelect.get( 0 ).getName() + " = ANY(?)";
+        }
+
+        return selectSql + " WHERE (" + whereToSelect.stream()
+                .map( PostgresColumnDefinition::getName )
+                .collect( Collectors.joining( "," ) )
+                + ") IN (SELECT * FROM unnest(" + StringUtils.repeat( "?", ",", whereToSelect.size() ) + "))";
+    }
+
+    /**
+     * Builds a query for a single page of a scan ordered by primary key. Pages are bounded by primary key values
+     * instead of an offset, so every page is a range scan over the primary key index.
+     * <p>
+     * Parameters are bound in the following order: the primary key of the last row of the previous page, if
+     * {@code hasLowerBound} is set, the primary key of the last row of the range, if {@code hasUpperBound} is set,
+     * and finally the maximum number of rows in the page.
+     *
+     * @param columnsToSelect The columns to select, which must include the primary key, or an empty list to select
+     * all columns.
+     * @param hasLowerBound Whether rows must have a primary key greater than a bound parameter.
+     * @param hasUpperBound Whether rows must have a primary key less than or equal to a bound parameter.
+     * @return A select query for one page.
+     */
+    public String keysetPageQuery(
+            List<PostgresColumnDefinition> columnsToSelect,
+            boolean hasLowerBound,
+            boolean hasUpperBound ) {
+        checkState( !primaryKey.isEmpty(), "Table %s must have a primary key for keyset pagination.", name );
+        checkArgument( columnsToSelect.isEmpty() || columnsToSelect.containsAll( primaryKey ),
+                "Selected columns must include the primary key." );
+
+        final String keyColumns = "(" + primaryKey.stream()
+                .map( PostgresColumnDefinition::getName )
+                .collect( Collectors.joining( "," ) ) + ")";
+        final String keyParams = "(" + StringUtils.repeat( "?", ",", primaryKey.size() ) + ")";
+        final StringBuilder selectSql = new StringBuilder( selectQuery( columnsToSelect ) );
+
+        if ( hasLowerBound ) {
+            selectSql.append( " WHERE " ).append( keyColumns ).append( " > " ).append( keyParams );
+        }
+
+        if ( hasUpperBound ) {
+            selectSql.append( hasLowerBound ? " AND " : " WHERE " )
+                    .append( keyColumns )
+                    .append( " <= " )
+                    .append( keyParams );
+        }
+
+        return selectSql.append( " ORDER BY " )
+                .append( primaryKey.stream()
+                        .map( PostgresColumnDefinition::getName )
+                        .collect( Collectors.joining( "," ) ) )
+                .append( " LIMIT ?" )
+                .toString();
+    }
+
     @Override
     public Stream<String> getCreateIndexQueries() {
         return indexes.stream().map( PostgresIndexDefinition::sql );
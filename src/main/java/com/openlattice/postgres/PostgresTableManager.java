@@ -20,32 +20,100 @@
 
 package com.openlattice.postgres;
 
+import com.google.common.base.Stopwatch;
+import com.google.common.hash.Hashing;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.zaxxer.hikari.HikariDataSource;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.nio.charset.StandardCharsets;
 import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
 
 /**
+ * Creates the tables and indexes of registered table definitions.
+ * <p>
+ * Tables are created in waves: each wave contains the tables whose foreign key references have already been created,
+ * and the tables of a wave are created in parallel over separate pooled connections. Indexes are built once all
+ * tables exist, with the indexes of each table built one after the other, since concurrent index builds on the same
+ * table block each other. At most {@code ddlParallelism} DDL statements run at once.
+ * <p>
+ * Tables and named indexes that already exist are looked up in {@code pg_catalog} with a single query and skipped,
+ * except for distributed tables when using citus.
+ * The time taken to create each table and index is logged and available from {@link #getTimings()}.
+ * <p>
+ * When both tables and indexes are initialized, a fingerprint of the DDL of each table is stored in
+ * {@value #FINGERPRINTS_TABLE} once it has been initialized. On later registrations tables whose fingerprint is
+ * unchanged, and which still exist, are skipped entirely, so a warm restart only costs a single query. For tables
+ * whose definition changed, the differences in DDL are logged and any {@link SchemaMigration} registered for the
+ * table is run before the DDL. Fingerprints are only stored once all DDL and migrations have succeeded, and are not
+ * updated for changed tables without a migration, so those changes are logged again on every registration.
+ * <p>
+ * The child partitions of {@link PartitionedTableDefinition}s are created whenever tables are registered and then
+ * maintained once every {@value #PARTITION_MAINTENANCE_INTERVAL_MINUTES} minutes, which creates upcoming time
+ * partitions and drops the ones that have fallen out of their retention window.
+ *
  * @author Matthew Tamayo-Rios &lt;matthew@openlattice.com&gt;
  */
 public class PostgresTableManager {
+    public static final int    DEFAULT_DDL_PARALLELISM                = 4;
+    public static final String FINGERPRINTS_TABLE                     = "rhizome_schema_fingerprints";
+    public static final long   PARTITION_MAINTENANCE_INTERVAL_MINUTES = 60;
+
     private static final Logger logger = LoggerFactory
             .getLogger( PostgresTableManager.class );
 
     private static final String INVALID_TABLE_DEFINITION_SQL_STATE = "42P16";
     private static final String ALREADY_DISTRIBUTED_ERROR_MSG = " is already distributed";
+    private static final String UNDEFINED_TABLE_SQL_STATE = "42P01";
+    private static final String CREATE_FINGERPRINTS_SQL = "CREATE TABLE IF NOT EXISTS " + FINGERPRINTS_TABLE
+            + " (table_name text PRIMARY KEY, fingerprint text NOT NULL, ddl text[] NOT NULL, "
+            + "updated_at timestamptz NOT NULL DEFAULT now())";
+    private static final String SELECT_FINGERPRINTS_SQL = "SELECT table_name, fingerprint, ddl FROM "
+            + FINGERPRINTS_TABLE + " WHERE table_name = ANY(?) AND to_regclass(table_name) IS NOT NULL";
+    private static final String UPSERT_FINGERPRINT_SQL = "INSERT INTO " + FINGERPRINTS_TABLE
+            + " (table_name, fingerprint, ddl) VALUES (?, ?, ?) ON CONFLICT (table_name) DO UPDATE "
+            + "SET fingerprint = EXCLUDED.fingerprint, ddl = EXCLUDED.ddl, updated_at = now()";
+    private static final String EXISTING_RELATIONS_SQL = "SELECT c.relname FROM pg_catalog.pg_class c "
+            + "JOIN pg_catalog.pg_namespace n ON n.oid = c.relnamespace "
+            + "WHERE n.nspname = ANY(current_schemas(false)) AND c.relname = ANY(?)";
+    private static final String PARTITIONS_SQL = "SELECT c.relname FROM pg_catalog.pg_inherits i "
+            + "JOIN pg_catalog.pg_class c ON c.oid = i.inhrelid WHERE i.inhparent = to_regclass(?)";
 
     private final HikariDataSource                     hds;
     private final Map<String, PostgresTableDefinition> activeTables = new HashMap<>();
+    private final Map<String, Long>                    timings      = new ConcurrentHashMap<>();
+    private final Map<String, SchemaMigration>         migrations   = new ConcurrentHashMap<>();
     private final boolean                              citus;
     private final boolean                              initializeIndices;
     private final boolean                              initializeTables;
+    private final int                                  ddlParallelism;
+
+    private ScheduledExecutorService partitionMaintenance;
 
     public PostgresTableManager( HikariDataSource hds ) {
         this( hds, false, false, false );
@@ -56,75 +124,482 @@ public class PostgresTableManager {
             boolean citus,
             boolean initializeIndices,
             boolean initializeTables ) {
+        this( hds, citus, initializeIndices, initializeTables, DEFAULT_DDL_PARALLELISM );
+    }
+
+    public PostgresTableManager(
+            HikariDataSource hds,
+            boolean citus,
+            boolean initializeIndices,
+            boolean initializeTables,
+            int ddlParallelism ) {
+        if ( ddlParallelism <= 0 ) {
+            throw new IllegalArgumentException( "DDL parallelism must be positive." );
+        }
         this.citus = citus;
         this.hds = hds;
         this.initializeIndices = initializeIndices;
         this.initializeTables = initializeTables;
+        this.ddlParallelism = ddlParallelism;
     }
 
     public void registerTables( PostgresTableDefinition... tables ) throws SQLException {
         registerTables( Arrays.asList( tables ) );
     }
 
-    public void registerTables( Iterable<PostgresTableDefinition> tables ) throws SQLException {
-
+    public synchronized void registerTables( Iterable<PostgresTableDefinition> tables ) throws SQLException {
         logger.info( "Processing postgres table registrations." );
+        final Map<String, PostgresTableDefinition> pending = new LinkedHashMap<>();
         for ( PostgresTableDefinition table : tables ) {
-            if ( activeTables.containsKey( table.getName() ) ) {
+            if ( activeTables.containsKey( table.getName() ) || pending.containsKey( table.getName() ) ) {
                 logger.debug( "Table {} has already been registered and initialized... skipping", table );
             } else {
                 logger.debug( "Processed postgres table registration for table {}", table.getName() );
+                pending.put( table.getName(), table );
+            }
+        }
+
+        if ( pending.isEmpty() || ( !initializeTables && !initializeIndices ) ) {
+            activeTables.putAll( pending );
+            return;
+        }
+
+        final Stopwatch sw = Stopwatch.createStarted();
+        //Fingerprints describe fully initialized tables, so they can only be relied on when initializing everything.
+        final boolean fingerprinting = initializeTables && initializeIndices;
+        final Map<String, List<String>> ddl = new HashMap<>();
+        final Map<String, List<String>> previousDdl = new HashMap<>();
+        final Map<String, PostgresTableDefinition> changed;
+        if ( fingerprinting ) {
+            pending.values().forEach( table -> ddl.put( table.getName(), getDdl( table ) ) );
+            changed = getChangedTables( pending, ddl, previousDdl );
+        } else {
+            changed = pending;
+        }
+
+        if ( !changed.isEmpty() ) {
+            //Tables that changed without a registered migration keep their old fingerprint, so that the change is
+            //reported on every start until a migration is registered.
+            final Set<String> fingerprinted = new LinkedHashSet<>( changed.keySet() );
+            for ( PostgresTableDefinition table : changed.values() ) {
+                final String name = table.getName();
+                if ( previousDdl.containsKey( name ) && !migrate( table, previousDdl.get( name ), ddl.get( name ) ) ) {
+                    fingerprinted.remove( name );
+                }
+            }
+
+            initialize( changed );
+            if ( fingerprinting && !fingerprinted.isEmpty() ) {
+                saveFingerprints( fingerprinted, ddl );
+            }
+        }
+
+        activeTables.putAll( pending );
+        if ( initializeTables && pending.values().stream().anyMatch( PartitionedTableDefinition.class::isInstance ) ) {
+            //Partitions depend on the current time, so they are maintained even if the table is unchanged.
+            maintainPartitions();
+            schedulePartitionMaintenance();
+        }
+        logger.info( "Initialized {} of {} postgres tables in {} ms.",
+                changed.size(),
+                pending.size(),
+                sw.elapsed( TimeUnit.MILLISECONDS ) );
+    }
+
+    /**
+     * Registers a migration that is run before initializing {@code tableName} whenever its definition has changed.
+     */
+    public void registerMigration( String tableName, SchemaMigration migration ) {
+        migrations.put( tableName, migration );
+    }
 
-                try ( Connection conn = hds.getConnection(); Statement sctq = conn.createStatement() ) {
-                    if ( initializeTables ) {
-                        sctq.execute( table.createTableQuery() );
-
-                        if ( citus ) {
-                            //Creating the distributed table must be done before creating any indices.
-                            if ( table instanceof CitusDistributedTableDefinition ) {
-                                logger.info( "Creating distributed table {}.", table.getName() );
-                                try ( Statement ddstmt = conn.createStatement() ) {
-                                    ddstmt.execute( ( (CitusDistributedTableDefinition) table )
-                                            .createDistributedTableQuery() );
-                                } catch ( SQLException ddex ) {
-                                    if ( ddex.getSQLState().equals( INVALID_TABLE_DEFINITION_SQL_STATE )
-                                            && ddex.getMessage().contains( ALREADY_DISTRIBUTED_ERROR_MSG ) ) {
-                                        logger.info( "Table {} is already distributed.", table.getName() );
-                                    } else {
-                                        logger.warn( "Unable to distribute table {}. Cause: {}",
-                                                table.getName(),
-                                                ddex.getMessage());
-                                    }
-                                }
-                            }
+    /**
+     * Creates missing child partitions of registered partitioned tables and drops expired time partitions. A failure
+     * to maintain one table doesn't stop the others from being maintained, but is rethrown once all of them have been
+     * processed.
+     */
+    public synchronized void maintainPartitions() throws SQLException {
+        SQLException failure = null;
+        for ( PostgresTableDefinition table : activeTables.values() ) {
+            if ( table instanceof PartitionedTableDefinition ) {
+                try {
+                    maintainPartitions( (PartitionedTableDefinition) table );
+                } catch ( SQLException | RuntimeException e ) {
+                    logger.error( "Unable to maintain partitions of table {}.", table.getName(), e );
+                    if ( failure == null ) {
+                        failure = new SQLException( "Unable to maintain postgres partitions.", e );
+                    } else {
+                        failure.addSuppressed( e );
+                    }
+                }
+            }
+        }
+
+        if ( failure != null ) {
+            throw failure;
+        }
+    }
+
+    /**
+     * Stops scheduled partition maintenance.
+     */
+    public synchronized void shutdown() {
+        if ( partitionMaintenance != null ) {
+            partitionMaintenance.shutdownNow();
+            partitionMaintenance = null;
+        }
+    }
+
+    private void maintainPartitions( PartitionedTableDefinition table ) throws SQLException {
+        final Stopwatch sw = Stopwatch.createStarted();
+        try ( Connection conn = hds.getConnection() ) {
+            try ( Statement stmt = conn.createStatement() ) {
+                for ( String query : table.createPartitionQueries() ) {
+                    stmt.execute( query );
+                }
+            }
+
+            if ( table.getRetention() == null ) {
+                return;
+            }
+
+            final List<String> partitions = new ArrayList<>();
+            try ( PreparedStatement ps = conn.prepareStatement( PARTITIONS_SQL ) ) {
+                ps.setString( 1, table.getName() );
+                try ( ResultSet rs = ps.executeQuery() ) {
+                    while ( rs.next() ) {
+                        partitions.add( rs.getString( 1 ) );
+                    }
+                }
+            }
+
+            try ( Statement stmt = conn.createStatement() ) {
+                for ( String partition : table.getExpiredPartitions( partitions ) ) {
+                    logger.info( "Dropping expired partition {} of table {}.", partition, table.getName() );
+                    stmt.execute( table.dropPartitionQuery( partition ) );
+                }
+            }
+        } finally {
+            logger.info( "Maintained partitions of table {} in {} ms.",
+                    table.getName(),
+                    sw.elapsed( TimeUnit.MILLISECONDS ) );
+        }
+    }
+
+    private void schedulePartitionMaintenance() {
+        if ( partitionMaintenance != null ) {
+            return;
+        }
+        partitionMaintenance = Executors.newSingleThreadScheduledExecutor(
+                new ThreadFactoryBuilder().setDaemon( true ).setNameFormat( "postgres-partitions-%d" ).build() );
+        partitionMaintenance.scheduleWithFixedDelay( () -> {
+            try {
+                maintainPartitions();
+            } catch ( Exception e ) {
+                logger.error( "Unable to maintain postgres partitions.", e );
+            }
+        }, PARTITION_MAINTENANCE_INTERVAL_MINUTES, PARTITION_MAINTENANCE_INTERVAL_MINUTES, TimeUnit.MINUTES );
+    }
+
+    private void initialize( Map<String, PostgresTableDefinition> tables ) throws SQLException {
+        final Set<String> existing = getExistingRelations( tables.values() );
+        final ExecutorService executor = Executors.newFixedThreadPool(
+                Math.min( ddlParallelism, hds.getMaximumPoolSize() ),
+                new ThreadFactoryBuilder().setDaemon( true ).setNameFormat( "postgres-ddl-%d" ).build() );
+
+        try {
+            if ( initializeTables ) {
+                for ( List<PostgresTableDefinition> wave : getCreationWaves( tables ) ) {
+                    final List<Future<?>> creates = new ArrayList<>( wave.size() );
+                    for ( PostgresTableDefinition table : wave ) {
+                        //Distributing an existing table is a no-op, but it may not have been distributed yet.
+                        final boolean distribute = citus && table instanceof CitusDistributedTableDefinition;
+                        if ( !distribute && existing.contains( relationName( table.getName() ) ) ) {
+                            logger.debug( "Table {} already exists... skipping", table.getName() );
+                        } else {
+                            creates.add( executor.submit( () -> {
+                                createTable( table );
+                                return null;
+                            } ) );
                         }
                     }
+                    awaitAll( creates );
+                }
+            }
 
-                    if ( initializeIndices ) {
-                        for ( PostgresIndexDefinition index : table.getIndexes() ) {
-                            String indexSql = index.sql();
-                            try ( Statement sci = conn.createStatement() ) {
-                                sci.execute( indexSql );
-                            } catch ( SQLException e ) {
-                                logger.info( "Failed to create index {} with query {} for table {}",
-                                        index,
-                                        indexSql,
-                                        table );
-                                throw e;
-                            }
+            if ( initializeIndices ) {
+                final List<Future<?>> indexes = new ArrayList<>( tables.size() );
+                for ( PostgresTableDefinition table : tables.values() ) {
+                    indexes.add( executor.submit( () -> {
+                        createIndexes( table, existing );
+                        return null;
+                    } ) );
+                }
+                awaitAll( indexes );
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Compares the fingerprints of the tables with the ones stored when they were last initialized, and returns the
+     * tables that are new, changed or no longer exist. The stored DDL of tables that changed is added to
+     * {@code previousDdl}.
+     */
+    private Map<String, PostgresTableDefinition> getChangedTables(
+            Map<String, PostgresTableDefinition> tables,
+            Map<String, List<String>> ddl,
+            Map<String, List<String>> previousDdl ) throws SQLException {
+        final Map<String, String> fingerprints = new HashMap<>();
+
+        try ( Connection conn = hds.getConnection();
+                PreparedStatement ps = conn.prepareStatement( SELECT_FINGERPRINTS_SQL ) ) {
+            ps.setArray( 1, conn.createArrayOf( PostgresDatatype.TEXT.sql(), tables.keySet().toArray() ) );
+            try ( ResultSet rs = ps.executeQuery() ) {
+                while ( rs.next() ) {
+                    final String name = rs.getString( 1 );
+                    fingerprints.put( name, rs.getString( 2 ) );
+                    previousDdl.put( name, Arrays.asList( (String[]) rs.getArray( 3 ).getArray() ) );
+                }
+            }
+        } catch ( SQLException e ) {
+            if ( !UNDEFINED_TABLE_SQL_STATE.equals( e.getSQLState() ) ) {
+                throw e;
+            }
+            logger.info( "Creating schema fingerprints table {}.", FINGERPRINTS_TABLE );
+            try ( Connection conn = hds.getConnection(); Statement stmt = conn.createStatement() ) {
+                stmt.execute( CREATE_FINGERPRINTS_SQL );
+            }
+        }
+
+        final Map<String, PostgresTableDefinition> changed = new LinkedHashMap<>();
+        for ( PostgresTableDefinition table : tables.values() ) {
+            final String name = table.getName();
+            final List<String> currentDdl = ddl.get( name );
+
+            if ( fingerprint( currentDdl ).equals( fingerprints.get( name ) ) ) {
+                logger.debug( "Table {} is unchanged since it was last initialized... skipping", name );
+                previousDdl.remove( name );
+                continue;
+            }
+            changed.put( name, table );
+        }
+        return changed;
+    }
+
+    /**
+     * Logs the changes to the definition of a table and runs the migration registered for it.
+     *
+     * @return True if a migration was registered and ran successfully.
+     */
+    private boolean migrate( PostgresTableDefinition table, List<String> previousDdl, List<String> currentDdl )
+            throws SQLException {
+        final List<String> removed = new ArrayList<>( previousDdl );
+        removed.removeAll( currentDdl );
+        final List<String> added = new ArrayList<>( currentDdl );
+        added.removeAll( previousDdl );
+        logger.warn( "Definition of table {} has changed.\nRemoved: {}\nAdded: {}", table.getName(), removed, added );
+
+        final SchemaMigration migration = migrations.get( table.getName() );
+        if ( migration == null ) {
+            logger.warn( "No migration is registered for table {}, so only missing tables and indexes are created.",
+                    table.getName() );
+            return false;
+        }
+
+        final Stopwatch sw = Stopwatch.createStarted();
+        try ( Connection conn = hds.getConnection() ) {
+            migration.migrate( conn, table, previousDdl, currentDdl );
+        }
+        recordTiming( "migration " + table.getName(), sw );
+        return true;
+    }
+
+    private void saveFingerprints( Collection<String> tables, Map<String, List<String>> ddl ) throws SQLException {
+        try ( Connection conn = hds.getConnection();
+                PreparedStatement ps = conn.prepareStatement( UPSERT_FINGERPRINT_SQL ) ) {
+            for ( String table : tables ) {
+                final List<String> tableDdl = ddl.get( table );
+                ps.setString( 1, table );
+                ps.setString( 2, fingerprint( tableDdl ) );
+                ps.setArray( 3, conn.createArrayOf( PostgresDatatype.TEXT.sql(), tableDdl.toArray() ) );
+                ps.addBatch();
+            }
+            ps.executeBatch();
+        }
+    }
+
+    /**
+     * Returns the DDL statements used to initialize a table, which determine its fingerprint.
+     */
+    private List<String> getDdl( PostgresTableDefinition table ) {
+        final List<String> ddl = new ArrayList<>();
+        ddl.add( table.createTableQuery() );
+        if ( citus && table instanceof CitusDistributedTableDefinition ) {
+            ddl.add( ( (CitusDistributedTableDefinition) table ).createDistributedTableQuery() );
+        }
+        table.getIndexes().forEach( index -> ddl.add( index.sql() ) );
+        return ddl;
+    }
+
+    private static String fingerprint( List<String> ddl ) {
+        return Hashing.sha256().hashString( String.join( "\n", ddl ), StandardCharsets.UTF_8 ).toString();
+    }
+
+    /**
+     * Groups tables into waves such that every table only references tables in earlier waves or tables that are not
+     * being registered.
+     */
+    static List<List<PostgresTableDefinition>> getCreationWaves( Map<String, PostgresTableDefinition> tables ) {
+        final Map<String, Set<String>> dependencies = new HashMap<>();
+        tables.forEach( ( name, table ) -> dependencies.put( name, table.getColumns().stream()
+                .map( PostgresColumnDefinition::getForeignTableReference )
+                .filter( Optional::isPresent )
+                .map( reference -> reference.get().getName() )
+                .filter( reference -> !reference.equals( name ) && tables.containsKey( reference ) )
+                .collect( Collectors.toCollection( HashSet::new ) ) ) );
+
+        final List<List<PostgresTableDefinition>> waves = new ArrayList<>();
+        final Set<String> created = new HashSet<>();
+        while ( created.size() < tables.size() ) {
+            final List<PostgresTableDefinition> wave = tables.values().stream()
+                    .filter( table -> !created.contains( table.getName() ) )
+                    .filter( table -> created.containsAll( dependencies.get( table.getName() ) ) )
+                    .collect( Collectors.toList() );
+
+            if ( wave.isEmpty() ) {
+                final Set<String> remaining = new HashSet<>( tables.keySet() );
+                remaining.removeAll( created );
+                throw new IllegalStateException( "Foreign key references between tables are circular: " + remaining );
+            }
+
+            wave.forEach( table -> created.add( table.getName() ) );
+            waves.add( wave );
+        }
+        return waves;
+    }
+
+    private void createTable( PostgresTableDefinition table ) throws SQLException {
+        final Stopwatch sw = Stopwatch.createStarted();
+        try ( Connection conn = hds.getConnection(); Statement sctq = conn.createStatement() ) {
+            sctq.execute( table.createTableQuery() );
+
+            if ( citus ) {
+                //Creating the distributed table must be done before creating any indices.
+                if ( table instanceof CitusDistributedTableDefinition ) {
+                    logger.info( "Creating distributed table {}.", table.getName() );
+                    try ( Statement ddstmt = conn.createStatement() ) {
+                        ddstmt.execute( ( (CitusDistributedTableDefinition) table )
+                                .createDistributedTableQuery() );
+                    } catch ( SQLException ddex ) {
+                        if ( ddex.getSQLState().equals( INVALID_TABLE_DEFINITION_SQL_STATE )
+                                && ddex.getMessage().contains( ALREADY_DISTRIBUTED_ERROR_MSG ) ) {
+                            logger.info( "Table {} is already distributed.", table.getName() );
+                        } else {
+                            logger.warn( "Unable to distribute table {}. Cause: {}",
+                                    table.getName(),
+                                    ddex.getMessage());
                         }
                     }
+                }
+            }
+        } catch ( SQLException e ) {
+            logger.info( "Failed to initialize postgres table {} with query {}",
+                    table,
+                    table.createTableQuery(),
+                    e );
+            throw e;
+        }
+        recordTiming( "table " + table.getName(), sw );
+    }
+
+    private void createIndexes( PostgresTableDefinition table, Set<String> existing ) throws SQLException {
+        try ( Connection conn = hds.getConnection() ) {
+            for ( PostgresIndexDefinition index : table.getIndexes() ) {
+                if ( index.getName().isPresent() && existing.contains( relationName( index.getName().get() ) ) ) {
+                    logger.debug( "Index {} already exists... skipping", index.getName().get() );
+                    continue;
+                }
+
+                final Stopwatch sw = Stopwatch.createStarted();
+                String indexSql = index.sql();
+                try ( Statement sci = conn.createStatement() ) {
+                    sci.execute( indexSql );
                 } catch ( SQLException e ) {
-                    logger.info( "Failed to initialize postgres table {} with query {}",
-                            table,
-                            table.createTableQuery(),
-                            e );
+                    logger.info( "Failed to create index {} with query {} for table {}",
+                            index,
+                            indexSql,
+                            table );
                     throw e;
                 }
+                recordTiming( "index " + index.getName().orElse( indexSql ), sw );
+            }
+        }
+    }
 
+    /**
+     * Looks up which of the tables and named indexes already exist in a single catalog query.
+     */
+    private Set<String> getExistingRelations( Collection<PostgresTableDefinition> tables ) throws SQLException {
+        final Set<String> relations = new HashSet<>();
+        for ( PostgresTableDefinition table : tables ) {
+            relations.add( relationName( table.getName() ) );
+            table.getIndexes().forEach( index -> index.getName()
+                    .ifPresent( name -> relations.add( relationName( name ) ) ) );
+        }
+
+        final Set<String> existing = new HashSet<>();
+        try ( Connection conn = hds.getConnection(); PreparedStatement ps = conn.prepareStatement(
+                EXISTING_RELATIONS_SQL ) ) {
+            ps.setArray( 1, conn.createArrayOf( PostgresDatatype.TEXT.sql(), relations.toArray() ) );
+            try ( ResultSet rs = ps.executeQuery() ) {
+                while ( rs.next() ) {
+                    existing.add( rs.getString( 1 ) );
+                }
             }
-            activeTables.put( table.getName(), table );
         }
+        logger.info( "{} of {} postgres tables and indexes already exist.", existing.size(), relations.size() );
+        return existing;
+    }
+
+    /**
+     * Returns the name postgres stores in the catalog for a possibly quoted or schema qualified identifier.
+     */
+    private static String relationName( String name ) {
+        final String unqualified = name.substring( name.lastIndexOf( '.' ) + 1 );
+        return unqualified.startsWith( "\"" )
+                ? unqualified.replace( "\"", "" )
+                : unqualified.toLowerCase();
+    }
+
+    private static void awaitAll( List<Future<?>> futures ) throws SQLException {
+        try {
+            for ( Future<?> future : futures ) {
+                future.get();
+            }
+        } catch ( InterruptedException e ) {
+            Thread.currentThread().interrupt();
+            throw new SQLException( "Interrupted while initializing postgres tables.", e );
+        } catch ( ExecutionException e ) {
+            if ( e.getCause() instanceof SQLException ) {
+                throw (SQLException) e.getCause();
+            }
+            throw new IllegalStateException( "Unable to initialize postgres tables.", e.getCause() );
+        }
+    }
+
+    private void recordTiming( String object, Stopwatch sw ) {
+        final long elapsed = sw.elapsed( TimeUnit.MILLISECONDS );
+        timings.put( object, elapsed );
+        logger.info( "Created {} in {} ms.", object, elapsed );
+    }
+
+    /**
+     * @return The time in milliseconds it took to create each table and index created by this manager.
+     */
+    public Map<String, Long> getTimings() {
+        return Collections.unmodifiableMap( timings );
     }
 
     public HikariDataSource getHikariDataSource() {
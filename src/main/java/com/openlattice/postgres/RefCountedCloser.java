@@ -0,0 +1,101 @@
+/*
+ * Copyright (C) 2021. OpenLattice, Inc
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * You can contact the owner of the copyright at support@openlattice.com
+ *
+ */
+
+package com.openlattice.postgres;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkState;
+
+/**
+ * Closes resources shared by several consumers, such as a {@link com.openlattice.postgres.streams.StatementHolder}
+ * or connection read by multiple iterators, once every consumer has released them.
+ * <p>
+ * The closer starts out with one reference per consumer. The resources are closed on the thread that releases the
+ * last reference, so no thread is ever blocked waiting for the count to reach zero.
+ *
+ * @author Matthew Tamayo-Rios &lt;matthew@openlattice.com&gt;
+ */
+public final class RefCountedCloser {
+    private static final Logger logger = LoggerFactory.getLogger( RefCountedCloser.class );
+
+    private final AtomicInteger       references;
+    private final List<AutoCloseable> resources;
+
+    /**
+     * @param references The number of consumers that must release the resources before they are closed. If zero, the
+     * resources are closed immediately.
+     * @param resources The resources to close, in the order they should be closed.
+     */
+    public RefCountedCloser( int references, AutoCloseable... resources ) {
+        checkArgument( references >= 0, "Number of references must be nonnegative." );
+        this.references = new AtomicInteger( references );
+        this.resources = Arrays.asList( resources );
+        if ( references == 0 ) {
+            this.resources.forEach( RefCountedCloser::safeTryClose );
+        }
+    }
+
+    /**
+     * Adds a reference for an additional consumer.
+     *
+     * @throws IllegalStateException If the resources have already been closed.
+     */
+    public void retain() {
+        final int previous = references.getAndUpdate( count -> count == 0 ? 0 : count + 1 );
+        checkState( previous > 0, "Unable to retain resources that have already been closed." );
+    }
+
+    /**
+     * Releases a reference and closes the resources if it was the last one.
+     */
+    public void release() {
+        final int previous = references.getAndUpdate( count -> count == 0 ? 0 : count - 1 );
+        if ( previous == 1 ) {
+            resources.forEach( RefCountedCloser::safeTryClose );
+        } else if ( previous == 0 ) {
+            logger.warn( "Released more references than were held." );
+        } else {
+            logger.debug( "{} references remaining.", previous - 1 );
+        }
+    }
+
+    public int getReferences() {
+        return references.get();
+    }
+
+    public boolean isClosed() {
+        return references.get() == 0;
+    }
+
+    private static void safeTryClose( AutoCloseable resource ) {
+        try {
+            resource.close();
+        } catch ( Exception e ) {
+            logger.error( "Unable to close resource {}", resource, e );
+        }
+    }
+}
@@ -0,0 +1,79 @@
+/*
+ * Copyright (C) 2021. OpenLattice, Inc
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * You can contact the owner of the copyright at support@openlattice.com
+ *
+ */
+
+package com.openlattice.postgres;
+
+import java.lang.ref.WeakReference;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Column name to index mapping for a single result set, resolved once from its {@link ResultSetMetaData} so that
+ * decoding rows doesn't repeat name lookups for every row.
+ * <p>
+ * Only a weak reference to the result set is kept, so a cached instance never keeps a closed result set and its
+ * buffered rows alive.
+ *
+ * @author Matthew Tamayo-Rios &lt;matthew@openlattice.com&gt;
+ */
+public final class ResultSetColumns {
+    private final WeakReference<ResultSet> resultSet;
+    private final Map<String, Integer>     indexes;
+    private final int                      columnCount;
+
+    public ResultSetColumns( ResultSet rs ) throws SQLException {
+        final ResultSetMetaData metaData = rs.getMetaData();
+        this.columnCount = metaData.getColumnCount();
+        this.resultSet = new WeakReference<>( rs );
+        this.indexes = new HashMap<>( columnCount * 2 );
+
+        for ( int i = 1; i <= columnCount; ++i ) {
+            indexes.putIfAbsent( metaData.getColumnLabel( i ), i );
+        }
+    }
+
+    public int getColumnCount() {
+        return columnCount;
+    }
+
+    public boolean isFor( ResultSet rs ) {
+        return resultSet.get() == rs;
+    }
+
+    /**
+     * @param column The label of the column.
+     * @return The one-based index of the column.
+     * @throws SQLException If the result set does not contain the column.
+     */
+    public int indexOf( String column ) throws SQLException {
+        Integer index = indexes.get( column );
+        if ( index == null ) {
+            //Unquoted identifiers are folded to lower case by postgres.
+            index = indexes.get( column.toLowerCase() );
+        }
+        if ( index == null ) {
+            throw new SQLException( "Result set does not contain column " + column );
+        }
+        return index;
+    }
+}
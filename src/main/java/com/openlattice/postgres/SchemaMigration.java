@@ -0,0 +1,49 @@
+/*
+ * Copyright (C) 2021. OpenLattice, Inc
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * You can contact the owner of the copyright at support@openlattice.com
+ *
+ */
+
+package com.openlattice.postgres;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.List;
+
+/**
+ * Migrates an existing table whose definition has changed since it was last initialized. Table creation only creates
+ * missing tables and indexes, so changes to existing objects, such as new columns, must be applied by a migration.
+ *
+ * @author Matthew Tamayo-Rios &lt;matthew@openlattice.com&gt;
+ */
+@FunctionalInterface
+public interface SchemaMigration {
+    /**
+     * Called before any DDL is run for the table. The fingerprint of the table is only updated once all DDL has
+     * succeeded, so migrations are run again if initialization fails and should be idempotent.
+     *
+     * @param connection A connection in auto-commit mode.
+     * @param table The current definition of the table.
+     * @param previousDdl The DDL statements of the definition the table was last initialized with.
+     * @param currentDdl The DDL statements of the current definition.
+     */
+    void migrate(
+            Connection connection,
+            PostgresTableDefinition table,
+            List<String> previousDdl,
+            List<String> currentDdl ) throws SQLException;
+}
@@ -0,0 +1,210 @@
+/*
+ * Copyright (C) 2021. OpenLattice, Inc
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * You can contact the owner of the copyright at support@openlattice.com
+ *
+ */
+
+package com.openlattice.postgres.mapstores;
+
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.openlattice.postgres.PostgresTableDefinition;
+import com.zaxxer.hikari.HikariDataSource;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import static com.google.common.base.Preconditions.checkState;
+
+/**
+ * A postgres mapstore that runs database work on a dedicated, bounded executor instead of the calling thread.
+ * <p>
+ * Large {@link #loadAll(Collection)} calls are split into chunks of {@code batchSize} keys that are loaded
+ * concurrently over separate connections, which shortens the time Hazelcast partition threads spend blocked on the
+ * database. The same operations are also exposed as futures for callers that don't need to block at all.
+ * <p>
+ * The number of concurrent database operations per map is capped by {@code maxConcurrency} to protect the
+ * connection pool. When the executor queue is full, work runs on the calling thread, which provides backpressure.
+ * Once the mapstore has been destroyed, all work runs on the calling thread.
+ * <p>
+ * When shard grouping is enabled, the single shard batches of {@link #loadAll(Collection)} and
+ * {@link #storeAll(Map)} are also run concurrently.
+ *
+ * @author Matthew Tamayo-Rios &lt;matthew@openlattice.com&gt;
+ */
+public abstract class AbstractAsyncPostgresMapstore<K, V> extends AbstractBasePostgresMapstore<K, V> {
+    public static final int DEFAULT_MAX_CONCURRENCY = 4;
+    public static final int DEFAULT_QUEUE_CAPACITY  = 1 << 10;
+
+    private final ExecutorService      executor;
+    private final ThreadLocal<Boolean> onExecutor = ThreadLocal.withInitial( () -> false );
+
+    public AbstractAsyncPostgresMapstore( String mapName, PostgresTableDefinition table, HikariDataSource hds ) {
+        this( mapName, table, hds, BATCH_SIZE, DEFAULT_MAX_CONCURRENCY );
+    }
+
+    public AbstractAsyncPostgresMapstore(
+            String mapName,
+            PostgresTableDefinition table,
+            HikariDataSource hds,
+            int batchSize,
+            int maxConcurrency ) {
+        super( mapName, table, hds, batchSize );
+        checkState( maxConcurrency > 0, "Max concurrency must be positive." );
+        checkState( maxConcurrency <= hds.getMaximumPoolSize(),
+                "Max concurrency for map %s cannot exceed the size of the connection pool.",
+                mapName );
+        this.executor = new ThreadPoolExecutor(
+                maxConcurrency,
+                maxConcurrency,
+                0L,
+                TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>( DEFAULT_QUEUE_CAPACITY ),
+                new ThreadFactoryBuilder()
+                        .setDaemon( true )
+                        .setNameFormat( "mapstore-" + mapName + "-%d" )
+                        .setThreadFactory( runnable -> new Thread( () -> {
+                            onExecutor.set( true );
+                            runnable.run();
+                        } ) )
+                        .build(),
+                //Unlike CallerRunsPolicy, this also runs tasks rejected after shutdown, which would otherwise be
+                //dropped and leave their futures incomplete.
+                ( task, pool ) -> task.run() );
+    }
+
+    public CompletableFuture<V> loadAsync( K key ) {
+        return CompletableFuture.supplyAsync( () -> load( key ), executor );
+    }
+
+    public CompletableFuture<Map<K, V>> loadAllAsync( Collection<K> keys ) {
+        return CompletableFuture.supplyAsync( () -> loadAll( keys ), executor );
+    }
+
+    public CompletableFuture<Void> storeAsync( K key, V value ) {
+        return CompletableFuture.runAsync( () -> store( key, value ), executor );
+    }
+
+    public CompletableFuture<Void> storeAllAsync( Map<K, V> map ) {
+        return CompletableFuture.runAsync( () -> storeAll( map ), executor );
+    }
+
+    public CompletableFuture<Void> deleteAsync( K key ) {
+        return CompletableFuture.runAsync( () -> delete( key ), executor );
+    }
+
+    /**
+     * Loads chunks of keys concurrently over separate connections and merges the results.
+     */
+    @Override
+    protected Map<K, V> loadAllFromDatabase( Collection<K> keys ) {
+        //Fanning out from a thread of the executor could deadlock once all threads are waiting on their own chunks.
+        if ( keys.size() <= batchSize || onExecutor.get() ) {
+            return super.loadAllFromDatabase( keys );
+        }
+
+        final List<CompletableFuture<Map<K, V>>> chunks = new ArrayList<>( keys.size() / batchSize + 1 );
+        for ( List<K> chunk : Iterables.partition( keys, batchSize ) ) {
+            chunks.add( CompletableFuture.supplyAsync( () -> super.loadAllFromDatabase( chunk ), executor ) );
+        }
+        return merge( chunks, keys.size() );
+    }
+
+    /**
+     * Loads the keys of each shard concurrently. Every shard is loaded with a single query.
+     */
+    @Override
+    protected Map<K, V> loadShards( Collection<List<K>> shards, int keyCount ) {
+        if ( onExecutor.get() ) {
+            return super.loadShards( shards, keyCount );
+        }
+
+        final List<CompletableFuture<Map<K, V>>> loads = new ArrayList<>( shards.size() );
+        for ( List<K> shard : shards ) {
+            loads.add( CompletableFuture.supplyAsync( () -> loadAllFromDatabase( shard ), executor ) );
+        }
+        return merge( loads, keyCount );
+    }
+
+    private Map<K, V> merge( List<CompletableFuture<Map<K, V>>> loads, int keyCount ) {
+        final Map<K, V> result = Maps.newLinkedHashMapWithExpectedSize( keyCount );
+        try {
+            loads.forEach( load -> result.putAll( load.join() ) );
+        } catch ( CompletionException e ) {
+            logger.error( "Error loading keys in map {}.", mapName, e );
+            throw new IllegalStateException( "Unable to load keys for map " + mapName, e.getCause() );
+        }
+        return result;
+    }
+
+    /**
+     * Stores single shard chunks concurrently, each over its own connection, when shard grouping is enabled.
+     */
+    @Override
+    protected void storeChunks( List<List<Entry<K, V>>> chunks, Map<K, V> failed ) {
+        if ( !isShardGroupingEnabled() || chunks.size() <= 1 || onExecutor.get() ) {
+            super.storeChunks( chunks, failed );
+            return;
+        }
+
+        final List<CompletableFuture<Void>> stores = new ArrayList<>( chunks.size() );
+        final List<Map<K, V>> chunkFailures = new ArrayList<>( chunks.size() );
+        for ( List<Entry<K, V>> chunk : chunks ) {
+            final Map<K, V> chunkFailed = new HashMap<>();
+            chunkFailures.add( chunkFailed );
+            stores.add( CompletableFuture.runAsync( () -> super.storeChunks( List.of( chunk ), chunkFailed ),
+                    executor ) );
+        }
+
+        //Collect the failed entries of every chunk, including those of chunks that threw, before rethrowing.
+        IllegalStateException failure = null;
+        for ( int i = 0; i < stores.size(); ++i ) {
+            try {
+                stores.get( i ).join();
+            } catch ( CompletionException e ) {
+                logger.error( "Error storing entries in map {}.", mapName, e );
+                if ( failure == null ) {
+                    failure = new IllegalStateException( "Unable to store entries in map " + mapName, e.getCause() );
+                } else {
+                    failure.addSuppressed( e.getCause() );
+                }
+            }
+            failed.putAll( chunkFailures.get( i ) );
+        }
+
+        if ( failure != null ) {
+            throw failure;
+        }
+    }
+
+    @Override
+    public void destroy() {
+        super.destroy();
+        executor.shutdown();
+    }
+}
@@ -20,20 +20,52 @@
 
 package com.openlattice.postgres.mapstores;
 
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
 import com.codahale.metrics.annotation.Timed;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.openlattice.postgres.PostgresBinaryCopyWriter;
+import com.openlattice.postgres.PostgresColumnDefinition;
 import com.openlattice.postgres.PostgresTableDefinition;
 import com.zaxxer.hikari.HikariDataSource;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static com.google.common.base.Preconditions.checkState;
 
 /**
  * @author Matthew Tamayo-Rios &lt;matthew@openlattice.com&gt;
  */
 public abstract class AbstractBasePostgresMapstore<K, V> extends AbstractPostgresMapstore2<K, V> {
+    /**
+     * Default copy threshold, which disables storing batches via {@code COPY}.
+     */
+    public static final int COPY_DISABLED = Integer.MAX_VALUE;
+
+    private static final String DATA_EXCEPTION_CLASS                 = "22";
+    private static final String INTEGRITY_CONSTRAINT_VIOLATION_CLASS = "23";
+
+    private final Histogram chunkSizes;
+    private final Timer     commitTimer;
+    private final Meter     storeFailures;
+
+    private String stagingTable;
+    private String createStagingTableQuery;
+    private String copyMergeQuery;
 
     public AbstractBasePostgresMapstore(TypedMapIdentifier<K, V> identifier, PostgresTableDefinition table, HikariDataSource hds) {
         this( identifier.name(), table, hds );
@@ -49,41 +81,280 @@ public abstract class AbstractBasePostgresMapstore<K, V> extends AbstractPostgre
             HikariDataSource hds,
             int batchSize ) {
         super(mapName, table, hds, batchSize );
+        this.chunkSizes = metrics.histogram( MetricRegistry.name( AbstractBasePostgresMapstore.class,
+                mapName,
+                "chunk-size" ) );
+        this.commitTimer = metrics.timer( MetricRegistry.name( AbstractBasePostgresMapstore.class,
+                mapName,
+                "commit" ) );
+        this.storeFailures = metrics.meter( MetricRegistry.name( AbstractBasePostgresMapstore.class,
+                mapName,
+                "store-failures" ) );
+        checkState( this instanceof CopyRowValues || getCopyThreshold() == COPY_DISABLED,
+                "Map %s must implement %s to store using copy.",
+                mapName,
+                CopyRowValues.class.getSimpleName() );
     }
 
     @Timed
     @Override
     public void store( K key, V value ) {
-        try ( Connection connection = hds.getConnection(); PreparedStatement insertRow = prepareInsert( connection ) ) {
-            bind( insertRow, key, value );
-            logger.debug( "Insert query: {}", insertRow );
-            insertRow.execute();
-            handleStoreSucceeded( key, value );
-        } catch ( SQLException e ) {
-            String errMsg = "Error executing SQL during store for key " + key + " in map " + mapName + ".";
-            logger.error( errMsg, e );
-            handleStoreFailed( key, value );
-            throw new IllegalStateException( errMsg, e );
+        final Collection<K> written = ImmutableList.of( key );
+        final long start = System.nanoTime();
+        invalidate( written );
+        try {
+            try ( Connection connection = hds.getConnection();
+                    PreparedStatement insertRow = prepareInsert( connection ) ) {
+                bind( insertRow, key, value );
+                logger.debug( "Insert query: {}", insertRow );
+                insertRow.execute();
+                recordFlush( 1, start );
+                handleStoreSucceeded( key, value );
+            } catch ( SQLException e ) {
+                String errMsg = "Error executing SQL during store for key " + key + " in map " + mapName + ".";
+                logger.error( errMsg, e );
+                handleStoreFailed( key, value );
+                throw new IllegalStateException( errMsg, e );
+            }
+        } finally {
+            invalidate( written );
         }
-
     }
 
+    /**
+     * Stores a batch in chunks of {@link #getStoreChunkSize()} entries, each committed in its own transaction. When a
+     * chunk fails because of its data it is bisected until the offending entries are isolated, so only those entries
+     * are lost from the chunk. Any other failure, such as a broken connection, stops the store and fails the current
+     * and all remaining chunks. Each failed entry is reported once via {@link #handleStoreFailed(Object, Object)}.
+     * <p>
+     * If any entries fail, the entries that were stored are removed from {@code map} and an exception is thrown, so
+     * that Hazelcast retries only the entries that could not be stored.
+     * <p>
+     * When shard grouping is enabled, every chunk only contains entries of a single citus shard.
+     */
     @Timed
     @Override
     public void storeAll( Map<K, V> map ) {
-        K key = null;
-        try ( Connection connection = hds.getConnection(); PreparedStatement insertRow = prepareInsert( connection ) ) {
-            //TODO: We might want to do an inner try catch here to get specific logging on what failed
-            for ( Entry<K, V> entry : map.entrySet() ) {
-                key = entry.getKey();
-                bind( insertRow, key, entry.getValue() );
+        final Collection<K> written = new ArrayList<>( map.keySet() );
+        invalidate( written );
+        try {
+            if ( map.size() >= getCopyThreshold() && storeAllUsingCopy( map ) ) {
+                return;
+            }
+
+            final long start = System.nanoTime();
+            final int total = map.size();
+            final Map<K, V> failed = new HashMap<>();
+            final List<List<Entry<K, V>>> chunks = new ArrayList<>();
+            for ( List<Entry<K, V>> shard : groupByShard( map.entrySet(), Entry::getKey ) ) {
+                chunks.addAll( Lists.partition( shard, getStoreChunkSize() ) );
+            }
+
+            RuntimeException failure = null;
+            try {
+                storeChunks( chunks, failed );
+            } catch ( RuntimeException e ) {
+                failure = e;
+            }
+            failed.forEach( this::handleStoreFailed );
+
+            if ( failed.isEmpty() ) {
+                recordFlush( map.size(), start );
+                handleStoreAllSucceeded( map );
+            } else {
+                storeFailures.mark( failed.size() );
+                final Map<K, V> stored = new HashMap<>( map );
+                stored.keySet().removeAll( failed.keySet() );
+                if ( !stored.isEmpty() ) {
+                    recordFlush( stored.size(), start );
+                    handleStoreAllSucceeded( stored );
+                }
+                map.keySet().retainAll( failed.keySet() );
+                throw new IllegalStateException( "Unable to store " + failed.size() + " of " + total
+                        + " entries in map " + mapName, failure );
+            }
+        } finally {
+            invalidate( written );
+        }
+    }
+
+    /**
+     * Stores chunks one after the other over a single connection, adding the entries that could not be stored to
+     * {@code failed}. If a chunk fails for a reason other than its data, the entries of that chunk and of all the
+     * chunks after it are added to {@code failed} and an exception is thrown.
+     */
+    protected void storeChunks( List<List<Entry<K, V>>> chunks, Map<K, V> failed ) {
+        int next = 0;
+        try ( Connection connection = hds.getConnection() ) {
+            connection.setAutoCommit( false );
+            try ( PreparedStatement insertRow = prepareInsert( connection ) ) {
+                for ( ; next < chunks.size(); ++next ) {
+                    storeChunk( connection, insertRow, chunks.get( next ), failed );
+                }
+            }
+        } catch ( SQLException e ) {
+            logger.error( "Error executing SQL during store all in map {}", mapName, e );
+            for ( List<Entry<K, V>> chunk : chunks.subList( next, chunks.size() ) ) {
+                chunk.forEach( entry -> failed.put( entry.getKey(), entry.getValue() ) );
+            }
+            throw new IllegalStateException( "Unable to store entries in map " + mapName, e );
+        }
+    }
+
+    private void storeChunk(
+            Connection connection,
+            PreparedStatement insertRow,
+            List<Entry<K, V>> chunk,
+            Map<K, V> failed ) throws SQLException {
+        try {
+            for ( Entry<K, V> entry : chunk ) {
+                bind( insertRow, entry.getKey(), entry.getValue() );
                 insertRow.addBatch();
             }
             insertRow.executeBatch();
+            final long commitStart = System.nanoTime();
+            connection.commit();
+            commitTimer.update( System.nanoTime() - commitStart, TimeUnit.NANOSECONDS );
+            chunkSizes.update( chunk.size() );
+        } catch ( SQLException e ) {
+            try {
+                insertRow.clearBatch();
+                connection.rollback();
+            } catch ( SQLException rollbackFailure ) {
+                e.addSuppressed( rollbackFailure );
+                throw e;
+            }
+
+            //Retrying parts of the chunk only helps if some of its entries are bad, not if the connection is.
+            if ( !isDataError( e ) ) {
+                throw e;
+            }
+
+            if ( chunk.size() == 1 ) {
+                final Entry<K, V> entry = chunk.get( 0 );
+                logger.error( "Error executing SQL during store all for key {} in map {}", entry.getKey(), mapName, e );
+                failed.put( entry.getKey(), entry.getValue() );
+            } else {
+                final int mid = chunk.size() / 2;
+                storeChunk( connection, insertRow, chunk.subList( 0, mid ), failed );
+                storeChunk( connection, insertRow, chunk.subList( mid, chunk.size() ), failed );
+            }
+        }
+    }
+
+    /**
+     * Returns true if {@code e} was caused by the values being written, such as invalid data (SQLSTATE class 22) or a
+     * constraint violation (SQLSTATE class 23), rather than by the connection or the state of the server.
+     */
+    protected static boolean isDataError( SQLException e ) {
+        for ( SQLException cause = e; cause != null; cause = cause.getNextException() ) {
+            final String state = cause.getSQLState();
+            if ( state != null && ( state.startsWith( DATA_EXCEPTION_CLASS )
+                    || state.startsWith( INTEGRITY_CONSTRAINT_VIOLATION_CLASS ) ) ) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Maximum number of entries written in a single transaction by {@link #storeAll(Map)}.
+     */
+    protected int getStoreChunkSize() {
+        return batchSize;
+    }
+
+    /**
+     * Stores a batch by streaming it into a temporary staging table using binary {@code COPY} and merging the staging
+     * table into the target table with a single {@code INSERT ... SELECT ... ON CONFLICT} statement. The whole batch
+     * is applied in a single transaction.
+     *
+     * @return True if the batch was stored, false if it was rolled back and should be stored using a different method.
+     */
+    protected boolean storeAllUsingCopy( Map<K, V> map ) {
+        final long start = System.nanoTime();
+        K key = null;
+        try ( Connection connection = hds.getConnection() ) {
+            connection.setAutoCommit( false );
+            try {
+                try ( Statement stmt = connection.createStatement() ) {
+                    stmt.execute( getCreateStagingTableQuery() );
+                }
+
+                try ( PostgresBinaryCopyWriter writer = new PostgresBinaryCopyWriter( connection,
+                        getStagingTable(),
+                        getInsertColumns() ) ) {
+                    for ( Entry<K, V> entry : map.entrySet() ) {
+                        key = entry.getKey();
+                        writer.writeRow( copyRowValues().copyValues( key, entry.getValue() ) );
+                    }
+                    writer.finish();
+                }
+
+                try ( Statement merge = connection.createStatement() ) {
+                    final var merged = merge.executeUpdate( getCopyMergeQuery() );
+                    logger.debug( "Merged {} of {} copied rows into map {}", merged, map.size(), mapName );
+                }
+                connection.commit();
+            } catch ( SQLException | RuntimeException e ) {
+                connection.rollback();
+                throw e;
+            }
+            recordFlush( map.size(), start );
             handleStoreAllSucceeded( map );
+            return true;
         } catch ( SQLException e ) {
-            logger.error( "Error executing SQL during store all for key {} in map {}", key, mapName, e );
+            logger.error( "Error executing SQL during copy store all for key {} in map {}. Falling back to batches.",
+                    key,
+                    mapName,
+                    e );
+            return false;
+        }
+    }
+
+    /**
+     * Batches at least this large are written using {@link #storeAllUsingCopy(Map)}, smaller batches are bound
+     * individually using {@link #bind(PreparedStatement, Object, Object)}. Mapstores that opt into copy mode must
+     * also implement {@link CopyRowValues}.
+     */
+    protected int getCopyThreshold() {
+        return COPY_DISABLED;
+    }
+
+    @SuppressWarnings( "unchecked" )
+    private CopyRowValues<K, V> copyRowValues() {
+        return (CopyRowValues<K, V>) this;
+    }
+
+    protected String buildCopyMergeQuery( String stagingTable ) {
+        final String columns = getInsertColumns().stream()
+                .map( PostgresColumnDefinition::getName )
+                .collect( Collectors.joining( "," ) );
+
+        return "INSERT INTO " + table.getName() + " (" + columns + ") SELECT " + columns + " FROM " + stagingTable
+                + buildUpsertOnConflictQuery();
+    }
+
+    protected String getStagingTable() {
+        if ( stagingTable == null ) {
+            stagingTable = "copy_stage_" + table.getName().replaceAll( "\\W", "_" );
+        }
+        return stagingTable;
+    }
+
+    protected String getCreateStagingTableQuery() {
+        if ( createStagingTableQuery == null ) {
+            createStagingTableQuery = "CREATE TEMPORARY TABLE IF NOT EXISTS " + getStagingTable() + " (LIKE "
+                    + table.getName() + " INCLUDING DEFAULTS) ON COMMIT DELETE ROWS";
+        }
+        return createStagingTableQuery;
+    }
+
+    protected String getCopyMergeQuery() {
+        if ( copyMergeQuery == null ) {
+            copyMergeQuery = buildCopyMergeQuery( getStagingTable() );
         }
+        return copyMergeQuery;
     }
 
     /**
@@ -21,19 +21,35 @@
 package com.openlattice.postgres.mapstores;
 
 import com.codahale.metrics.annotation.Timed;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.openlattice.postgres.PostgresColumnDefinition;
 import com.openlattice.postgres.PostgresTableDefinition;
 import com.zaxxer.hikari.HikariDataSource;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Optional;
+import java.util.stream.Collectors;
+
+import static com.google.common.base.Preconditions.checkState;
 
 /**
  * @author Matthew Tamayo-Rios &lt;matthew@openlattice.com&gt;
  */
 public abstract class AbstractBaseSplitKeyPostgresMapstore<K, K2, V>
         extends AbstractPostgresMapstore2<K, Map<K2, V>> {
+    /**
+     * Postgres limits the number of bind parameters in a single statement to 65535.
+     */
+    private static final int MAX_PARAMETERS = ( 1 << 16 ) - 1;
+
+    private final String[] multiRowInsertQueries = new String[ Integer.SIZE ];
 
     public AbstractBaseSplitKeyPostgresMapstore( String mapName, PostgresTableDefinition table, HikariDataSource hds ) {
         this( mapName, table, hds, BATCH_SIZE );
@@ -50,51 +66,209 @@ public abstract class AbstractBaseSplitKeyPostgresMapstore<K, K2, V>
             HikariDataSource hds,
             int batchSize ) {
         super( mapName, table, hds, batchSize );
+        checkState( this instanceof MultiRowBinder || !isMultiRowUpsertEnabled(),
+                "Map %s must implement %s to store using multi-row inserts.",
+                mapName,
+                MultiRowBinder.class.getSimpleName() );
     }
 
     @Timed
     @Override
     public void store( K key, Map<K2, V> value ) {
-        try ( Connection connection = hds.getConnection(); PreparedStatement insertRow = prepareInsert( connection ) ) {
-            for ( Entry<K2, V> entry : value.entrySet() ) {
-                bind( insertRow, key, entry.getKey(), entry.getValue() );
-                logger.debug( "Insert query: {}", insertRow );
-                insertRow.addBatch();
+        final Collection<K> written = ImmutableList.of( key );
+        final long start = System.nanoTime();
+        invalidate( written );
+        try {
+            if ( isMultiRowUpsertEnabled() ) {
+                try ( Connection connection = hds.getConnection() ) {
+                    replaceUsingMultiRowUpsert( connection, ImmutableMap.of( key, value ) );
+                    recordFlush( 1, start );
+                    handleStoreSucceeded( key, value );
+                } catch ( SQLException e ) {
+                    String errMsg = "Error executing SQL during store for key " + key + "in map " + mapName + ".";
+                    logger.error( errMsg, e );
+                    handleStoreFailed( key, value );
+                    throw new IllegalStateException( errMsg, e );
+                }
+                return;
             }
-            insertRow.executeBatch();
-            handleStoreSucceeded( key, value );
-        } catch ( SQLException e ) {
-            String errMsg = "Error executing SQL during store for key " + key + "in map " + mapName + ".";
-            logger.error( errMsg, e );
-            handleStoreFailed( key, value );
-            throw new IllegalStateException( errMsg, e );
-        }
 
+            try ( Connection connection = hds.getConnection();
+                    PreparedStatement insertRow = prepareInsert( connection ) ) {
+                for ( Entry<K2, V> entry : value.entrySet() ) {
+                    bind( insertRow, key, entry.getKey(), entry.getValue() );
+                    logger.debug( "Insert query: {}", insertRow );
+                    insertRow.addBatch();
+                }
+                insertRow.executeBatch();
+                recordFlush( 1, start );
+                handleStoreSucceeded( key, value );
+            } catch ( SQLException e ) {
+                String errMsg = "Error executing SQL during store for key " + key + "in map " + mapName + ".";
+                logger.error( errMsg, e );
+                handleStoreFailed( key, value );
+                throw new IllegalStateException( errMsg, e );
+            }
+        } finally {
+            invalidate( written );
+        }
     }
 
     @Timed
     @Override
     public void storeAll( Map<K, Map<K2, V>> map ) {
-        K key = null;
-        try ( Connection connection = hds.getConnection(); PreparedStatement insertRow = prepareInsert( connection ) ) {
-            //TODO: We might want to do an inner try catch here to get specific logging on what failed
-            for ( Entry<K, Map<K2, V>> entry : map.entrySet() ) {
-                key = entry.getKey();
-                for ( Entry<K2, V> subEntry : entry.getValue().entrySet() ) {
-                    bind( insertRow, key, subEntry.getKey(), subEntry.getValue() );
-                    insertRow.addBatch();
+        final Collection<K> written = new ArrayList<>( map.keySet() );
+        invalidate( written );
+        try {
+            final long start = System.nanoTime();
+            if ( isMultiRowUpsertEnabled() ) {
+                try ( Connection connection = hds.getConnection() ) {
+                    replaceUsingMultiRowUpsert( connection, map );
+                    recordFlush( map.size(), start );
+                    handleStoreAllSucceeded( map );
+                } catch ( SQLException e ) {
+                    String errMsg = "Error executing SQL during multi-row store all in map " + mapName + ".";
+                    logger.error( errMsg, e );
+                    map.forEach( this::handleStoreFailed );
+                    throw new IllegalStateException( errMsg, e );
+                }
+                return;
+            }
+
+            K key = null;
+            try ( Connection connection = hds.getConnection();
+                    PreparedStatement insertRow = prepareInsert( connection ) ) {
+                //TODO: We might want to do an inner try catch here to get specific logging on what failed
+                for ( Entry<K, Map<K2, V>> entry : map.entrySet() ) {
+                    key = entry.getKey();
+                    for ( Entry<K2, V> subEntry : entry.getValue().entrySet() ) {
+                        bind( insertRow, key, subEntry.getKey(), subEntry.getValue() );
+                        insertRow.addBatch();
+                    }
+                }
+                insertRow.executeBatch();
+                recordFlush( map.size(), start );
+                handleStoreAllSucceeded( map );
+            } catch ( SQLException e ) {
+                logger.error( "Error executing SQL during store all for key {} in map {}", key, mapName, e );
+            }
+        } finally {
+            invalidate( written );
+        }
+    }
+
+    /**
+     * Atomically replaces the values of the provided keys. All existing rows for each key are deleted and the
+     * sub-entries are written using multi-row inserts, in a single transaction, so sub-keys that are no longer present
+     * in a value are removed.
+     * <p>
+     * Inserts are sized in powers of two, so only a small fixed set of statements is ever prepared.
+     */
+    protected void replaceUsingMultiRowUpsert( Connection connection, Map<K, Map<K2, V>> map ) throws SQLException {
+        connection.setAutoCommit( false );
+        try {
+            try ( PreparedStatement deleteRows = prepareDelete( connection ) ) {
+                for ( K key : map.keySet() ) {
+                    bind( deleteRows, key );
+                    deleteRows.addBatch();
+                }
+                deleteRows.executeBatch();
+            }
+
+            int remaining = map.values().stream().mapToInt( Map::size ).sum();
+            final int maxRows = getMaxRowsPerInsert();
+
+            PreparedStatement insertRows = null;
+            int rowsPerStatement = 0;
+            int rows = 0;
+            int offset = 1;
+            try {
+                for ( Entry<K, Map<K2, V>> entry : map.entrySet() ) {
+                    for ( Entry<K2, V> subEntry : entry.getValue().entrySet() ) {
+                        if ( insertRows == null ) {
+                            rowsPerStatement = Math.min( maxRows, Integer.highestOneBit( remaining ) );
+                            insertRows = connection.prepareStatement( getMultiRowInsertQuery( rowsPerStatement ) );
+                        }
+
+                        offset = multiRowBinder()
+                                .bind( insertRows, entry.getKey(), subEntry.getKey(), subEntry.getValue(), offset );
+
+                        if ( ++rows == rowsPerStatement ) {
+                            insertRows.executeUpdate();
+                            remaining -= rows;
+                            rows = 0;
+                            offset = 1;
+
+                            //Keep using the same statement as long as the next chunk is the same size.
+                            if ( remaining > 0
+                                    && Math.min( maxRows, Integer.highestOneBit( remaining ) ) == rowsPerStatement ) {
+                                insertRows.clearParameters();
+                            } else {
+                                insertRows.close();
+                                insertRows = null;
+                            }
+                        }
+                    }
+                }
+            } finally {
+                if ( insertRows != null ) {
+                    insertRows.close();
                 }
             }
-            insertRow.executeBatch();
-            handleStoreAllSucceeded( map );
-        } catch ( SQLException e ) {
-            logger.error( "Error executing SQL during store all for key {} in map {}", key, mapName, e );
+            connection.commit();
+        } catch ( SQLException | RuntimeException e ) {
+            connection.rollback();
+            throw e;
         }
     }
 
+    /**
+     * Mapstores that implement {@link MultiRowBinder} can enable this to write values using multi-row inserts that
+     * replace the whole value of a key.
+     */
+    protected boolean isMultiRowUpsertEnabled() {
+        return false;
+    }
+
+    protected int getMaxRowsPerInsert() {
+        return Integer.highestOneBit( Math.min( batchSize, MAX_PARAMETERS / getInsertColumns().size() ) );
+    }
+
+    protected String getMultiRowInsertQuery( int rows ) {
+        final int index = Integer.numberOfTrailingZeros( rows );
+        if ( multiRowInsertQueries[ index ] == null ) {
+            multiRowInsertQueries[ index ] = table.insertQuery( Optional.of( buildUpsertOnConflictQuery() ),
+                    getInsertColumns(),
+                    rows );
+        }
+        return multiRowInsertQueries[ index ];
+    }
+
+    /**
+     * Rows in a split key map are identified by the full primary key of the table, rather than just the key columns.
+     */
+    @Override
+    protected String buildUpsertOnConflictQuery() {
+        final LinkedHashSet<PostgresColumnDefinition> primaryKey = table.getPrimaryKey();
+        final String conflictAction = getInsertColumns().stream()
+                .filter( col -> !primaryKey.contains( col ) )
+                .map( col -> col.getName() + " = EXCLUDED." + col.getName() )
+                .collect( Collectors.joining( ", " ) );
+
+        return " ON CONFLICT (" + primaryKey.stream()
+                .map( PostgresColumnDefinition::getName )
+                .collect( Collectors.joining( ", " ) ) + ") DO "
+                + ( conflictAction.isEmpty() ? "NOTHING" : "UPDATE SET " + conflictAction );
+    }
+
     /**
      * You must bind update parameters as well as insert parameters
      */
     protected abstract void bind( PreparedStatement ps, K key, K2 subKey, V value ) throws SQLException;
 
+    @SuppressWarnings( "unchecked" )
+    private MultiRowBinder<K, K2, V> multiRowBinder() {
+        return (MultiRowBinder<K, K2, V>) this;
+    }
+
 }
@@ -20,16 +20,30 @@
 
 package com.openlattice.postgres.mapstores;
 
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.SharedMetricRegistries;
+import com.codahale.metrics.Timer;
 import com.codahale.metrics.annotation.Timed;
+import com.google.common.base.Suppliers;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
 import com.hazelcast.config.MapConfig;
 import com.hazelcast.config.MapStoreConfig;
+import com.hazelcast.core.HazelcastInstance;
+import com.hazelcast.map.MapLoaderLifecycleSupport;
+import com.hazelcast.topic.ITopic;
 import com.kryptnostic.rhizome.mapstores.TestableSelfRegisteringMapStore;
+import com.kryptnostic.rhizome.pods.MetricsPod;
+import com.openlattice.postgres.CitusDistributedTableDefinition;
+import com.openlattice.postgres.CitusShardMap;
+import com.openlattice.postgres.PostgresArrays;
 import com.openlattice.postgres.PostgresColumnDefinition;
 import com.openlattice.postgres.PostgresTableDefinition;
 import com.openlattice.postgres.streams.BasePostgresIterable;
+import com.openlattice.postgres.streams.ParallelPostgresIterable;
 import com.openlattice.postgres.streams.StatementHolderSupplier;
 import com.zaxxer.hikari.HikariDataSource;
 import org.slf4j.Logger;
@@ -45,6 +59,11 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Properties;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
 import static com.google.common.base.Preconditions.checkState;
@@ -52,10 +71,13 @@ import static com.google.common.base.Preconditions.checkState;
 /**
  * @author Matthew Tamayo-Rios &lt;matthew@openlattice.com&gt;
  */
-public abstract class AbstractPostgresMapstore2<K, V> implements TestableSelfRegisteringMapStore<K, V> {
-    public static final int BATCH_SIZE = 1 << 12;
+public abstract class AbstractPostgresMapstore2<K, V>
+        implements TestableSelfRegisteringMapStore<K, V>, MapLoaderLifecycleSupport {
+    public static final int    BATCH_SIZE                = 1 << 12;
+    public static final String INVALIDATION_TOPIC_PREFIX = "mapstore-invalidations-";
 
-    protected final Logger logger = LoggerFactory.getLogger( getClass() );
+    protected final Logger         logger  = LoggerFactory.getLogger( getClass() );
+    protected final MetricRegistry metrics = SharedMetricRegistries.getOrCreate( MetricsPod.METRIC_REGISTRY_NAME );
 
     protected final PostgresTableDefinition table;
     protected final HikariDataSource        hds;
@@ -67,12 +89,22 @@ public abstract class AbstractPostgresMapstore2<K, V> implements TestableSelfReg
     private final   String                  selectAllKeysQuery;
     private final   String                  selectByKeyQuery;
     private final   String                  selectInQuery;
+    private final   String                  selectInArrayQuery;
 
     private final Optional<String> oc;
 
     private final List<PostgresColumnDefinition> keyColumns;
     private final List<PostgresColumnDefinition> valueColumns;
 
+    private final    Timer     flushTimer;
+    private final    Histogram flushSizes;
+    private volatile long      lastFlushMillis = System.currentTimeMillis();
+
+    private final Supplier<Optional<MapstoreCache<K, V>>> localCache = Suppliers.memoize( this::buildLocalCache );
+    private final Supplier<Optional<CitusShardMap>>       shardMap   = Suppliers.memoize( this::buildShardMap );
+    private       ITopic<Collection<K>>                  invalidationTopic;
+    private       UUID                                   invalidationListener;
+
     public AbstractPostgresMapstore2(
             String mapName,
             PostgresTableDefinition table,
@@ -82,12 +114,28 @@ public abstract class AbstractPostgresMapstore2<K, V> implements TestableSelfReg
         this.hds = hds;
         this.mapName = mapName;
         this.batchSize = batchSize;
+        //Read only pools, such as workload pools routed to a read replica, can't be used for stores.
+        checkState( !hds.isReadOnly(), "Map %s cannot use the read only data source %s.", mapName, hds.getPoolName() );
         initMapstore();
         this.keyColumns = initKeyColumns();
         this.valueColumns = initValueColumns();
         this.batchCapacity = batchSize * getSelectInParameterCount();
         checkState( batchCapacity < ( 1 << 16 ),
                 "The selected batch size results in too large of batch capacity for Postgres (limit 65536 arguments for in statement" );
+        checkState( this instanceof KeyColumnValues || !( isArrayLoadAllEnabled() || isShardGroupingEnabled() ),
+                "Map %s must implement %s to load using arrays or group by shard.",
+                mapName,
+                KeyColumnValues.class.getSimpleName() );
+        //Binding an array per key column only works for scalar columns, since = ANY(?) flattens nested arrays.
+        checkState( !isArrayLoadAllEnabled()
+                        || keyColumns.stream().noneMatch( col -> col.getDatatype().sql().endsWith( "[]" ) ),
+                "Map %s has array typed key columns, so it can't load using arrays.",
+                mapName );
+        //Grouping turns a single batch into a round trip per shard, which only pays off if shards run concurrently.
+        checkState( this instanceof AbstractAsyncPostgresMapstore || !isShardGroupingEnabled(),
+                "Map %s must extend %s to group by shard.",
+                mapName,
+                AbstractAsyncPostgresMapstore.class.getSimpleName() );
 
         this.oc = buildOnConflictQuery();
 
@@ -96,10 +144,41 @@ public abstract class AbstractPostgresMapstore2<K, V> implements TestableSelfReg
         this.selectAllKeysQuery = buildSelectAllKeysQuery();
         this.selectByKeyQuery = buildSelectByKeyQuery();
         this.selectInQuery = buildSelectInQuery();
+        this.selectInArrayQuery = buildSelectInArrayQuery();
+
+        this.flushTimer = metrics.timer( MetricRegistry.name( AbstractPostgresMapstore2.class, mapName, "flush" ) );
+        this.flushSizes = metrics.histogram( MetricRegistry.name( AbstractPostgresMapstore2.class,
+                mapName,
+                "flush-size" ) );
+        final String millisSinceFlush = MetricRegistry.name( AbstractPostgresMapstore2.class,
+                mapName,
+                "millis-since-flush" );
+        metrics.remove( millisSinceFlush );
+        metrics.register( millisSinceFlush, (Gauge<Long>) () -> System.currentTimeMillis() - lastFlushMillis );
     }
 
     protected void initMapstore() {}
 
+    @Override
+    public void init( HazelcastInstance hazelcastInstance, Properties properties, String mapName ) {
+        if ( localCache.get().isPresent() ) {
+            final var localMember = hazelcastInstance.getCluster().getLocalMember();
+            invalidationTopic = hazelcastInstance.getTopic( INVALIDATION_TOPIC_PREFIX + this.mapName );
+            invalidationListener = invalidationTopic.addMessageListener( message -> {
+                if ( !localMember.equals( message.getPublishingMember() ) ) {
+                    localCache.get().ifPresent( cache -> cache.invalidateAll( message.getMessageObject() ) );
+                }
+            } );
+        }
+    }
+
+    @Override
+    public void destroy() {
+        if ( invalidationTopic != null ) {
+            invalidationTopic.removeMessageListener( invalidationListener );
+        }
+    }
+
     protected final List<PostgresColumnDefinition> keyColumns() {
         return keyColumns;
     }
@@ -125,6 +204,21 @@ public abstract class AbstractPostgresMapstore2<K, V> implements TestableSelfReg
                 + table.updateQuery( keyColumns(), valueColumns(), false ) ) );
     }
 
+    /**
+     * Builds an on conflict clause that takes updated values from the row being inserted instead of from bind
+     * parameters, for use with statements that insert more than one row at a time.
+     */
+    protected String buildUpsertOnConflictQuery() {
+        final List<PostgresColumnDefinition> valueColumns = valueColumns();
+        final String conflictAction = valueColumns.isEmpty() ? "NOTHING" : "UPDATE SET " + valueColumns.stream()
+                .map( col -> col.getName() + " = EXCLUDED." + col.getName() )
+                .collect( Collectors.joining( ", " ) );
+
+        return " ON CONFLICT (" + keyColumns().stream()
+                .map( PostgresColumnDefinition::getName )
+                .collect( Collectors.joining( ", " ) ) + ") DO " + conflictAction;
+    }
+
     protected String buildInsertQuery() {
         return table.insertQuery( onConflict(), getInsertColumns() );
     }
@@ -145,6 +239,10 @@ public abstract class AbstractPostgresMapstore2<K, V> implements TestableSelfReg
         return table.selectInQuery( ImmutableList.of(), keyColumns(), batchSize );
     }
 
+    protected String buildSelectInArrayQuery() {
+        return table.selectInArrayQuery( ImmutableList.of(), keyColumns() );
+    }
+
     protected int getSelectInParameterCount() {
         return keyColumns().size();
     }
@@ -152,33 +250,49 @@ public abstract class AbstractPostgresMapstore2<K, V> implements TestableSelfReg
     @Timed
     @Override
     public void delete( K key ) {
-        try ( Connection connection = hds.getConnection(); PreparedStatement deleteRow = prepareDelete( connection ) ) {
-            bind( deleteRow, key );
-            deleteRow.executeUpdate();
-        } catch ( SQLException e ) {
-            logger.error( "Error executing SQL during delete for key {} in map {}.", key, mapName, e );
+        final Collection<K> written = ImmutableList.of( key );
+        invalidate( written );
+        try {
+            try ( Connection connection = hds.getConnection();
+                    PreparedStatement deleteRow = prepareDelete( connection ) ) {
+                bind( deleteRow, key );
+                deleteRow.executeUpdate();
+            } catch ( SQLException e ) {
+                logger.error( "Error executing SQL during delete for key {} in map {}.", key, mapName, e );
+            }
+        } finally {
+            invalidate( written );
         }
     }
 
     @Timed
     @Override
     public void deleteAll( Collection<K> keys ) {
-        K key = null;
-        try ( Connection connection = hds.getConnection(); PreparedStatement deleteRow = prepareDelete( connection ) ) {
-            for ( K k : keys ) {
-                key = k;
-                bind( deleteRow, key );
-                deleteRow.addBatch();
+        final Collection<K> written = keys;
+        invalidate( written );
+        try {
+            K key = null;
+            try ( Connection connection = hds.getConnection();
+                    PreparedStatement deleteRow = prepareDelete( connection ) ) {
+                for ( K k : keys ) {
+                    key = k;
+                    bind( deleteRow, key );
+                    deleteRow.addBatch();
+                }
+                deleteRow.executeBatch();
+            } catch ( SQLException e ) {
+                logger.error( "Error executing SQL during delete all for key {} in map {}", key, mapName, e );
             }
-            deleteRow.executeBatch();
-        } catch ( SQLException e ) {
-            logger.error( "Error executing SQL during delete all for key {} in map {}", key, mapName, e );
+        } finally {
+            invalidate( written );
         }
     }
 
     protected V readNext( ResultSet rs ) throws SQLException {
         V val = mapToValue( rs );
-        logger.debug( "LOADED value {} in map {}", val, mapName );
+        if ( logger.isTraceEnabled() ) {
+            logger.trace( "LOADED value {} in map {}", val, mapName );
+        }
         return val;
     }
 
@@ -205,8 +319,19 @@ public abstract class AbstractPostgresMapstore2<K, V> implements TestableSelfReg
     @Timed
     @Override
     public V load( K key ) {
+        final Optional<MapstoreCache<K, V>> cache = localCache.get();
+        if ( cache.isPresent() ) {
+            final V cached = cache.get().get( key );
+            if ( cached != null ) {
+                return cached;
+            }
+        }
+
+        final long generation = cache.map( c -> c.generation( key ) ).orElse( 0L );
         try ( Connection connection = hds.getConnection() ) {
-            return loadUsing( key, connection );
+            final V value = loadUsing( key, connection );
+            cache.ifPresent( c -> c.put( key, value, generation ) );
+            return value;
         } catch ( SQLException e ) {
             final String errMsg = "Unable to connect to database to load key " + key.toString() +
                     " map +" + mapName + "!";
@@ -218,6 +343,64 @@ public abstract class AbstractPostgresMapstore2<K, V> implements TestableSelfReg
     @Timed
     @Override
     public Map<K, V> loadAll( Collection<K> keys ) {
+        final Optional<MapstoreCache<K, V>> cache = localCache.get();
+        if ( cache.isEmpty() ) {
+            return loadAllByShard( keys );
+        }
+
+        final Map<K, V> cached = cache.get().getAll( keys );
+        if ( cached.size() == keys.size() ) {
+            return cached;
+        }
+
+        final List<K> missing = keys.stream().filter( k -> !cached.containsKey( k ) ).collect( Collectors.toList() );
+        final Map<K, Long> generations = cache.get().generations( missing );
+        final Map<K, V> loaded = loadAllByShard( missing );
+        cache.get().putAll( loaded, generations );
+
+        final Map<K, V> result = Maps.newLinkedHashMapWithExpectedSize( cached.size() + loaded.size() );
+        result.putAll( cached );
+        result.putAll( loaded );
+        return result;
+    }
+
+    /**
+     * Loads keys in batches that each belong to a single citus shard when shard grouping is enabled, so that every
+     * batch is routed straight to the worker storing the shard instead of being split up by the coordinator.
+     */
+    private Map<K, V> loadAllByShard( Collection<K> keys ) {
+        final Collection<List<K>> shards = groupByShard( keys, Function.identity() );
+        return shards.size() > 1 ? loadShards( shards, keys.size() ) : loadAllFromDatabase( keys );
+    }
+
+    /**
+     * Loads groups of keys that each belong to a single shard.
+     */
+    protected Map<K, V> loadShards( Collection<List<K>> shards, int keyCount ) {
+        final Map<K, V> result = Maps.newLinkedHashMapWithExpectedSize( keyCount );
+        shards.forEach( shard -> result.putAll( loadAllFromDatabase( shard ) ) );
+        return result;
+    }
+
+    /**
+     * Groups items by the citus shard of the distribution column of their key when shard grouping is enabled.
+     * Otherwise all items are returned as a single group.
+     */
+    protected <T> Collection<List<T>> groupByShard( Collection<T> items, Function<T, K> toKey ) {
+        final Optional<CitusShardMap> shards = shardMap.get();
+        if ( shards.isEmpty() || items.size() < 2 ) {
+            return List.of( new ArrayList<>( items ) );
+        }
+
+        final int column = keyColumns().indexOf( ( (CitusDistributedTableDefinition) table ).getDistributionColumn() );
+        return shards.get().group( items, item -> keyColumnValues().keyValues( toKey.apply( item ) )[ column ] );
+    }
+
+    protected Map<K, V> loadAllFromDatabase( Collection<K> keys ) {
+        if ( isArrayLoadAllEnabled() ) {
+            return loadAllUsingArrays( keys );
+        }
+
         Map<K, V> result = Maps.newLinkedHashMapWithExpectedSize(keys.size());
 
         K key = null;
@@ -255,10 +438,67 @@ public abstract class AbstractPostgresMapstore2<K, V> implements TestableSelfReg
         return result;
     }
 
+    /**
+     * Loads all keys with a single statement that binds one array per key column, so the statement text and plan are
+     * the same regardless of the number of keys and no padding parameters are sent.
+     */
+    protected Map<K, V> loadAllUsingArrays( Collection<K> keys ) {
+        Map<K, V> result = Maps.newLinkedHashMapWithExpectedSize( keys.size() );
+
+        if ( keys.isEmpty() ) {
+            return result;
+        }
+
+        final List<PostgresColumnDefinition> keyColumns = keyColumns();
+        final Object[][] columnValues = new Object[ keyColumns.size() ][ keys.size() ];
+
+        int row = 0;
+        for ( K key : keys ) {
+            final Object[] values = keyColumnValues().keyValues( key );
+            for ( int column = 0; column < columnValues.length; ++column ) {
+                columnValues[ column ][ row ] = values[ column ];
+            }
+            row++;
+        }
+
+        try ( Connection connection = hds.getConnection();
+                PreparedStatement selectIn = prepareSelectInArray( connection ) ) {
+            for ( int column = 0; column < columnValues.length; ++column ) {
+                selectIn.setArray( column + 1, PostgresArrays.createArray( connection,
+                        keyColumns.get( column ).getDatatype(),
+                        columnValues[ column ] ) );
+            }
+
+            try ( ResultSet results = selectIn.executeQuery() ) {
+                while ( results.next() ) {
+                    K k = mapToKey( results );
+                    V v = readNext( results );
+                    result.put( k, v );
+                }
+            }
+        } catch ( SQLException e ) {
+            logger.error( "Error executing SQL during array select for {} keys in map {}.", keys.size(), mapName, e );
+        }
+        return result;
+    }
+
     @Override public Iterable<K> loadAllKeys() {
         logger.info( "Starting load all keys for map {}", mapName );
+        final int partitions = getLoadAllKeysParallelism();
+        if ( partitions > 1 ) {
+            logger.info( "Loading keys for map {} using {} partitions.", mapName, partitions );
+            final List<Iterable<K>> iterables = new ArrayList<>( partitions );
+            for ( int partition = 0; partition < partitions; ++partition ) {
+                iterables.add( loadKeysUsing( buildSelectAllKeysPartitionQuery( partition, partitions ) ) );
+            }
+            return new ParallelPostgresIterable<>( iterables );
+        }
+        return loadKeysUsing( selectAllKeysQuery );
+    }
+
+    private BasePostgresIterable<K> loadKeysUsing( String sql ) {
         return new BasePostgresIterable<>(
-                new StatementHolderSupplier( hds, selectAllKeysQuery, 50_000, false, 0L),
+                new StatementHolderSupplier( hds, sql, 50_000, false, 0L, mapName + "-load-all-keys" ),
                 rs -> {
                     try {
                         return mapToKey( rs );
@@ -270,13 +510,66 @@ public abstract class AbstractPostgresMapstore2<K, V> implements TestableSelfReg
         );
     }
 
+    /**
+     * Controls how many concurrent cursors, each on their own connection, are used to read keys in
+     * {@link #loadAllKeys()}. The key space is split by hashing the key columns.
+     */
+    protected int getLoadAllKeysParallelism() {
+        return 1;
+    }
+
+    /**
+     * Wraps the select all keys query as a subquery, so that it can be filtered by partition even if subclasses
+     * override {@link #buildSelectAllKeysQuery()} with a query that has its own where clause.
+     */
+    protected String buildSelectAllKeysPartitionQuery( int partition, int partitions ) {
+        return "SELECT * FROM (" + selectAllKeysQuery + ") AS all_keys WHERE abs(hashtext((" + keyColumns().stream()
+                .map( PostgresColumnDefinition::getName )
+                .collect( Collectors.joining( "," ) ) + ")::text) % " + partitions + ") = " + partition;
+    }
+
     @Override
     public MapStoreConfig getMapStoreConfig() {
         return new MapStoreConfig()
                 .setInitialLoadMode( MapStoreConfig.InitialLoadMode.EAGER )
                 .setImplementation( this )
                 .setEnabled( true )
-                .setWriteDelaySeconds( 0 );
+                .setWriteDelaySeconds( getWriteDelaySeconds() )
+                .setWriteBatchSize( getWriteBatchSize() )
+                .setWriteCoalescing( isWriteCoalescing() );
+    }
+
+    /**
+     * A write delay of zero makes every write to the map synchronously write through to postgres. Any other value
+     * enables write-behind, where Hazelcast buffers writes and flushes them in batches via {@link #storeAll(Map)}.
+     * Defaults to the write delay configured on the table definition.
+     */
+    protected int getWriteDelaySeconds() {
+        return table.getWriteDelaySeconds();
+    }
+
+    protected int getWriteBatchSize() {
+        return table.getWriteBatchSize();
+    }
+
+    /**
+     * When write-behind is enabled only the latest value of a key is flushed, no matter how many times it was written
+     * since the last flush.
+     */
+    protected boolean isWriteCoalescing() {
+        return true;
+    }
+
+    /**
+     * Records a successful flush of entries to postgres.
+     *
+     * @param entries The number of entries flushed.
+     * @param startNanos The value of {@link System#nanoTime()} when the flush started.
+     */
+    protected void recordFlush( int entries, long startNanos ) {
+        flushTimer.update( System.nanoTime() - startNanos, TimeUnit.NANOSECONDS );
+        flushSizes.update( entries );
+        lastFlushMillis = System.currentTimeMillis();
     }
 
     @Override
@@ -335,6 +628,10 @@ public abstract class AbstractPostgresMapstore2<K, V> implements TestableSelfReg
         return connection.prepareStatement( selectInQuery );
     }
 
+    protected PreparedStatement prepareSelectInArray( Connection connection ) throws SQLException {
+        return connection.prepareStatement( selectInArrayQuery );
+    }
+
     protected String selectByKeyQuery() {
         return selectByKeyQuery;
     }
@@ -343,6 +640,63 @@ public abstract class AbstractPostgresMapstore2<K, V> implements TestableSelfReg
         return connection.prepareStatement( selectByKeyQuery );
     }
 
+    /**
+     * Controls the maximum total weight, as computed by {@link #weigh(Object, Object)}, of entries held by the local
+     * read-through cache on each node. A value of zero disables the local cache.
+     */
+    protected long getLocalCacheMaximumWeight() {
+        return 0;
+    }
+
+    protected long getLocalCacheTtlSeconds() {
+        return 300;
+    }
+
+    protected int weigh( K key, V value ) {
+        return 1;
+    }
+
+    /**
+     * Removes keys from the local cache on this node and, once the mapstore has been initialized by Hazelcast, on all
+     * other nodes in the cluster. Must be called both before and after keys are written or deleted. Loads that read a
+     * key before the write committed are kept out of the cache by the generation check in {@link MapstoreCache}.
+     */
+    protected void invalidate( Collection<K> keys ) {
+        localCache.get().ifPresent( cache -> {
+            cache.invalidateAll( keys );
+            if ( invalidationTopic != null ) {
+                invalidationTopic.publish( new ArrayList<>( keys ) );
+            }
+        } );
+    }
+
+    private Optional<CitusShardMap> buildShardMap() {
+        if ( !isShardGroupingEnabled() || !( table instanceof CitusDistributedTableDefinition ) ) {
+            return Optional.empty();
+        }
+
+        final PostgresColumnDefinition column = ( (CitusDistributedTableDefinition) table ).getDistributionColumn();
+        if ( !keyColumns().contains( column ) ) {
+            logger.warn( "Distribution column {} is not part of the key of map {}, so keys won't be grouped by shard.",
+                    column.getName(),
+                    mapName );
+            return Optional.empty();
+        }
+        return Optional.of( new CitusShardMap( hds, table.getName(), column.getDatatype() ) );
+    }
+
+    private Optional<MapstoreCache<K, V>> buildLocalCache() {
+        final long maximumWeight = getLocalCacheMaximumWeight();
+        if ( maximumWeight <= 0 ) {
+            return Optional.empty();
+        }
+        return Optional.of( new MapstoreCache<>( mapName,
+                maximumWeight,
+                getLocalCacheTtlSeconds(),
+                this::weigh,
+                metrics ) );
+    }
+
     protected void handleStoreFailed( K key, V value ) {
         //Do nothing by default
     }
@@ -355,6 +709,31 @@ public abstract class AbstractPostgresMapstore2<K, V> implements TestableSelfReg
     protected void handleStoreAllSucceeded( Map<K, V> m ) {
     }
 
+    /**
+     * Mapstores that implement {@link KeyColumnValues} can enable this to load batches using array parameters instead
+     * of a padded {@code IN} list. Not supported for mapstores with array typed key columns.
+     */
+    protected boolean isArrayLoadAllEnabled() {
+        return false;
+    }
+
+    /**
+     * Mapstores backed by a {@link CitusDistributedTableDefinition} that implement {@link KeyColumnValues} can
+     * enable this to load and store batches grouped by the shard of their distribution column. Single shard batches
+     * are routed directly to a worker and committed without a distributed transaction.
+     * <p>
+     * Only supported by {@link AbstractAsyncPostgresMapstore}, which runs the batches of different shards
+     * concurrently. Run one after the other, they would take longer than a single multi-shard batch.
+     */
+    protected boolean isShardGroupingEnabled() {
+        return false;
+    }
+
+    @SuppressWarnings( "unchecked" )
+    private KeyColumnValues<K> keyColumnValues() {
+        return (KeyColumnValues<K>) this;
+    }
+
     protected abstract int bind( PreparedStatement ps, K key, int offset ) throws SQLException;
 
     protected int bind( PreparedStatement ps, K key ) throws SQLException {
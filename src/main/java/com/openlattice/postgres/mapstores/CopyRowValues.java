@@ -0,0 +1,37 @@
+/*
+ * Copyright (C) 2021. OpenLattice, Inc
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * You can contact the owner of the copyright at support@openlattice.com
+ *
+ */
+
+package com.openlattice.postgres.mapstores;
+
+import com.openlattice.postgres.PostgresBinaryCopyWriter;
+
+/**
+ * Implemented by mapstores that store large batches using binary {@code COPY}, which is enabled by lowering
+ * {@link AbstractBasePostgresMapstore#getCopyThreshold()}.
+ *
+ * @author Matthew Tamayo-Rios &lt;matthew@openlattice.com&gt;
+ */
+public interface CopyRowValues<K, V> {
+    /**
+     * Returns the values for a single row in the same order as the insert columns of the mapstore. See
+     * {@link PostgresBinaryCopyWriter} for supported value types.
+     */
+    Object[] copyValues( K key, V value );
+}
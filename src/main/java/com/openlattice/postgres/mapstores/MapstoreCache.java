@@ -0,0 +1,133 @@
+/*
+ * Copyright (C) 2021. OpenLattice, Inc
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * You can contact the owner of the copyright at support@openlattice.com
+ *
+ */
+
+package com.openlattice.postgres.mapstores;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.Weigher;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Per node, read-through cache that sits between a mapstore and postgres. It holds recently loaded entries, so that
+ * entries evicted from Hazelcast and loaded again shortly afterwards don't go back to the database.
+ * <p>
+ * The cache is bounded by total weight and entries expire a fixed time after being written. Hit ratio, hit, miss and
+ * eviction counts are reported to the metric registry under the name of the map.
+ * <p>
+ * Each invalidation bumps a generation counter shared by a stripe of keys. Loads capture the generation of their keys
+ * before reading from the database and drop what they put in the cache if it has since changed, so a value read
+ * before a write committed can't outlive that write's invalidation.
+ *
+ * @author Matthew Tamayo-Rios &lt;matthew@openlattice.com&gt;
+ */
+public class MapstoreCache<K, V> {
+    private static final int STRIPES = 1024;
+
+    private final Cache<K, V> cache;
+    private final AtomicLongArray generations = new AtomicLongArray( STRIPES );
+
+    public MapstoreCache(
+            String mapName,
+            long maximumWeight,
+            long ttlSeconds,
+            Weigher<K, V> weigher,
+            MetricRegistry metrics ) {
+        this.cache = CacheBuilder.newBuilder()
+                .maximumWeight( maximumWeight )
+                .weigher( weigher )
+                .expireAfterWrite( ttlSeconds, TimeUnit.SECONDS )
+                .recordStats()
+                .build();
+
+        register( metrics, mapName, "hit-ratio", () -> cache.stats().hitRate() );
+        register( metrics, mapName, "hits", () -> cache.stats().hitCount() );
+        register( metrics, mapName, "misses", () -> cache.stats().missCount() );
+        register( metrics, mapName, "evictions", () -> cache.stats().evictionCount() );
+        register( metrics, mapName, "size", cache::size );
+    }
+
+    public V get( K key ) {
+        return cache.getIfPresent( key );
+    }
+
+    public Map<K, V> getAll( Collection<K> keys ) {
+        return cache.getAllPresent( keys );
+    }
+
+    /**
+     * @return The generation of a key, to be captured before its value is read from the database.
+     */
+    public long generation( K key ) {
+        return generations.get( stripe( key ) );
+    }
+
+    public Map<K, Long> generations( Collection<K> keys ) {
+        final Map<K, Long> captured = new HashMap<>( keys.size() * 2 );
+        keys.forEach( key -> captured.put( key, generation( key ) ) );
+        return captured;
+    }
+
+    /**
+     * Caches a value read from the database, unless the key was invalidated after its generation was captured.
+     */
+    public void put( K key, V value, long generation ) {
+        if ( value != null ) {
+            cache.put( key, value );
+            //Invalidations bump the generation before removing entries, so either the invalidation removes this
+            //entry or the generation has already changed by the time it is checked here.
+            if ( generation( key ) != generation ) {
+                cache.invalidate( key );
+            }
+        }
+    }
+
+    public void putAll( Map<K, V> entries, Map<K, Long> generations ) {
+        entries.forEach( ( key, value ) -> put( key, value, generations.get( key ) ) );
+    }
+
+    public void invalidate( K key ) {
+        generations.incrementAndGet( stripe( key ) );
+        cache.invalidate( key );
+    }
+
+    public void invalidateAll( Iterable<K> keys ) {
+        keys.forEach( key -> generations.incrementAndGet( stripe( key ) ) );
+        cache.invalidateAll( keys );
+    }
+
+    private static int stripe( Object key ) {
+        final int hash = key.hashCode();
+        return ( hash ^ ( hash >>> 16 ) ) & ( STRIPES - 1 );
+    }
+
+    private static <T> void register( MetricRegistry metrics, String mapName, String name, Gauge<T> gauge ) {
+        final String metricName = MetricRegistry.name( MapstoreCache.class, mapName, name );
+        metrics.remove( metricName );
+        metrics.register( metricName, gauge );
+    }
+}
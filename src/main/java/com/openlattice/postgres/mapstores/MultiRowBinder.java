@@ -0,0 +1,39 @@
+/*
+ * Copyright (C) 2021. OpenLattice, Inc
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * You can contact the owner of the copyright at support@openlattice.com
+ *
+ */
+
+package com.openlattice.postgres.mapstores;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+
+/**
+ * Implemented by split key mapstores that write values using multi-row inserts, which is enabled by
+ * {@link AbstractBaseSplitKeyPostgresMapstore#isMultiRowUpsertEnabled()}.
+ *
+ * @author Matthew Tamayo-Rios &lt;matthew@openlattice.com&gt;
+ */
+public interface MultiRowBinder<K, K2, V> {
+    /**
+     * Binds only the insert parameters for a single row of a multi-row insert.
+     *
+     * @return The offset at which the next row should be bound.
+     */
+    int bind( PreparedStatement ps, K key, K2 subKey, V value, int offset ) throws SQLException;
+}
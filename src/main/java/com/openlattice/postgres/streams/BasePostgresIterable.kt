@@ -2,6 +2,8 @@ package com.openlattice.postgres.streams
 
 import com.dataloom.streams.StreamUtil
 import com.google.common.base.Preconditions.checkState
+import com.openlattice.jdbc.DataSourceManager
+import com.openlattice.jdbc.Workload
 import com.zaxxer.hikari.HikariDataSource
 import edu.umd.cs.findbugs.annotations.SuppressFBWarnings
 import org.slf4j.LoggerFactory
@@ -13,25 +15,39 @@ import java.sql.ResultSet
 import java.sql.SQLException
 import java.sql.Statement
 import java.util.*
-import java.util.concurrent.Executors
+import java.util.concurrent.TimeUnit
 import java.util.concurrent.locks.ReentrantLock
+import java.util.function.Consumer
 import java.util.function.Supplier
 import java.util.stream.Stream
 
+private const val DEFAULT_SPLIT_BATCH_SIZE = 1024
+
 /**
+ * Iterable over the rows returned by a query.
+ *
+ * Iterators are safe to share between threads unless [singleConsumer] is set, in which case they skip locking.
+ * Streams always use a single consumer iterator, since a spliterator is
+ * never accessed by more than one thread at a time. Parallel streams receive rows in batches of [splitBatchSize].
  *
  * @author Matthew Tamayo-Rios &lt;matthew@openlattice.com&gt;
  */
-class BasePostgresIterable<T>(
+class BasePostgresIterable<T> @JvmOverloads constructor(
         private val rsh: Supplier<StatementHolder>,
-        private val mapper: (ResultSet) -> T
+        private val mapper: (ResultSet) -> T,
+        private val singleConsumer: Boolean = false,
+        private val splitBatchSize: Int = DEFAULT_SPLIT_BATCH_SIZE
 ) : Iterable<T> {
 
     private val logger = LoggerFactory.getLogger(BasePostgresIterable::class.java)
 
     override fun iterator(): PostgresIterator<T> {
+        return iterator(singleConsumer)
+    }
+
+    private fun iterator(singleConsumer: Boolean): PostgresIterator<T> {
         try {
-            return PostgresIterator(rsh.get(), mapper)
+            return PostgresIterator(rsh.get(), mapper, singleConsumer = singleConsumer)
         } catch (e: SQLException) {
             logger.error("Error creating postgres stream iterator.")
             throw IllegalStateException("Unable to instantiate postgres iterator.", e)
@@ -41,9 +57,68 @@ class BasePostgresIterable<T>(
         }
     }
 
+    override fun spliterator(): Spliterator<T> {
+        return PostgresSpliterator(iterator(true), splitBatchSize)
+    }
+
     fun stream(): Stream<T> {
         return StreamUtil.stream(this)
     }
+
+    /**
+     * Returns an iterable over the same query that reads and maps rows on a background thread.
+     *
+     * @see PrefetchingPostgresIterable
+     */
+    @JvmOverloads
+    fun prefetching(blockSize: Int = 0, bufferedBlocks: Int = 2): PrefetchingPostgresIterable<T> {
+        return PrefetchingPostgresIterable(rsh, mapper, blockSize, bufferedBlocks)
+    }
+}
+
+/**
+ * Spliterator that splits off fixed size batches of rows, so that parallel consumers get evenly sized chunks of work
+ * while the cursor itself is only ever read by one thread at a time.
+ */
+class PostgresSpliterator<T>(
+        private val iterator: PostgresIterator<T>,
+        private val batchSize: Int
+) : Spliterator<T> {
+    init {
+        check(batchSize > 0) { "Batch size must be positive." }
+    }
+
+    override fun tryAdvance(action: Consumer<in T>): Boolean {
+        if (!iterator.hasNext()) {
+            return false
+        }
+        action.accept(iterator.next())
+        return true
+    }
+
+    override fun forEachRemaining(action: Consumer<in T>) {
+        while (iterator.hasNext()) {
+            action.accept(iterator.next())
+        }
+    }
+
+    override fun trySplit(): Spliterator<T>? {
+        if (!iterator.hasNext()) {
+            return null
+        }
+
+        val batch = arrayOfNulls<Any>(batchSize)
+        var size = 0
+        while (size < batchSize && iterator.hasNext()) {
+            batch[size++] = iterator.next()
+        }
+
+        return Spliterators.spliterator(batch, 0, size, Spliterator.ORDERED)
+    }
+
+    override fun estimateSize(): Long = Long.MAX_VALUE
+
+    override fun characteristics(): Int = Spliterator.ORDERED
 }
 
 open class StatementHolderSupplier(
@@ -51,8 +126,22 @@ open class StatementHolderSupplier(
         val sql: String,
         val fetchSize: Int = 0,
         val autoCommit: Boolean = (fetchSize == 0),
-        private val longRunningQueryLimit: Long = 0
+        private val longRunningQueryLimit: Long = 0,
+        val queryName: String = StatementHolder.UNNAMED_QUERY
 ) : Supplier<StatementHolder> {
+    /**
+     * Runs the query on the pool for [workload] of the default data source. Use [DataSourceManager.getDataSource] to
+     * select the pool of another data source.
+     */
+    @JvmOverloads
+    constructor(
+            dataSources: DataSourceManager,
+            workload: Workload,
+            sql: String,
+            fetchSize: Int = 0,
+            queryName: String = StatementHolder.UNNAMED_QUERY
+    ) : this(dataSources.getDefaultDataSource(workload), sql, fetchSize, queryName = queryName)
+
     init {
         check(fetchSize >= 0) { "Fetch-size must be nonnegative." }
         check(((!autoCommit) && (fetchSize > 0)) || (fetchSize == 0)) {
@@ -79,6 +168,7 @@ open class StatementHolderSupplier(
 
         statement.fetchSize = fetchSize
 
+        val start = System.nanoTime()
         val rs = try {
             execute(statement)
         } catch (ex: Exception) {
@@ -91,11 +181,14 @@ open class StatementHolderSupplier(
             throw ex
         }
 
-        return if (longRunningQueryLimit == 0L) {
-            StatementHolder(connection, statement, rs)
+        QueryMetrics.timeToFirstRow(queryName).update(System.nanoTime() - start, TimeUnit.NANOSECONDS)
+
+        val limit = if (longRunningQueryLimit == 0L) {
+            StatementHolder.LONG_RUNNING_QUERY_LIMIT_MILLIS
         } else {
-            StatementHolder(connection, statement, rs, longRunningQueryLimit)
+            longRunningQueryLimit
         }
+        return StatementHolder(connection, statement, rs, listOf(), listOf(), limit, queryName, sql)
     }
 }
 
@@ -104,8 +197,21 @@ class PreparedStatementHolderSupplier(
         sql: String,
         fetchSize: Int = 0,
         autoCommit: Boolean = (fetchSize == 0),
+        queryName: String = StatementHolder.UNNAMED_QUERY,
         val bind: (PreparedStatement) -> Unit
-) : StatementHolderSupplier(hds, sql, fetchSize, autoCommit) {
+) : StatementHolderSupplier(hds, sql, fetchSize, autoCommit, queryName = queryName) {
+    /**
+     * Runs the query on the pool for [workload] of the default data source.
+     */
+    constructor(
+            dataSources: DataSourceManager,
+            workload: Workload,
+            sql: String,
+            fetchSize: Int = 0,
+            queryName: String = StatementHolder.UNNAMED_QUERY,
+            bind: (PreparedStatement) -> Unit
+    ) : this(dataSources.getDefaultDataSource(workload), sql, fetchSize, queryName = queryName, bind = bind)
+
 
     override fun execute(statement: Statement): ResultSet {
         return (statement as PreparedStatement).executeQuery()
@@ -123,63 +229,46 @@ class PostgresIterator<T> @Throws(SQLException::class)
 @JvmOverloads constructor(
         private val rsh: StatementHolder,
         private val mapper: (ResultSet) -> T,
-        private val timeoutMillis: Long = DEFAULT_TIMEOUT_MILLIS
+        timeoutMillis: Long = DEFAULT_TIMEOUT_MILLIS,
+        expirationWheel: CursorExpirationWheel = CursorExpirationWheel.SHARED,
+        singleConsumer: Boolean = false
 ) : Iterator<T>, AutoCloseable, Closeable {
     companion object {
         private const val DEFAULT_TIMEOUT_MILLIS: Long = 600000
-        private val executor = Executors.newSingleThreadExecutor()
         private val logger = LoggerFactory.getLogger(PostgresIterator::class.java)
     }
 
-    private val lock = ReentrantLock()
+    private val lock: ReentrantLock? = if (singleConsumer) null else ReentrantLock()
     private val rs: ResultSet = rsh.resultSet
-    private var expiration: Long = 0
+    private val expiration: CursorExpirationWheel.Expiration
 
     private var notExhausted: Boolean = false
 
     init {
         notExhausted = this.rs.next()
-        updateExpiration()
+        expiration = expirationWheel.register(rsh, timeoutMillis)
 
         if (!notExhausted) {
-            rsh.close()
-        }
-
-        executor.execute {
-            while (rsh.isOpen) {
-                if (System.currentTimeMillis() > expiration || !notExhausted) {
-                    logger.info("PostgresIterator is closing because it has expired, even though it is not exhausted.")
-                    rsh.close()
-                } else {
-                    try {
-                        Thread.sleep(timeoutMillis)
-                    } catch (e: InterruptedException) {
-                        logger.error("Unable to sleep thread for {} millis", timeoutMillis, e)
-                    }
-
-                }
-            }
+            close()
         }
     }
 
     override fun hasNext(): Boolean {
         //We don't lock here, because multiple calls to has next can still cause an exception to be thrown while
         //calling next
-        updateExpiration()
+        expiration.touch()
         return notExhausted
     }
 
-    private fun updateExpiration() {
-        this.expiration = System.currentTimeMillis() + timeoutMillis
-    }
-
     override fun next(): T {
-        updateExpiration()
+        //Touching is a single volatile write, since the wheel caches the current time.
+        expiration.touch()
         val nextElem: T
         try {
-            lock.lock()
-            checkState(hasNext(), "There are no more items remaining in the stream.")
+            lock?.lock()
+            checkState(notExhausted, "There are no more items remaining in the stream.")
             nextElem = mapper(rs)
+            rsh.rowRead()
             notExhausted = rs.next()
         } catch (e: SQLException) {
             logger.error("Unable to retrieve next element from result set.", e)
@@ -192,10 +281,10 @@ class PostgresIterator<T> @Throws(SQLException::class)
         } finally {
             try {
                 if (!notExhausted) {
-                    rsh.close()
+                    close()
                 }
             } finally {
-                lock.unlock()
+                lock?.unlock()
             }
         }
 
@@ -204,5 +293,6 @@ class PostgresIterator<T> @Throws(SQLException::class)
 
     override fun close() {
         rsh.close()
+        expiration.cancel()
     }
 }
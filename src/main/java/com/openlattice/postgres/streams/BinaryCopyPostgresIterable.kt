@@ -0,0 +1,153 @@
+/*
+ * Copyright (C) 2021. OpenLattice, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * You can contact the owner of the copyright at support@openlattice.com
+ *
+ *
+ */
+
+package com.openlattice.postgres.streams
+
+import com.dataloom.streams.StreamUtil
+import com.google.common.base.Preconditions.checkState
+import com.openlattice.postgres.PostgresBinaryCopyReader
+import com.zaxxer.hikari.HikariDataSource
+import org.slf4j.LoggerFactory
+import java.io.Closeable
+import java.sql.Connection
+import java.sql.SQLException
+import java.util.*
+import java.util.concurrent.locks.ReentrantLock
+import java.util.stream.Stream
+
+private const val DEFAULT_TIMEOUT_MILLIS = 600000L
+
+/**
+ * Iterable over the results of a query exported with binary `COPY ... TO STDOUT`, which are decoded from the copy
+ * stream instead of a JDBC result set. Each tuple is passed to [decoder] while the reader is positioned on it.
+ *
+ * Iterators follow the same lifecycle as [PostgresIterator]: the connection is released once the copy is exhausted,
+ * the iterator is closed or the iterator has not been read from within its timeout.
+ *
+ * @author Matthew Tamayo-Rios &lt;matthew@openlattice.com&gt;
+ */
+class BinaryCopyPostgresIterable<T>(
+        private val hds: HikariDataSource,
+        private val sql: String,
+        private val decoder: (PostgresBinaryCopyReader) -> T
+) : Iterable<T> {
+    private val logger = LoggerFactory.getLogger(BinaryCopyPostgresIterable::class.java)
+
+    override fun iterator(): BinaryCopyPostgresIterator<T> {
+        val connection = hds.connection
+        val reader = try {
+            PostgresBinaryCopyReader(connection, sql)
+        } catch (e: SQLException) {
+            connection.close()
+            logger.error("Error while starting binary copy of sql: {}", sql, e)
+            throw IllegalStateException("Unable to instantiate binary copy iterator.", e)
+        }
+
+        try {
+            return BinaryCopyPostgresIterator(connection, reader, decoder)
+        } catch (e: SQLException) {
+            logger.error("Error while starting binary copy of sql: {}", sql, e)
+            throw IllegalStateException("Unable to instantiate binary copy iterator.", e)
+        }
+    }
+
+    fun stream(): Stream<T> {
+        return StreamUtil.stream(this)
+    }
+}
+
+class BinaryCopyPostgresIterator<T> @Throws(SQLException::class)
+@JvmOverloads constructor(
+        private val connection: Connection,
+        private val reader: PostgresBinaryCopyReader,
+        private val decoder: (PostgresBinaryCopyReader) -> T,
+        timeoutMillis: Long = DEFAULT_TIMEOUT_MILLIS,
+        expirationWheel: CursorExpirationWheel = CursorExpirationWheel.SHARED
+) : Iterator<T>, AutoCloseable, Closeable {
+    companion object {
+        private val logger = LoggerFactory.getLogger(BinaryCopyPostgresIterator::class.java)
+    }
+
+    private val lock = ReentrantLock()
+    private val expiration = expirationWheel.register(this, { !closed }, timeoutMillis)
+
+    @Volatile
+    private var closed = false
+    private var notExhausted = false
+
+    init {
+        try {
+            notExhausted = reader.next()
+        } finally {
+            if (!notExhausted) {
+                close()
+            }
+        }
+    }
+
+    override fun hasNext(): Boolean {
+        expiration.touch()
+        return notExhausted
+    }
+
+    override fun next(): T {
+        expiration.touch()
+        val nextElem: T
+        try {
+            lock.lock()
+            checkState(notExhausted, "There are no more items remaining in the stream.")
+            nextElem = decoder(reader)
+            notExhausted = reader.next()
+        } catch (e: SQLException) {
+            logger.error("Unable to retrieve next element from binary copy.", e)
+            notExhausted = false
+            throw NoSuchElementException("Unable to retrieve next element from binary copy.")
+        } catch (e: Exception) {
+            logger.error("An error occurred while trying to retrieve next element from binary copy.", e)
+            notExhausted = false
+            throw e
+        } finally {
+            try {
+                if (!notExhausted) {
+                    close()
+                }
+            } finally {
+                lock.unlock()
+            }
+        }
+
+        return nextElem
+    }
+
+    @Synchronized
+    override fun close() {
+        if (!closed) {
+            closed = true
+            try {
+                reader.close()
+            } catch (e: SQLException) {
+                logger.error("Unable to close binary copy.", e)
+            }
+            connection.close()
+            expiration.cancel()
+        }
+    }
+}
@@ -0,0 +1,210 @@
+/*
+ * Copyright (C) 2021. OpenLattice, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * You can contact the owner of the copyright at support@openlattice.com
+ *
+ *
+ */
+
+package com.openlattice.postgres.streams
+
+import com.codahale.metrics.Gauge
+import com.codahale.metrics.MetricRegistry
+import com.codahale.metrics.SharedMetricRegistries
+import com.google.common.util.concurrent.ThreadFactoryBuilder
+import com.kryptnostic.rhizome.pods.MetricsPod
+import org.slf4j.LoggerFactory
+import java.util.concurrent.Executors
+import java.util.concurrent.ScheduledFuture
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicInteger
+
+private const val DEFAULT_TICK_MILLIS = 1000L
+private const val DEFAULT_WHEEL_SIZE = 512
+
+/**
+ * Hashed timer wheel that closes [StatementHolder]s and other open cursors that have not been read from within their
+ * timeout.
+ *
+ * A single thread, shared by all wheels, advances each wheel once per tick and only inspects the bucket for the current
+ * tick. Refreshing a deadline is a single volatile write: entries are moved to the bucket of their new deadline lazily,
+ * when the bucket they were last placed in comes around. The wheel also keeps a clock with tick resolution, so callers
+ * refreshing deadlines on every row don't need to read the system clock. Wheels other than [SHARED] stop ticking once
+ * they are closed.
+ *
+ * Open cursor count and the age of cursors at close are reported to the shared metric registry.
+ *
+ * @author Matthew Tamayo-Rios &lt;matthew@openlattice.com&gt;
+ */
+class CursorExpirationWheel @JvmOverloads constructor(
+        private val tickMillis: Long = DEFAULT_TICK_MILLIS,
+        wheelSize: Int = DEFAULT_WHEEL_SIZE,
+        metrics: MetricRegistry = SharedMetricRegistries.getOrCreate(MetricsPod.METRIC_REGISTRY_NAME)
+) : AutoCloseable {
+    companion object {
+        private val logger = LoggerFactory.getLogger(CursorExpirationWheel::class.java)
+        private val ticker = Executors.newSingleThreadScheduledExecutor(
+                ThreadFactoryBuilder().setDaemon(true).setNameFormat("cursor-expiration-wheel-%d").build()
+        )
+
+        /**
+         * Wheel shared by all postgres iterators.
+         */
+        @JvmField
+        val SHARED = CursorExpirationWheel()
+    }
+
+    private val buckets = Array(wheelSize) { mutableListOf<Expiration>() }
+    private val openCursors = AtomicInteger()
+    private val cursorAges = metrics.histogram(MetricRegistry.name(CursorExpirationWheel::class.java, "cursor-age"))
+    private val expiredCursors = metrics.meter(MetricRegistry.name(CursorExpirationWheel::class.java, "expired"))
+
+    /**
+     * Guards [tick] and the buckets, so an entry can't be placed in a bucket while it is being drained.
+     */
+    private val lock = Any()
+    private var tick = 0L
+
+    /**
+     * Current time in milliseconds, accurate to within one tick.
+     */
+    @Volatile
+    var now: Long = System.currentTimeMillis()
+        private set
+
+    private val ticking: ScheduledFuture<*>
+
+    init {
+        val openCursorsName = MetricRegistry.name(CursorExpirationWheel::class.java, "open-cursors")
+        metrics.remove(openCursorsName)
+        metrics.register(openCursorsName, Gauge<Int> { openCursors.get() })
+
+        ticking = ticker.scheduleAtFixedRate({ advance() }, tickMillis, tickMillis, TimeUnit.MILLISECONDS)
+    }
+
+    /**
+     * Starts tracking the expiration of a statement holder.
+     *
+     * @param holder The statement holder to close once it expires.
+     * @param timeoutMillis How long the holder may go without its deadline being refreshed.
+     */
+    fun register(holder: StatementHolder, timeoutMillis: Long): Expiration {
+        return register(holder, holder::isOpen, timeoutMillis)
+    }
+
+    /**
+     * Starts tracking the expiration of any other resource that holds a cursor open, such as a copy stream.
+     *
+     * @param resource The resource to close once it expires.
+     * @param isOpen Returns whether the resource is still open.
+     * @param timeoutMillis How long the resource may go without its deadline being refreshed.
+     */
+    fun register(resource: AutoCloseable, isOpen: () -> Boolean, timeoutMillis: Long): Expiration {
+        val expiration = Expiration(resource, isOpen, timeoutMillis, now)
+        openCursors.incrementAndGet()
+        schedule(expiration)
+        return expiration
+    }
+
+    private fun schedule(expiration: Expiration) {
+        //Entries that expire before the next tick are placed in the next bucket, which is the earliest one visited.
+        synchronized(lock) {
+            val ticks = maxOf(1L, (expiration.deadline - now + tickMillis - 1) / tickMillis)
+            buckets[((tick + ticks) % buckets.size).toInt()].add(expiration)
+        }
+    }
+
+    private fun advance() {
+        try {
+            val expirations = synchronized(lock) {
+                now = System.currentTimeMillis()
+                tick++
+                val bucket = buckets[(tick % buckets.size).toInt()]
+                val drained = bucket.toList()
+                bucket.clear()
+                drained
+            }
+            val reschedule = mutableListOf<Expiration>()
+
+            expirations.forEach { expiration ->
+                when {
+                    expiration.done -> Unit
+                    !expiration.isOpen() -> expiration.cancel()
+                    expiration.deadline <= now -> {
+                        logger.info("Closing postgres cursor because it has expired, even though it is not exhausted.")
+                        expiredCursors.mark()
+                        expiration.closeResource()
+                        expiration.cancel()
+                    }
+                    else -> reschedule.add(expiration)
+                }
+            }
+
+            reschedule.forEach(::schedule)
+        } catch (e: Exception) {
+            logger.error("Error while expiring postgres cursors.", e)
+        }
+    }
+
+    /**
+     * Stops advancing the wheel. Cursors that are still registered are no longer expired.
+     */
+    override fun close() {
+        ticking.cancel(false)
+    }
+
+    inner class Expiration internal constructor(
+            private val resource: AutoCloseable,
+            internal val isOpen: () -> Boolean,
+            private val timeoutMillis: Long,
+            private val created: Long
+    ) {
+        @Volatile
+        var deadline: Long = created + timeoutMillis
+            private set
+
+        @Volatile
+        var done = false
+            private set
+
+        /**
+         * Pushes the deadline of the cursor out by its timeout.
+         */
+        fun touch() {
+            deadline = now + timeoutMillis
+        }
+
+        internal fun closeResource() {
+            try {
+                resource.close()
+            } catch (e: Exception) {
+                logger.error("Unable to close expired resource {}.", resource, e)
+            }
+        }
+
+        /**
+         * Stops tracking the cursor. Safe to call more than once.
+         */
+        @Synchronized
+        fun cancel() {
+            if (!done) {
+                done = true
+                openCursors.decrementAndGet()
+                cursorAges.update(now - created)
+            }
+        }
+    }
+}
@@ -0,0 +1,331 @@
+/*
+ * Copyright (C) 2021. OpenLattice, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * You can contact the owner of the copyright at support@openlattice.com
+ *
+ *
+ */
+
+package com.openlattice.postgres.streams
+
+import com.dataloom.streams.StreamUtil
+import com.openlattice.postgres.PostgresColumnDefinition
+import com.openlattice.postgres.PostgresTableDefinition
+import com.zaxxer.hikari.HikariDataSource
+import org.slf4j.LoggerFactory
+import java.io.*
+import java.math.BigDecimal
+import java.sql.ResultSet
+import java.sql.SQLException
+import java.sql.Timestamp
+import java.time.Instant
+import java.time.LocalDate
+import java.time.LocalDateTime
+import java.time.OffsetDateTime
+import java.util.*
+import java.util.stream.Stream
+
+private const val DEFAULT_PAGE_SIZE = 1000
+private const val DEFAULT_MAX_RETRIES = 3
+private const val RETRY_BACKOFF_MILLIS = 1000L
+private const val DEFAULT_SAMPLE_PERCENT = 1.0
+
+/**
+ * Position of a keyset paginated scan, given by the primary key values of the last row returned. Key values are in
+ * the same order as the primary key of the table.
+ *
+ * Cursors can be handed out to clients as an opaque string using [encode] and turned back into a cursor using
+ * [decode]. Only the value types that postgres returns for common key columns can be encoded, and decoding only ever
+ * creates values of those types, so decoding a string received from a client is safe.
+ */
+data class KeysetCursor(val key: List<Any>) {
+    companion object {
+        private const val VERSION = 1
+        private const val MAX_KEY_COLUMNS = 255
+
+        /**
+         * Decodes a cursor encoded using [encode].
+         *
+         * @throws IllegalArgumentException If [cursor] is not a valid encoded cursor.
+         */
+        @JvmStatic
+        fun decode(cursor: String): KeysetCursor {
+            try {
+                DataInputStream(ByteArrayInputStream(Base64.getUrlDecoder().decode(cursor))).use { input ->
+                    require(input.readByte().toInt() == VERSION) { "Unsupported cursor version." }
+                    val key = (0 until input.readUnsignedByte()).map { decodeValue(input.readChar(), input.readUTF()) }
+                    require(input.read() == -1) { "Unexpected data after cursor." }
+                    return KeysetCursor(key)
+                }
+            } catch (e: IOException) {
+                throw IllegalArgumentException("Invalid cursor $cursor.", e)
+            } catch (e: RuntimeException) {
+                throw IllegalArgumentException("Invalid cursor $cursor.", e)
+            }
+        }
+
+        private fun encodeValue(value: Any): Pair<Char, String> {
+            return when (value) {
+                is Long -> 'J' to value.toString()
+                is Int -> 'I' to value.toString()
+                is Short -> 'S' to value.toString()
+                is String -> 's' to value
+                is UUID -> 'U' to value.toString()
+                is BigDecimal -> 'D' to value.toString()
+                is Boolean -> 'Z' to value.toString()
+                is Timestamp -> 'T' to value.toInstant().toString()
+                is java.sql.Date -> 'd' to value.toString()
+                is OffsetDateTime -> 'O' to value.toString()
+                is LocalDate -> 'L' to value.toString()
+                is LocalDateTime -> 'l' to value.toString()
+                else -> throw IllegalArgumentException("Unable to encode cursor value of type ${value.javaClass.name}.")
+            }
+        }
+
+        private fun decodeValue(type: Char, value: String): Any {
+            return when (type) {
+                'J' -> value.toLong()
+                'I' -> value.toInt()
+                'S' -> value.toShort()
+                's' -> value
+                'U' -> UUID.fromString(value)
+                'D' -> BigDecimal(value)
+                'Z' -> value.toBoolean()
+                'T' -> Timestamp.from(Instant.parse(value))
+                'd' -> java.sql.Date.valueOf(value)
+                'O' -> OffsetDateTime.parse(value)
+                'L' -> LocalDate.parse(value)
+                'l' -> LocalDateTime.parse(value)
+                else -> throw IllegalArgumentException("Unknown cursor value type $type.")
+            }
+        }
+    }
+
+    /**
+     * Encodes the cursor as an opaque url safe string.
+     *
+     * @throws IllegalArgumentException If the cursor contains a key value of an unsupported type.
+     */
+    fun encode(): String {
+        require(key.size <= MAX_KEY_COLUMNS) { "Unable to encode cursor with more than $MAX_KEY_COLUMNS values." }
+        val bytes = ByteArrayOutputStream()
+        DataOutputStream(bytes).use { output ->
+            output.writeByte(VERSION)
+            output.writeByte(key.size)
+            key.forEach { value ->
+                val (type, text) = encodeValue(value)
+                output.writeChar(type.toInt())
+                output.writeUTF(text)
+            }
+        }
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(bytes.toByteArray())
+    }
+}
+
+/**
+ * Scans a table in primary key order one bounded page at a time, instead of holding a cursor open for the whole scan.
+ *
+ * Every page is read on its own connection in auto-commit mode, so no transaction or connection is held between
+ * pages and failing pages can simply be retried. Scans cover the keys after [start], up to and including [end], and
+ * can be resumed by persisting [KeysetPostgresIterator.cursor] and passing it back in as [start].
+ *
+ * @author Matthew Tamayo-Rios &lt;matthew@openlattice.com&gt;
+ */
+class KeysetPostgresIterable<T> @JvmOverloads constructor(
+        private val hds: HikariDataSource,
+        private val table: PostgresTableDefinition,
+        private val mapper: (ResultSet) -> T,
+        private val pageSize: Int = DEFAULT_PAGE_SIZE,
+        private val start: KeysetCursor? = null,
+        private val end: KeysetCursor? = null,
+        private val columns: List<PostgresColumnDefinition> = listOf(),
+        private val maxRetries: Int = DEFAULT_MAX_RETRIES
+) : Iterable<T> {
+    companion object {
+        private val logger = LoggerFactory.getLogger(KeysetPostgresIterable::class.java)
+
+        /**
+         * Splits a scan of the whole table into up to [partitions] key ranges that are scanned concurrently. Range
+         * boundaries are picked from a block sample of [samplePercent] percent of the table's primary keys, so ranges
+         * are only approximately even.
+         */
+        @JvmStatic
+        @JvmOverloads
+        fun <T> parallel(
+                hds: HikariDataSource,
+                table: PostgresTableDefinition,
+                mapper: (ResultSet) -> T,
+                partitions: Int,
+                pageSize: Int = DEFAULT_PAGE_SIZE,
+                columns: List<PostgresColumnDefinition> = listOf(),
+                samplePercent: Double = DEFAULT_SAMPLE_PERCENT
+        ): ParallelPostgresIterable<T> {
+            check(partitions > 0) { "Number of partitions must be positive." }
+            check(samplePercent > 0 && samplePercent <= 100) { "Sample percent must be in (0, 100]." }
+
+            val boundaries = sampleBoundaries(hds, table, partitions, samplePercent)
+            val starts = listOf<KeysetCursor?>(null) + boundaries
+            val ends = boundaries + listOf<KeysetCursor?>(null)
+
+            logger.info("Scanning table {} in {} key ranges.", table.name, starts.size)
+            return ParallelPostgresIterable(starts.zip(ends).map { (start, end) ->
+                KeysetPostgresIterable(hds, table, mapper, pageSize, start, end, columns)
+            })
+        }
+
+        private fun sampleBoundaries(
+                hds: HikariDataSource,
+                table: PostgresTableDefinition,
+                partitions: Int,
+                samplePercent: Double
+        ): List<KeysetCursor> {
+            if (partitions == 1) {
+                return listOf()
+            }
+
+            val keyColumns = table.primaryKey.map(PostgresColumnDefinition::getName)
+            val keys = keyColumns.joinToString(",")
+            val sql = "SELECT $keys FROM ${table.name} TABLESAMPLE SYSTEM ($samplePercent) ORDER BY $keys"
+            val sample = mutableListOf<KeysetCursor>()
+
+            hds.connection.use { connection ->
+                connection.createStatement().use { stmt ->
+                    stmt.executeQuery(sql).use { rs ->
+                        while (rs.next()) {
+                            sample.add(readCursor(rs, keyColumns))
+                        }
+                    }
+                }
+            }
+
+            return (1 until partitions)
+                    .map { sample.size * it / partitions }
+                    .filter { it < sample.size }
+                    .map { sample[it] }
+                    .distinct()
+        }
+
+        internal fun readCursor(rs: ResultSet, keyColumns: List<String>): KeysetCursor {
+            return KeysetCursor(keyColumns.map { rs.getObject(it) })
+        }
+    }
+
+    init {
+        check(pageSize > 0) { "Page size must be positive." }
+        check(maxRetries >= 0) { "Max retries must be nonnegative." }
+    }
+
+    override fun iterator(): KeysetPostgresIterator<T> {
+        return KeysetPostgresIterator(hds, table, mapper, pageSize, start, end, columns, maxRetries)
+    }
+
+    fun stream(): Stream<T> {
+        return StreamUtil.stream(this)
+    }
+}
+
+class KeysetPostgresIterator<T>(
+        private val hds: HikariDataSource,
+        table: PostgresTableDefinition,
+        private val mapper: (ResultSet) -> T,
+        private val pageSize: Int,
+        start: KeysetCursor?,
+        private val end: KeysetCursor?,
+        columns: List<PostgresColumnDefinition>,
+        private val maxRetries: Int
+) : Iterator<T> {
+    companion object {
+        private val logger = LoggerFactory.getLogger(KeysetPostgresIterator::class.java)
+    }
+
+    private val keyColumns = table.primaryKey.map(PostgresColumnDefinition::getName)
+    private val firstPageQuery = table.keysetPageQuery(columns, false, end != null)
+    private val nextPageQuery = table.keysetPageQuery(columns, true, end != null)
+
+    private var page: List<Pair<KeysetCursor, T>> = listOf()
+    private var index = 0
+    private var lastPage = false
+    private var fetchedThrough = start
+
+    /**
+     * The primary key of the last row returned by [next], or the starting position if no rows have been returned.
+     * Passing this as the start of a new scan resumes the scan after that row.
+     */
+    var cursor: KeysetCursor? = start
+        private set
+
+    override fun hasNext(): Boolean {
+        while (index >= page.size) {
+            if (lastPage) {
+                return false
+            }
+            page = fetchPageWithRetries()
+            index = 0
+            lastPage = page.size < pageSize
+            if (page.isNotEmpty()) {
+                fetchedThrough = page.last().first
+            }
+        }
+        return true
+    }
+
+    override fun next(): T {
+        if (!hasNext()) {
+            throw NoSuchElementException("There are no more items remaining in the stream.")
+        }
+        val (key, value) = page[index++]
+        cursor = key
+        return value
+    }
+
+    private fun fetchPageWithRetries(): List<Pair<KeysetCursor, T>> {
+        var attempt = 0
+        while (true) {
+            try {
+                return fetchPage()
+            } catch (e: SQLException) {
+                if (attempt++ >= maxRetries) {
+                    throw IllegalStateException("Unable to read page after $fetchedThrough.", e)
+                }
+                logger.warn("Unable to read page after {}, retrying (attempt {} of {}).", fetchedThrough, attempt,
+                        maxRetries, e)
+                Thread.sleep(RETRY_BACKOFF_MILLIS * attempt)
+            }
+        }
+    }
+
+    private fun fetchPage(): List<Pair<KeysetCursor, T>> {
+        val lower = fetchedThrough
+        val rows = ArrayList<Pair<KeysetCursor, T>>(pageSize)
+
+        hds.connection.use { connection ->
+            connection.prepareStatement(if (lower == null) firstPageQuery else nextPageQuery).use { ps ->
+                var param = 1
+                lower?.key?.forEach { ps.setObject(param++, it) }
+                end?.key?.forEach { ps.setObject(param++, it) }
+                ps.setInt(param, pageSize)
+
+                ps.executeQuery().use { rs ->
+                    while (rs.next()) {
+                        rows.add(KeysetPostgresIterable.readCursor(rs, keyColumns) to mapper(rs))
+                    }
+                }
+            }
+        }
+
+        return rows
+    }
+}
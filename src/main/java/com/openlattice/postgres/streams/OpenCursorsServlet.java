@@ -0,0 +1,67 @@
+/*
+ * Copyright (C) 2021. OpenLattice, Inc
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * You can contact the owner of the copyright at support@openlattice.com
+ *
+ */
+
+package com.openlattice.postgres.streams;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * Lists the streaming queries that currently hold a connection, oldest first, with their query name, sql, age and
+ * the number of rows read so far.
+ *
+ * @author Matthew Tamayo-Rios &lt;matthew@openlattice.com&gt;
+ */
+public class OpenCursorsServlet extends HttpServlet {
+    private static final long         serialVersionUID = 4213371230950411530L;
+    private static final ObjectMapper mapper           = new ObjectMapper();
+
+    @Override
+    protected void doGet( HttpServletRequest req, HttpServletResponse resp ) throws IOException {
+        final List<Map<String, Object>> cursors = StatementHolder.getOpenStatements()
+                .stream()
+                .sorted( Comparator.comparingLong( StatementHolder::getAgeMillis ).reversed() )
+                .map( OpenCursorsServlet::describe )
+                .collect( Collectors.toList() );
+
+        resp.setContentType( "application/json" );
+        resp.setHeader( "Cache-Control", "must-revalidate,no-cache,no-store" );
+        resp.setStatus( HttpServletResponse.SC_OK );
+        mapper.writerWithDefaultPrettyPrinter().writeValue( resp.getOutputStream(), cursors );
+    }
+
+    private static Map<String, Object> describe( StatementHolder holder ) {
+        final Map<String, Object> cursor = new LinkedHashMap<>();
+        cursor.put( "queryName", holder.getQueryName() );
+        cursor.put( "sql", holder.getSql() );
+        cursor.put( "ageMillis", holder.getAgeMillis() );
+        cursor.put( "rows", holder.getRows() );
+        return cursor;
+    }
+}
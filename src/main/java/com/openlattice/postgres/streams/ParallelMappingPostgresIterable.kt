@@ -0,0 +1,249 @@
+/*
+ * Copyright (C) 2021. OpenLattice, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * You can contact the owner of the copyright at support@openlattice.com
+ *
+ *
+ */
+
+package com.openlattice.postgres.streams
+
+import com.dataloom.streams.StreamUtil
+import com.google.common.primitives.Primitives
+import com.openlattice.postgres.ResultSetColumns
+import org.slf4j.LoggerFactory
+import java.io.Closeable
+import java.math.BigDecimal
+import java.math.BigInteger
+import java.sql.ResultSet
+import java.sql.SQLException
+import java.sql.Time
+import java.sql.Timestamp
+import java.time.*
+import java.util.*
+import java.util.concurrent.ForkJoinPool
+import java.util.concurrent.ForkJoinTask
+import java.util.function.Supplier
+import java.util.stream.Stream
+
+private const val DEFAULT_BATCH_SIZE = 256
+
+/**
+ * Iterable that splits mapping rows into a capture step, which runs on the reading thread, and a mapping step, such as
+ * decoding JSON, which runs on a pool.
+ *
+ * The reading thread only applies [capture] to each row, typically via [RawRow.capture], and hands batches of
+ * [batchSize] captured rows to [pool], where [mapper] runs on them in parallel. At most twice the parallelism of the
+ * pool batches are in flight at once. If [ordered] is set, mapped rows are returned in the order they were read,
+ * otherwise completed batches are returned first.
+ *
+ * @author Matthew Tamayo-Rios &lt;matthew@openlattice.com&gt;
+ */
+class ParallelMappingPostgresIterable<R, T> @JvmOverloads constructor(
+        private val rsh: Supplier<StatementHolder>,
+        private val capture: (ResultSet) -> R,
+        private val mapper: (R) -> T,
+        private val batchSize: Int = DEFAULT_BATCH_SIZE,
+        private val ordered: Boolean = true,
+        private val pool: ForkJoinPool = ForkJoinPool.commonPool()
+) : Iterable<T> {
+    init {
+        check(batchSize > 0) { "Batch size must be positive." }
+    }
+
+    override fun iterator(): ParallelMappingPostgresIterator<R, T> {
+        return ParallelMappingPostgresIterator(
+                PostgresIterator(rsh.get(), capture, singleConsumer = true),
+                mapper,
+                batchSize,
+                ordered,
+                pool
+        )
+    }
+
+    fun stream(): Stream<T> {
+        return StreamUtil.stream(this)
+    }
+}
+
+class ParallelMappingPostgresIterator<R, T>(
+        private val rows: PostgresIterator<R>,
+        private val mapper: (R) -> T,
+        private val batchSize: Int,
+        private val ordered: Boolean,
+        private val pool: ForkJoinPool
+) : Iterator<T>, AutoCloseable, Closeable {
+    companion object {
+        private val logger = LoggerFactory.getLogger(ParallelMappingPostgresIterator::class.java)
+    }
+
+    private val maxInFlight = 2 * pool.parallelism
+    private val inFlight = ArrayDeque<ForkJoinTask<List<T>>>(maxInFlight)
+    private var current: List<T> = emptyList()
+    private var index = 0
+
+    override fun hasNext(): Boolean {
+        while (index >= current.size) {
+            submitBatches()
+            val batch = nextCompletedBatch() ?: return false
+            current = try {
+                batch.join()
+            } catch (e: Exception) {
+                logger.error("Unable to map rows from result set.", e)
+                close()
+                throw IllegalStateException("Unable to map rows from result set.", e)
+            }
+            index = 0
+        }
+        return true
+    }
+
+    override fun next(): T {
+        if (!hasNext()) {
+            throw NoSuchElementException("There are no more items remaining in the stream.")
+        }
+        return current[index++]
+    }
+
+    private fun submitBatches() {
+        while (inFlight.size < maxInFlight && rows.hasNext()) {
+            val batch = ArrayList<R>(batchSize)
+            while (batch.size < batchSize && rows.hasNext()) {
+                batch.add(rows.next())
+            }
+            inFlight.add(pool.submit<List<T>> { batch.map(mapper) })
+        }
+    }
+
+    private fun nextCompletedBatch(): ForkJoinTask<List<T>>? {
+        if (!ordered) {
+            val iter = inFlight.iterator()
+            while (iter.hasNext()) {
+                val batch = iter.next()
+                if (batch.isDone) {
+                    iter.remove()
+                    return batch
+                }
+            }
+        }
+        return inFlight.poll()
+    }
+
+    override fun close() {
+        rows.close()
+        inFlight.forEach { it.cancel(false) }
+        inFlight.clear()
+    }
+}
+
+/**
+ * The column values of a single row, copied out of the result set so that they can be decoded on another thread.
+ */
+class RawRow private constructor(private val columns: ResultSetColumns, private val values: Array<Any?>) {
+    companion object {
+        /**
+         * Copies the current row of [rs]. Column indexes are only resolved once per result set.
+         */
+        @JvmStatic
+        fun capture(rs: ResultSet): RawRow {
+            val columns = columns(rs)
+            val values = arrayOfNulls<Any>(columns.columnCount)
+            for (i in values.indices) {
+                values[i] = rs.getObject(i + 1)
+            }
+            return RawRow(columns, values)
+        }
+
+        private val lastColumns = ThreadLocal<ResultSetColumns>()
+
+        private fun columns(rs: ResultSet): ResultSetColumns {
+            val cached = lastColumns.get()
+            if (cached != null && cached.isFor(rs)) {
+                return cached
+            }
+            val columns = ResultSetColumns(rs)
+            lastColumns.set(columns)
+            return columns
+        }
+    }
+
+    operator fun get(column: String): Any? = values[columns.indexOf(column) - 1]
+
+    /**
+     * Returns the value of the column as a string. This also works for json and jsonb columns, which are read as
+     * driver objects whose string form is the json text.
+     */
+    fun getString(column: String): String? = get(column)?.toString()
+
+    /**
+     * Returns the value of the column converted to [type], with the same conversions between numeric and date time
+     * types as [ResultSet.getObject], such as reading an integer or numeric column as a [Long].
+     *
+     * @throws SQLException If the value can't be converted to [type] without losing information.
+     */
+    @Throws(SQLException::class)
+    fun <V> getObject(column: String, type: Class<V>): V? {
+        val value = get(column) ?: return null
+        val boxed = Primitives.wrap(type)
+        return boxed.cast(convert(value, boxed))
+    }
+
+    private fun convert(value: Any, type: Class<*>): Any {
+        if (type.isInstance(value)) {
+            return value
+        }
+
+        try {
+            when (value) {
+                is Number -> when (type) {
+                    Long::class.javaObjectType -> return exact(value).longValueExact()
+                    Int::class.javaObjectType -> return exact(value).intValueExact()
+                    Short::class.javaObjectType -> return exact(value).shortValueExact()
+                    Double::class.javaObjectType -> return value.toDouble()
+                    Float::class.javaObjectType -> return value.toFloat()
+                    BigDecimal::class.java -> return exact(value)
+                    BigInteger::class.java -> return exact(value).toBigIntegerExact()
+                }
+                is Timestamp -> when (type) {
+                    LocalDateTime::class.java -> return value.toLocalDateTime()
+                    OffsetDateTime::class.java -> return value.toInstant().atOffset(ZoneOffset.UTC)
+                    Instant::class.java -> return value.toInstant()
+                }
+                is java.sql.Date -> if (type == LocalDate::class.java) {
+                    return value.toLocalDate()
+                }
+                is Time -> if (type == LocalTime::class.java) {
+                    return value.toLocalTime()
+                }
+            }
+        } catch (e: ArithmeticException) {
+            throw SQLException("Bad value $value for type ${type.simpleName}.", e)
+        } catch (e: NumberFormatException) {
+            throw SQLException("Bad value $value for type ${type.simpleName}.", e)
+        }
+
+        if (type == String::class.java) {
+            return value.toString()
+        }
+        throw SQLException("Conversion to ${type.name} from ${value.javaClass.name} not supported.")
+    }
+
+    private fun exact(value: Number): BigDecimal = when (value) {
+        is BigDecimal -> value
+        is Long, is Int, is Short, is Byte -> BigDecimal.valueOf(value.toLong())
+        else -> BigDecimal(value.toString())
+    }
+}
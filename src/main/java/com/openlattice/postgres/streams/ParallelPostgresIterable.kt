@@ -0,0 +1,189 @@
+/*
+ * Copyright (C) 2021. OpenLattice, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * You can contact the owner of the copyright at support@openlattice.com
+ *
+ *
+ */
+
+package com.openlattice.postgres.streams
+
+import com.dataloom.streams.StreamUtil
+import com.google.common.util.concurrent.ThreadFactoryBuilder
+import org.slf4j.LoggerFactory
+import java.io.Closeable
+import java.util.*
+import java.util.concurrent.ArrayBlockingQueue
+import java.util.concurrent.Executors
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicInteger
+import java.util.concurrent.atomic.AtomicReference
+import java.util.stream.Stream
+
+private const val DEFAULT_QUEUE_CAPACITY = 1 shl 16
+private const val POLL_MILLIS = 100L
+private const val DEFAULT_TIMEOUT_MILLIS = 600000L
+
+/**
+ * Consumes several iterables concurrently, one thread per iterable, and merges their elements into a single iterator.
+ * Elements from different iterables are interleaved in arrival order.
+ *
+ * This is primarily intended for splitting a large scan into several [BasePostgresIterable] partitions that each run
+ * on their own connection.
+ *
+ * Iterators that are not read from within their timeout are closed by the [CursorExpirationWheel], which stops the
+ * threads reading the partitions, so abandoned iterators don't hold on to threads and connections.
+ *
+ * @author Matthew Tamayo-Rios &lt;matthew@openlattice.com&gt;
+ */
+class ParallelPostgresIterable<T> @JvmOverloads constructor(
+        private val iterables: List<Iterable<T>>,
+        private val queueCapacity: Int = DEFAULT_QUEUE_CAPACITY,
+        private val timeoutMillis: Long = DEFAULT_TIMEOUT_MILLIS,
+        private val expirationWheel: CursorExpirationWheel = CursorExpirationWheel.SHARED
+) : Iterable<T> {
+    init {
+        check(iterables.isNotEmpty()) { "At least one iterable must be provided." }
+        check(queueCapacity > 0) { "Queue capacity must be positive." }
+    }
+
+    override fun iterator(): ParallelPostgresIterator<T> {
+        return ParallelPostgresIterator(iterables, queueCapacity, timeoutMillis, expirationWheel)
+    }
+
+    fun stream(): Stream<T> {
+        return StreamUtil.stream(this)
+    }
+}
+
+class ParallelPostgresIterator<T> @JvmOverloads constructor(
+        iterables: List<Iterable<T>>,
+        queueCapacity: Int,
+        timeoutMillis: Long = DEFAULT_TIMEOUT_MILLIS,
+        expirationWheel: CursorExpirationWheel = CursorExpirationWheel.SHARED
+) : Iterator<T>, AutoCloseable, Closeable {
+    companion object {
+        private val logger = LoggerFactory.getLogger(ParallelPostgresIterator::class.java)
+        private val threadCount = AtomicInteger()
+    }
+
+    private val queue = ArrayBlockingQueue<Any>(queueCapacity)
+    private val remaining = AtomicInteger(iterables.size)
+    private val failure = AtomicReference<Throwable>()
+    private val executor = Executors.newFixedThreadPool(
+            iterables.size,
+            ThreadFactoryBuilder()
+                    .setDaemon(true)
+                    .setNameFormat("parallel-postgres-iterator-${threadCount.getAndIncrement()}-%d")
+                    .build()
+    )
+
+    @Volatile
+    private var open = true
+    @Volatile
+    private var expired = false
+    private var nextElem: Any? = null
+    private val expiration = expirationWheel.register(AutoCloseable { expire() }, { open }, timeoutMillis)
+
+    init {
+        iterables.forEach { iterable ->
+            executor.execute {
+                var iterator: Iterator<T>? = null
+                try {
+                    iterator = iterable.iterator()
+                    while (open && iterator.hasNext()) {
+                        val elem = iterator.next() as Any
+                        while (open && !queue.offer(elem, POLL_MILLIS, TimeUnit.MILLISECONDS)) {
+                            //Wait for the consumer to catch up.
+                        }
+                    }
+                } catch (e: Exception) {
+                    if (open) {
+                        logger.error("Error while reading partition for parallel iterator.", e)
+                        failure.compareAndSet(null, e)
+                    }
+                } finally {
+                    (iterator as? AutoCloseable)?.close()
+                    remaining.decrementAndGet()
+                }
+            }
+        }
+        executor.shutdown()
+    }
+
+    override fun hasNext(): Boolean {
+        while (nextElem == null) {
+            expiration.touch()
+            checkFailure()
+            if (!open) {
+                check(!expired) { "Iterator was closed because it was not read from within its timeout." }
+                return false
+            }
+
+            nextElem = queue.poll()
+
+            if (nextElem == null) {
+                if (remaining.get() == 0) {
+                    //All producers have finished, so anything left is already in the queue.
+                    nextElem = queue.poll()
+                    checkFailure()
+                    if (nextElem == null) {
+                        close()
+                    }
+                    return nextElem != null
+                }
+                nextElem = queue.poll(POLL_MILLIS, TimeUnit.MILLISECONDS)
+            }
+        }
+        return true
+    }
+
+    private fun checkFailure() {
+        failure.get()?.let {
+            close()
+            throw IllegalStateException("Unable to read all partitions.", it)
+        }
+    }
+
+    @Suppress("UNCHECKED_CAST")
+    override fun next(): T {
+        if (!hasNext()) {
+            throw NoSuchElementException("There are no more items remaining in the stream.")
+        }
+        expiration.touch()
+        val elem = nextElem as T
+        nextElem = null
+        return elem
+    }
+
+    /**
+     * Called by the expiration wheel once the iterator has been abandoned. Unlike [close], later calls to [hasNext]
+     * fail instead of reporting the end of the stream.
+     */
+    private fun expire() {
+        expired = true
+        close()
+    }
+
+    /**
+     * Stops reading partitions and interrupts the threads reading them.
+     */
+    override fun close() {
+        open = false
+        executor.shutdownNow()
+        queue.clear()
+    }
+}
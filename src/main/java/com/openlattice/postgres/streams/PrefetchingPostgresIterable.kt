@@ -0,0 +1,189 @@
+/*
+ * Copyright (C) 2021. OpenLattice, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * You can contact the owner of the copyright at support@openlattice.com
+ *
+ *
+ */
+
+package com.openlattice.postgres.streams
+
+import com.dataloom.streams.StreamUtil
+import com.google.common.util.concurrent.ThreadFactoryBuilder
+import org.slf4j.LoggerFactory
+import java.io.Closeable
+import java.sql.ResultSet
+import java.util.*
+import java.util.concurrent.ArrayBlockingQueue
+import java.util.concurrent.Executors
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicReference
+import java.util.function.Supplier
+import java.util.stream.Stream
+
+private const val DEFAULT_BLOCK_SIZE = 1024
+private const val DEFAULT_BUFFERED_BLOCKS = 2
+private const val DEFAULT_TIMEOUT_MILLIS = 600000L
+private const val POLL_MILLIS = 100L
+
+/**
+ * Iterable that reads and maps rows on a background thread, so that fetching and mapping the next block of rows
+ * overlaps with the caller consuming the current one.
+ *
+ * Rows are handed off in blocks of [blockSize], which defaults to the fetch size of the statement. At most
+ * [bufferedBlocks] blocks are buffered ahead of the consumer, after which the background thread waits for the
+ * consumer to catch up. The statement is always closed by the background thread, once the result set is exhausted,
+ * the iterator is closed or the cursor expires because the consumer stopped reading. Reading from an iterator whose
+ * cursor expired throws an [IllegalStateException] once the rows read before it expired have been consumed.
+ *
+ * @author Matthew Tamayo-Rios &lt;matthew@openlattice.com&gt;
+ */
+class PrefetchingPostgresIterable<T> @JvmOverloads constructor(
+        private val rsh: Supplier<StatementHolder>,
+        private val mapper: (ResultSet) -> T,
+        private val blockSize: Int = 0,
+        private val bufferedBlocks: Int = DEFAULT_BUFFERED_BLOCKS
+) : Iterable<T> {
+    init {
+        check(blockSize >= 0) { "Block size must be nonnegative." }
+        check(bufferedBlocks > 0) { "Number of buffered blocks must be positive." }
+    }
+
+    override fun iterator(): PrefetchingPostgresIterator<T> {
+        return PrefetchingPostgresIterator(rsh.get(), mapper, blockSize, bufferedBlocks)
+    }
+
+    fun stream(): Stream<T> {
+        return StreamUtil.stream(this)
+    }
+}
+
+class PrefetchingPostgresIterator<T> @JvmOverloads constructor(
+        private val rsh: StatementHolder,
+        private val mapper: (ResultSet) -> T,
+        blockSize: Int = 0,
+        bufferedBlocks: Int = DEFAULT_BUFFERED_BLOCKS,
+        timeoutMillis: Long = DEFAULT_TIMEOUT_MILLIS,
+        expirationWheel: CursorExpirationWheel = CursorExpirationWheel.SHARED
+) : Iterator<T>, AutoCloseable, Closeable {
+    companion object {
+        private val logger = LoggerFactory.getLogger(PrefetchingPostgresIterator::class.java)
+        private val executor = Executors.newCachedThreadPool(
+                ThreadFactoryBuilder().setDaemon(true).setNameFormat("prefetching-postgres-iterator-%d").build()
+        )
+    }
+
+    private val blockSize = when {
+        blockSize > 0 -> blockSize
+        rsh.statement.fetchSize > 0 -> rsh.statement.fetchSize
+        else -> DEFAULT_BLOCK_SIZE
+    }
+    private val queue = ArrayBlockingQueue<List<Any?>>(bufferedBlocks)
+    private val failure = AtomicReference<Throwable>()
+    private val expiration = expirationWheel.register(rsh, timeoutMillis)
+
+    @Volatile
+    private var open = true
+    @Volatile
+    private var finished = false
+    private var current: List<Any?> = emptyList()
+    private var index = 0
+    private var exhausted = false
+
+    init {
+        executor.execute(this::prefetch)
+    }
+
+    private fun prefetch() {
+        try {
+            val rs = rsh.resultSet
+            var more = rs.next()
+            while (more && open) {
+                val block = ArrayList<Any?>(blockSize)
+                while (more && block.size < blockSize) {
+                    block.add(mapper(rs))
+                    rsh.rowRead()
+                    more = rs.next()
+                }
+                if (!offer(block)) {
+                    break
+                }
+            }
+        } catch (e: Exception) {
+            if (open && rsh.isOpen) {
+                logger.error("Error while prefetching rows from result set.", e)
+                failure.compareAndSet(null, e)
+            }
+        } finally {
+            //Only the expiration wheel closes the statement while the iterator is still open.
+            if (open && !rsh.isOpen) {
+                failure.compareAndSet(null, IllegalStateException("cursor expired"))
+            }
+            rsh.close()
+            expiration.cancel()
+            finished = true
+        }
+    }
+
+    /**
+     * Waits for space in the buffer until the consumer closes the iterator or the cursor expires.
+     */
+    private fun offer(block: List<Any?>): Boolean {
+        while (!queue.offer(block, POLL_MILLIS, TimeUnit.MILLISECONDS)) {
+            if (!open || !rsh.isOpen) {
+                return false
+            }
+        }
+        return true
+    }
+
+    override fun hasNext(): Boolean {
+        expiration.touch()
+        while (index >= current.size) {
+            if (exhausted) {
+                return false
+            }
+
+            //Once the producer has finished, anything left is already in the queue.
+            val done = finished
+            val block = queue.poll(POLL_MILLIS, TimeUnit.MILLISECONDS)
+            expiration.touch()
+
+            if (block != null) {
+                current = block
+                index = 0
+            } else if (done) {
+                exhausted = true
+                failure.get()?.let { throw IllegalStateException("Unable to read all rows from result set.", it) }
+            }
+        }
+        return true
+    }
+
+    @Suppress("UNCHECKED_CAST")
+    override fun next(): T {
+        if (!hasNext()) {
+            throw NoSuchElementException("There are no more items remaining in the stream.")
+        }
+        return current[index++] as T
+    }
+
+    override fun close() {
+        open = false
+        exhausted = true
+        queue.clear()
+    }
+}
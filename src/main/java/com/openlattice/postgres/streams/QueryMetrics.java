@@ -0,0 +1,62 @@
+/*
+ * Copyright (C) 2021. OpenLattice, Inc
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * You can contact the owner of the copyright at support@openlattice.com
+ *
+ */
+
+package com.openlattice.postgres.streams;
+
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.SharedMetricRegistries;
+import com.codahale.metrics.Timer;
+import com.kryptnostic.rhizome.pods.MetricsPod;
+
+/**
+ * Per query metrics for streaming queries, reported to the shared metric registry and from there to prometheus.
+ * Metrics are named after a caller supplied query name, which should identify the query template rather than a
+ * specific execution.
+ *
+ * @author Matthew Tamayo-Rios &lt;matthew@openlattice.com&gt;
+ */
+public final class QueryMetrics {
+    private static final MetricRegistry metrics = SharedMetricRegistries.getOrCreate( MetricsPod.METRIC_REGISTRY_NAME );
+
+    private QueryMetrics() {
+    }
+
+    /**
+     * Time from executing a query until its first batch of rows is available.
+     */
+    public static Timer timeToFirstRow( String queryName ) {
+        return metrics.timer( MetricRegistry.name( QueryMetrics.class, queryName, "time-to-first-row" ) );
+    }
+
+    /**
+     * Number of rows read from a query before it was closed.
+     */
+    public static Histogram rows( String queryName ) {
+        return metrics.histogram( MetricRegistry.name( QueryMetrics.class, queryName, "rows" ) );
+    }
+
+    /**
+     * Time the connection of a query was held open.
+     */
+    public static Timer openTime( String queryName ) {
+        return metrics.timer( MetricRegistry.name( QueryMetrics.class, queryName, "open-time" ) );
+    }
+}
@@ -0,0 +1,213 @@
+/*
+ * Copyright (C) 2021. OpenLattice, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * You can contact the owner of the copyright at support@openlattice.com
+ *
+ *
+ */
+
+package com.openlattice.postgres.streams
+
+import com.dataloom.streams.StreamUtil
+import com.google.common.util.concurrent.ThreadFactoryBuilder
+import org.slf4j.LoggerFactory
+import java.io.Closeable
+import java.util.*
+import java.util.concurrent.ArrayBlockingQueue
+import java.util.concurrent.CopyOnWriteArrayList
+import java.util.concurrent.Executors
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicBoolean
+import java.util.stream.Stream
+
+private const val DEFAULT_BLOCK_SIZE = 256
+private const val DEFAULT_BUFFERED_BLOCKS = 16
+private const val DEFAULT_SLOW_CONSUMER_TIMEOUT_MILLIS = 60000L
+private const val POLL_MILLIS = 100L
+
+/**
+ * How a shared scan treats a subscriber whose buffer is full.
+ */
+enum class SlowConsumerPolicy {
+    /**
+     * Wait for the subscriber to catch up, which slows the scan down to the pace of the slowest subscriber.
+     */
+    BLOCK,
+
+    /**
+     * Wait for up to the slow consumer timeout and then disconnect the subscriber, so that other subscribers are only
+     * held up for a bounded amount of time. A disconnected subscriber fails once it has read the rows it had already
+     * buffered.
+     */
+    DISCONNECT
+}
+
+/**
+ * Reads a single scan of [source] and delivers every row to each of its subscribers, so that several consumers of
+ * the same query only cost one cursor.
+ *
+ * Subscribers must be attached with [subscribe] before the scan is started with [start]. Rows are shared between
+ * subscribers in immutable blocks of [blockSize] rows, and each subscriber buffers at most [bufferedBlocks] blocks.
+ * When a subscriber falls behind, [slowConsumerPolicy] decides whether the scan waits for it or disconnects it. The
+ * scan stops early and releases its cursor once every subscriber has been closed.
+ *
+ * @author Matthew Tamayo-Rios &lt;matthew@openlattice.com&gt;
+ */
+class SharedPostgresScan<T> @JvmOverloads constructor(
+        private val source: Iterable<T>,
+        private val blockSize: Int = DEFAULT_BLOCK_SIZE,
+        private val bufferedBlocks: Int = DEFAULT_BUFFERED_BLOCKS,
+        private val slowConsumerPolicy: SlowConsumerPolicy = SlowConsumerPolicy.BLOCK,
+        private val slowConsumerTimeoutMillis: Long = DEFAULT_SLOW_CONSUMER_TIMEOUT_MILLIS
+) {
+    companion object {
+        private val logger = LoggerFactory.getLogger(SharedPostgresScan::class.java)
+        private val executor = Executors.newCachedThreadPool(
+                ThreadFactoryBuilder().setDaemon(true).setNameFormat("shared-postgres-scan-%d").build()
+        )
+    }
+
+    private val subscriptions = CopyOnWriteArrayList<Subscription>()
+    private val started = AtomicBoolean()
+
+    init {
+        check(blockSize > 0) { "Block size must be positive." }
+        check(bufferedBlocks > 0) { "Number of buffered blocks must be positive." }
+        check(slowConsumerTimeoutMillis > 0) { "Slow consumer timeout must be positive." }
+    }
+
+    /**
+     * Attaches a new subscriber, which will receive every row of the scan.
+     *
+     * @throws IllegalStateException If the scan has already been started.
+     */
+    fun subscribe(): Subscription {
+        val subscription = Subscription()
+        subscriptions.add(subscription)
+        if (started.get()) {
+            subscriptions.remove(subscription)
+            throw IllegalStateException("Unable to subscribe to a scan that has already started.")
+        }
+        return subscription
+    }
+
+    /**
+     * Starts reading the scan on a background thread.
+     */
+    fun start() {
+        check(started.compareAndSet(false, true)) { "Scan has already been started." }
+        check(subscriptions.isNotEmpty()) { "At least one subscriber is required to start a scan." }
+        executor.execute(this::scan)
+    }
+
+    private fun scan() {
+        var iterator: Iterator<T>? = null
+        var failure: Exception? = null
+        try {
+            iterator = source.iterator()
+            while (iterator.hasNext() && subscriptions.any(Subscription::isActive)) {
+                val block = ArrayList<T>(blockSize)
+                while (block.size < blockSize && iterator.hasNext()) {
+                    block.add(iterator.next())
+                }
+                val shared = Collections.unmodifiableList(block)
+                subscriptions.forEach { it.offer(shared) }
+            }
+        } catch (e: Exception) {
+            logger.error("Error while reading shared scan.", e)
+            failure = e
+        } finally {
+            (iterator as? AutoCloseable)?.close()
+            subscriptions.forEach { it.finish(failure) }
+        }
+    }
+
+    inner class Subscription internal constructor() : Iterator<T>, AutoCloseable, Closeable {
+        private val queue = ArrayBlockingQueue<List<T>>(bufferedBlocks)
+        private var current: List<T> = listOf()
+        private var index = 0
+
+        @Volatile
+        private var closed = false
+        @Volatile
+        private var finished = false
+        @Volatile
+        private var failure: Exception? = null
+
+        internal fun isActive(): Boolean = !closed && !finished
+
+        internal fun offer(block: List<T>) {
+            if (!isActive()) {
+                return
+            }
+            val deadline = System.currentTimeMillis() + slowConsumerTimeoutMillis
+            while (!queue.offer(block, POLL_MILLIS, TimeUnit.MILLISECONDS)) {
+                if (closed) {
+                    return
+                }
+                if (slowConsumerPolicy == SlowConsumerPolicy.DISCONNECT && System.currentTimeMillis() > deadline) {
+                    logger.warn("Disconnecting subscriber that fell behind shared scan for {} ms.",
+                            slowConsumerTimeoutMillis)
+                    finish(IllegalStateException("Subscriber was disconnected for falling behind the shared scan."))
+                    return
+                }
+            }
+        }
+
+        internal fun finish(failure: Exception?) {
+            if (!finished) {
+                this.failure = failure
+                finished = true
+            }
+        }
+
+        override fun hasNext(): Boolean {
+            while (index >= current.size) {
+                check(!closed) { "Subscription has been closed." }
+                //Once the scan has finished delivering to this subscriber, anything left is already in the queue.
+                val done = finished
+                val block = queue.poll(POLL_MILLIS, TimeUnit.MILLISECONDS)
+                if (block != null) {
+                    current = block
+                    index = 0
+                } else if (done) {
+                    failure?.let { throw IllegalStateException("Unable to read all rows of shared scan.", it) }
+                    return false
+                }
+            }
+            return true
+        }
+
+        override fun next(): T {
+            if (!hasNext()) {
+                throw NoSuchElementException("There are no more items remaining in the stream.")
+            }
+            return current[index++]
+        }
+
+        fun stream(): Stream<T> {
+            return StreamUtil.stream(Iterable { this })
+        }
+
+        /**
+         * Detaches the subscriber. The scan stops once every subscriber has been closed.
+         */
+        override fun close() {
+            closed = true
+            queue.clear()
+        }
+    }
+}
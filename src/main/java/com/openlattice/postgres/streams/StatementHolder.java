@@ -23,21 +23,36 @@ package com.openlattice.postgres.streams;
 
 import com.google.common.base.Stopwatch;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.MapMaker;
 import java.io.Closeable;
 import java.sql.Connection;
 import java.sql.ResultSet;
 import java.sql.Statement;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
+import java.util.Set;
 import java.util.concurrent.TimeUnit;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
+ * Holds the connection, statement and result set of a streaming query until it is closed.
+ * <p>
+ * Every holder is tagged with a query name, under which the number of rows read and the time it was held open are
+ * reported to {@link QueryMetrics}. Holders that are still open can be listed with {@link #getOpenStatements()}.
+ * Open holders are only weakly referenced, so holders that are abandoned without being closed can still be garbage
+ * collected.
+ *
  * @author Matthew Tamayo-Rios &lt;matthew@openlattice.com&gt;
  */
 public class StatementHolder implements Closeable {
+    public static final  String UNNAMED_QUERY                   = "unnamed";
+    public static final  long   LONG_RUNNING_QUERY_LIMIT_MILLIS = 15000;
     private static final Logger logger                          = LoggerFactory.getLogger( StatementHolder.class );
-    private static final long   LONG_RUNNING_QUERY_LIMIT_MILLIS = 15000;
+
+    private static final Set<StatementHolder> openStatements = Collections.newSetFromMap(
+            new MapMaker().weakKeys().makeMap() );
 
     private final Connection      connection;
     private final Statement       statement;
@@ -46,7 +61,11 @@ public class StatementHolder implements Closeable {
     private final List<ResultSet> otherResultSets;
     private final Stopwatch       sw   = Stopwatch.createStarted();
     private final long            longRunningQueryLimit;
-    private       boolean         open = true;
+    private final String          queryName;
+    private final String          sql;
+    private final long            openedAt = System.currentTimeMillis();
+    private volatile long         rows     = 0;
+    private volatile boolean      open     = true;
 
     public StatementHolder( Connection connection, Statement statement, ResultSet resultSet ) {
         this( connection,
@@ -72,12 +91,45 @@ public class StatementHolder implements Closeable {
             List<Statement> otherStatements,
             List<ResultSet> otherResultSets,
             long longRunningQueryLimit ) {
+        this( connection,
+                statement,
+                resultSet,
+                otherStatements,
+                otherResultSets,
+                longRunningQueryLimit,
+                UNNAMED_QUERY,
+                null );
+    }
+
+    /**
+     * @param queryName The name metrics for this query are reported under.
+     * @param sql The sql of the query, or null to describe the query using the statement.
+     */
+    public StatementHolder(
+            Connection connection,
+            Statement statement,
+            ResultSet resultSet,
+            List<Statement> otherStatements,
+            List<ResultSet> otherResultSets,
+            long longRunningQueryLimit,
+            String queryName,
+            String sql ) {
         this.connection = connection;
         this.statement = statement;
         this.resultSet = resultSet;
         this.otherStatements = otherStatements;
         this.otherResultSets = otherResultSets;
         this.longRunningQueryLimit = longRunningQueryLimit;
+        this.queryName = queryName;
+        this.sql = sql;
+        openStatements.add( this );
+    }
+
+    /**
+     * @return The statement holders that have not been closed yet.
+     */
+    public static Collection<StatementHolder> getOpenStatements() {
+        return ImmutableList.copyOf( openStatements );
     }
 
     public Connection getConnection() {
@@ -92,6 +144,30 @@ public class StatementHolder implements Closeable {
         return resultSet;
     }
 
+    public String getQueryName() {
+        return queryName;
+    }
+
+    public String getSql() {
+        return sql == null ? statement.toString() : sql;
+    }
+
+    public long getAgeMillis() {
+        return System.currentTimeMillis() - openedAt;
+    }
+
+    public long getRows() {
+        return rows;
+    }
+
+    /**
+     * Counts a row read from the result set. Only called by the single thread reading the result set at a time, so
+     * the count is volatile for readers on other threads but doesn't need to be updated atomically.
+     */
+    public void rowRead() {
+        rows = rows + 1;
+    }
+
     @Override
     public synchronized void close() {
         if ( open ) {
@@ -110,6 +186,10 @@ public class StatementHolder implements Closeable {
             safeTryClose( statement );
             safeTryClose( connection );
             open = false;
+            openStatements.remove( this );
+
+            QueryMetrics.rows( queryName ).update( rows );
+            QueryMetrics.openTime( queryName ).update( elapsed, TimeUnit.MILLISECONDS );
         }
     }
 
@@ -0,0 +1,176 @@
+/*
+ * Copyright (C) 2021. OpenLattice, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * You can contact the owner of the copyright at support@openlattice.com
+ *
+ *
+ */
+
+package com.openlattice.postgres.streams
+
+import com.google.common.collect.MapMaker
+import com.google.common.util.concurrent.ThreadFactoryBuilder
+import com.zaxxer.hikari.HikariDataSource
+import org.slf4j.LoggerFactory
+import java.util.concurrent.CompletableFuture
+import java.util.concurrent.ConcurrentMap
+import java.util.concurrent.ExecutorService
+import java.util.concurrent.Executors
+import java.util.concurrent.LinkedBlockingQueue
+import java.util.concurrent.Semaphore
+import java.util.concurrent.ThreadPoolExecutor
+import java.util.concurrent.TimeUnit
+import java.util.function.Consumer
+
+/**
+ * Consumes streaming queries against a single data source off the calling thread, so that request handlers streaming
+ * slow responses don't hold on to a server thread for the life of a cursor.
+ *
+ * On JDKs with virtual threads every query is consumed on its own virtual thread and the number of concurrently open
+ * cursors is bounded by a fair semaphore of [maxConcurrentCursors] permits. Queries waiting for a permit only park a
+ * virtual thread. On older JDKs queries are consumed on a fixed pool of [maxConcurrentCursors] platform threads
+ * instead, which bounds open cursors in the same way.
+ *
+ * Use [forDataSource] to share one executor, and therefore one bound, per data source. Shared executors are released
+ * once their data source has been closed or is no longer referenced, and platform threads exit once they have been
+ * idle for a minute, so executors of pools that are gone don't pin any threads.
+ *
+ * @author Matthew Tamayo-Rios &lt;matthew@openlattice.com&gt;
+ */
+class StreamingQueryExecutor @JvmOverloads constructor(
+        hds: HikariDataSource,
+        val maxConcurrentCursors: Int = maxOf(1, hds.maximumPoolSize / 2)
+) {
+    companion object {
+        private val logger = LoggerFactory.getLogger(StreamingQueryExecutor::class.java)
+        private const val IDLE_THREAD_TIMEOUT_SECONDS = 60L
+
+        private val executors: ConcurrentMap<HikariDataSource, StreamingQueryExecutor> = MapMaker()
+                .weakKeys()
+                .makeMap()
+
+        /**
+         * Whether this JDK supports virtual threads. Checked reflectively, since this library targets older JDKs. On
+         * JDK 19 and 20 virtual threads are a preview API that only fails once called, so an executor is created to
+         * check that they can actually be used.
+         */
+        @JvmStatic
+        val virtualThreadsSupported: Boolean = newVirtualThreadExecutor()?.let {
+            it.shutdown()
+            true
+        } ?: false
+
+        private fun newVirtualThreadExecutor(): ExecutorService? {
+            return try {
+                Executors::class.java.getMethod("newVirtualThreadPerTaskExecutor").invoke(null) as ExecutorService
+            } catch (e: ReflectiveOperationException) {
+                null
+            } catch (e: UnsupportedOperationException) {
+                null
+            }
+        }
+
+        /**
+         * Returns the executor shared by all streaming queries against [hds].
+         */
+        @JvmStatic
+        fun forDataSource(hds: HikariDataSource): StreamingQueryExecutor {
+            executors.entries.removeIf { (pool, executor) ->
+                if (pool.isClosed) {
+                    executor.shutdown()
+                }
+                pool.isClosed
+            }
+            return executors.computeIfAbsent(hds) { StreamingQueryExecutor(it) }
+        }
+    }
+
+    private val permits = Semaphore(maxConcurrentCursors, true)
+    private val executor: ExecutorService
+
+    init {
+        check(maxConcurrentCursors > 0) { "Max concurrent cursors must be positive." }
+        check(maxConcurrentCursors <= hds.maximumPoolSize) {
+            "Max concurrent cursors cannot exceed the size of the connection pool."
+        }
+
+        val virtualThreads = if (virtualThreadsSupported) newVirtualThreadExecutor() else null
+        executor = if (virtualThreads != null) {
+            virtualThreads
+        } else {
+            val pool = ThreadPoolExecutor(
+                    maxConcurrentCursors,
+                    maxConcurrentCursors,
+                    IDLE_THREAD_TIMEOUT_SECONDS,
+                    TimeUnit.SECONDS,
+                    LinkedBlockingQueue(),
+                    ThreadFactoryBuilder().setDaemon(true).setNameFormat("streaming-query-%d").build()
+            )
+            pool.allowCoreThreadTimeOut(true)
+            pool
+        }
+        logger.info(
+                "Streaming queries for pool {} use {} with at most {} open cursors.",
+                hds.poolName,
+                if (virtualThreads != null) "virtual threads" else "platform threads",
+                maxConcurrentCursors
+        )
+    }
+
+    /**
+     * Opens the cursor of [iterable] once a permit is available and passes every row to [consumer]. The cursor is
+     * closed and the permit released once the iterable is exhausted or the consumer throws.
+     *
+     * @return A future that completes with the number of rows consumed.
+     */
+    fun <T> consume(iterable: Iterable<T>, consumer: Consumer<in T>): CompletableFuture<Long> {
+        return CompletableFuture.supplyAsync({
+            permits.acquire()
+            try {
+                val iterator = iterable.iterator()
+                try {
+                    var rows = 0L
+                    while (iterator.hasNext()) {
+                        consumer.accept(iterator.next())
+                        rows++
+                    }
+                    rows
+                } finally {
+                    (iterator as? AutoCloseable)?.close()
+                }
+            } finally {
+                permits.release()
+            }
+        }, executor)
+    }
+
+    /**
+     * The number of cursors that can currently be opened without waiting.
+     */
+    fun getAvailableCursors(): Int = permits.availablePermits()
+
+    /**
+     * The approximate number of queries waiting for a cursor.
+     */
+    fun getQueuedQueries(): Int = permits.queueLength
+
+    /**
+     * Stops accepting queries. Queries that have already been submitted are still consumed.
+     */
+    fun shutdown() {
+        executor.shutdown()
+    }
+}
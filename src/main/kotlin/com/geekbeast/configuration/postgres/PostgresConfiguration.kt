@@ -22,14 +22,24 @@
 package com.geekbeast.configuration.postgres
 
 import com.fasterxml.jackson.annotation.JsonProperty
+import com.openlattice.postgres.PostgresTableManager
 import java.util.*
 
 private const val HIKARI_CONFIGURATION_PROPERTY = "hikari"
 private const val USING_CITUS_PROPERTY = "citus"
 private const val INITIALIZE_INDICES_PROPERTY = "initialize-indices"
 private const val INITIALIZE_TABLES = "initialize-tables"
+private const val DDL_PARALLELISM = "ddl-parallelism"
+private const val READ_REPLICA_PROPERTY = "read-replica"
+private const val WORKLOADS_PROPERTY = "workloads"
 
 /**
+ * Configuration of a postgres data source.
+ *
+ * [workloads] declares a separate connection pool for each workload class, keyed by the
+ * [com.openlattice.jdbc.Workload.key] of the workload. Workloads that are not configured use the main pool.
+ * [readReplicaConfiguration] contains the hikari properties, such as the jdbc url, that are overridden for workloads
+ * routed to a read replica.
  *
  * @author Matthew Tamayo-Rios &lt;matthew@openlattice.com&gt;
  */
@@ -37,5 +47,8 @@ data class PostgresConfiguration(
         @JsonProperty(HIKARI_CONFIGURATION_PROPERTY) val hikariConfiguration: Properties,
         @JsonProperty(USING_CITUS_PROPERTY) val usingCitus: Boolean = false,
         @JsonProperty(INITIALIZE_INDICES_PROPERTY) val initializeIndices: Boolean = true,
-        @JsonProperty(INITIALIZE_TABLES) val initializeTables: Boolean = true
+        @JsonProperty(INITIALIZE_TABLES) val initializeTables: Boolean = true,
+        @JsonProperty(DDL_PARALLELISM) val ddlParallelism: Int = PostgresTableManager.DEFAULT_DDL_PARALLELISM,
+        @JsonProperty(READ_REPLICA_PROPERTY) val readReplicaConfiguration: Properties? = null,
+        @JsonProperty(WORKLOADS_PROPERTY) val workloads: Map<String, WorkloadConfiguration> = mapOf()
 )
\ No newline at end of file
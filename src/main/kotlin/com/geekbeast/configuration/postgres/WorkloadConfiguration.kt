@@ -0,0 +1,50 @@
+/*
+ * Copyright (C) 2021. OpenLattice, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * You can contact the owner of the copyright at support@openlattice.com
+ *
+ *
+ */
+
+package com.geekbeast.configuration.postgres
+
+import com.fasterxml.jackson.annotation.JsonProperty
+import java.util.*
+
+private const val MAXIMUM_POOL_SIZE_PROPERTY = "maximum-pool-size"
+private const val CONNECTION_TIMEOUT_MILLIS_PROPERTY = "connection-timeout-millis"
+private const val USE_READ_REPLICA_PROPERTY = "use-read-replica"
+private const val HIKARI_CONFIGURATION_PROPERTY = "hikari"
+
+const val DEFAULT_WORKLOAD_CONNECTION_TIMEOUT_MILLIS = 30_000L
+
+/**
+ * Connection pool of a single workload class.
+ *
+ * Requests for a connection wait in the queue of the pool for at most [connectionTimeoutMillis] before failing, so
+ * interactive workloads should use short timeouts and fail fast, while batch workloads can afford to wait. Workloads
+ * that [useReadReplica] must only be used for reads. Any other [hikariConfiguration] properties override those of the
+ * data source.
+ *
+ * @author Matthew Tamayo-Rios &lt;matthew@openlattice.com&gt;
+ */
+data class WorkloadConfiguration(
+        @JsonProperty(MAXIMUM_POOL_SIZE_PROPERTY) val maximumPoolSize: Int,
+        @JsonProperty(CONNECTION_TIMEOUT_MILLIS_PROPERTY)
+        val connectionTimeoutMillis: Long = DEFAULT_WORKLOAD_CONNECTION_TIMEOUT_MILLIS,
+        @JsonProperty(USE_READ_REPLICA_PROPERTY) val useReadReplica: Boolean = false,
+        @JsonProperty(HIKARI_CONFIGURATION_PROPERTY) val hikariConfiguration: Properties = Properties()
+)
@@ -28,6 +28,7 @@ import com.openlattice.postgres.PostgresColumnDefinition
 import com.openlattice.postgres.PostgresDatatype
 import com.openlattice.postgres.PostgresTableDefinition
 import com.openlattice.postgres.mapstores.AbstractBasePostgresMapstore
+import com.openlattice.postgres.mapstores.KeyColumnValues
 import com.zaxxer.hikari.HikariDataSource
 import org.apache.commons.lang3.RandomUtils
 import org.springframework.stereotype.Component
@@ -44,7 +45,8 @@ import java.util.*
 class PostgresJobsMapStore @JvmOverloads constructor(
         hds: HikariDataSource,
         private val mapper: ObjectMapper = ObjectMappers.getJsonMapper()
-) : AbstractBasePostgresMapstore<UUID, DistributableJob<*>>(JOBS_MAP, JOBS, hds, BATCH_SIZE) {
+) : AbstractBasePostgresMapstore<UUID, DistributableJob<*>>(JOBS_MAP, JOBS, hds, BATCH_SIZE),
+        KeyColumnValues<UUID> {
     companion object{
         @JvmField
         val JOBS: PostgresTableDefinition = PostgresTableDefinition("jobs").addColumns(ID_COLUMN, JOB_COLUMN)
@@ -72,6 +74,10 @@ class PostgresJobsMapStore @JvmOverloads constructor(
         ps.setObject(offset, key)
         return offset+1
     }
+
+    override fun isArrayLoadAllEnabled(): Boolean = true
+
+    override fun keyValues(key: UUID): Array<Any> = arrayOf(key)
 }
 
 const val ID_FIELD = "id"
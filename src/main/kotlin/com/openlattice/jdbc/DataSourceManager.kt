@@ -3,14 +3,27 @@ package com.openlattice.jdbc
 import com.codahale.metrics.MetricRegistry
 import com.codahale.metrics.health.HealthCheckRegistry
 import com.geekbeast.configuration.postgres.PostgresConfiguration
+import com.geekbeast.configuration.postgres.WorkloadConfiguration
 import com.openlattice.postgres.PostgresTableDefinition
 import com.openlattice.postgres.PostgresTableManager
 import com.zaxxer.hikari.HikariConfig
 import com.zaxxer.hikari.HikariDataSource
 import org.slf4j.LoggerFactory
 import org.springframework.stereotype.Component
+import java.util.*
 
 /**
+ * Creates and holds the connection pools of each configured data source.
+ *
+ * Besides its main pool, a data source has a separate pool for each workload declared in its configuration, so that
+ * streaming scans and batch jobs queue for their own connections instead of competing with interactive traffic. Each
+ * workload pool is named `<data source>-<workload>`, which is also the prefix of its hikari pool metrics, such as
+ * active, idle and pending connections and connection wait times. Workloads that are configured to use a read replica
+ * connect to it with read-only connections.
+ *
+ * Workload pools are opened in addition to the main pool, not carved out of it, so a data source can hold up to the sum
+ * of the maximum sizes of all of its pools. That sum is logged on startup and has to fit within the connection limit of
+ * the database server, together with the pools of every other instance of the service.
  *
  * @author Matthew Tamayo-Rios &lt;matthew@openlattice.com&gt;
  */
@@ -23,6 +36,60 @@ class DataSourceManager(
     companion object {
         private val logger = LoggerFactory.getLogger(DataSourceManager::class.java)
         const val DEFAULT_DATASOURCE = "default"
+
+        /**
+         * Default size of the per connection prepared statement cache maintained by the postgres driver. Mapstore
+         * hot paths prepare the same handful of statements on every call, so the cache needs to be large enough
+         * that they are never evicted by ad hoc queries.
+         */
+        private val STATEMENT_CACHE_DEFAULTS = mapOf(
+                "prepareThreshold" to "1",
+                "preparedStatementCacheQueries" to "1024",
+                "preparedStatementCacheSizeMiB" to "32"
+        )
+
+        /**
+         * Applies prepared statement cache defaults to a hikari configuration, unless they have been explicitly
+         * configured. Hikari closes all statements when a connection is returned to the pool, so statement reuse has
+         * to happen in the driver, which keys its cache by connection and sql.
+         */
+        @JvmStatic
+        fun applyStatementCacheDefaults(hc: HikariConfig) {
+            STATEMENT_CACHE_DEFAULTS.forEach { (property, value) ->
+                if (!hc.dataSourceProperties.containsKey(property)) {
+                    hc.addDataSourceProperty(property, value)
+                }
+            }
+        }
+
+        /**
+         * Builds the hikari configuration of a workload pool. It starts from the properties of the main pool, overlays
+         * the read replica properties if the workload uses the read replica, and then the properties of the workload.
+         */
+        @JvmStatic
+        fun workloadHikariConfig(
+                poolName: String,
+                postgresConfiguration: PostgresConfiguration,
+                workloadConfiguration: WorkloadConfiguration
+        ): HikariConfig {
+            val properties = Properties()
+            properties.putAll(postgresConfiguration.hikariConfiguration)
+            if (workloadConfiguration.useReadReplica) {
+                val readReplicaConfiguration = checkNotNull(postgresConfiguration.readReplicaConfiguration) {
+                    "Workload pool $poolName uses a read replica, but no read replica has been configured."
+                }
+                properties.putAll(readReplicaConfiguration)
+            }
+            properties.putAll(workloadConfiguration.hikariConfiguration)
+
+            val hc = HikariConfig(properties)
+            hc.poolName = poolName
+            hc.maximumPoolSize = workloadConfiguration.maximumPoolSize
+            hc.connectionTimeout = workloadConfiguration.connectionTimeoutMillis
+            hc.isReadOnly = hc.isReadOnly || workloadConfiguration.useReadReplica
+            applyStatementCacheDefaults(hc)
+            return hc
+        }
     }
 
     private val dataSources = dataSourceConfigurations.mapValues { (dataSourceName, postgresConfiguration) ->
@@ -31,22 +98,97 @@ class DataSourceManager(
 
         hc.healthCheckRegistry = healthCheckRegistry
         hc.metricRegistry = metricRegistry
+        applyStatementCacheDefaults(hc)
 
         logger.info("JDBC URL = {}", hc.jdbcUrl)
 
         return@mapValues HikariDataSource(hc)
     }
+    private val workloadDataSources = dataSourceConfigurations.mapValues { (dataSourceName, postgresConfiguration) ->
+        postgresConfiguration.workloads.entries.associate { (key, workloadConfiguration) ->
+            val workload = Workload.fromKey(key)
+            workload to createWorkloadDataSource(
+                    "$dataSourceName-${workload.key}",
+                    postgresConfiguration,
+                    workloadConfiguration,
+                    healthCheckRegistry,
+                    metricRegistry
+            )
+        }
+    }
     private val tableManagers = dataSources.mapValues { (dataSourceName, dataSource) ->
         val dataSourceConfiguration = dataSourceConfigurations.getValue(dataSourceName)
         PostgresTableManager(
                 dataSource, dataSourceConfiguration.usingCitus, dataSourceConfiguration.initializeIndices,
-                dataSourceConfiguration.initializeTables
+                dataSourceConfiguration.initializeTables, dataSourceConfiguration.ddlParallelism
         )
     }
 
+    init {
+        dataSources.keys.forEach { dataSourceName ->
+            logger.info(
+                    "Data source {} opens up to {} connections, of which {} are in workload pools.",
+                    dataSourceName,
+                    getMaximumConnections(dataSourceName),
+                    workloadDataSources.getValue(dataSourceName).values.sumBy { it.maximumPoolSize }
+            )
+        }
+    }
+
     fun getDefaultDataSource() = dataSources.getValue(DEFAULT_DATASOURCE)
     fun getDataSource(name: String) = dataSources.getValue(name)
 
+    /**
+     * Returns the pool of the default data source for [workload].
+     */
+    fun getDefaultDataSource(workload: Workload) = getDataSource(DEFAULT_DATASOURCE, workload)
+
+    /**
+     * Returns the pool of a data source for [workload], which is the main pool of the data source if no pool has
+     * been configured for the workload.
+     */
+    fun getDataSource(name: String, workload: Workload): HikariDataSource {
+        return workloadDataSources[name]?.get(workload) ?: dataSources.getValue(name)
+    }
+
+    /**
+     * Returns the number of connections that the pools of a data source can hold at most, which is the sum of the
+     * maximum sizes of its main pool and all of its workload pools.
+     */
+    fun getMaximumConnections(name: String): Int {
+        return dataSources.getValue(name).maximumPoolSize +
+                workloadDataSources.getValue(name).values.sumBy { it.maximumPoolSize }
+    }
+
+    /**
+     * Stops partition maintenance and closes the workload pools and main pool of every data source.
+     */
+    fun shutdown() {
+        tableManagers.values.forEach { it.shutdown() }
+        workloadDataSources.values.forEach { pools -> pools.values.forEach { it.close() } }
+        dataSources.values.forEach { it.close() }
+    }
+
+    private fun createWorkloadDataSource(
+            poolName: String,
+            postgresConfiguration: PostgresConfiguration,
+            workloadConfiguration: WorkloadConfiguration,
+            healthCheckRegistry: HealthCheckRegistry,
+            metricRegistry: MetricRegistry
+    ): HikariDataSource {
+        val hc = workloadHikariConfig(poolName, postgresConfiguration, workloadConfiguration)
+        hc.healthCheckRegistry = healthCheckRegistry
+        hc.metricRegistry = metricRegistry
+
+        logger.info(
+                "Workload pool {} has {} connections to {}.",
+                poolName,
+                workloadConfiguration.maximumPoolSize,
+                hc.jdbcUrl
+        )
+        return HikariDataSource(hc)
+    }
+
     fun registerTables(name: String, vararg tableDefinitions: PostgresTableDefinition) {
         val tm = tableManagers.getValue(name)
         tm.registerTables(*tableDefinitions)
@@ -0,0 +1,55 @@
+/*
+ * Copyright (C) 2021. OpenLattice, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * You can contact the owner of the copyright at support@openlattice.com
+ *
+ *
+ */
+
+
+package com.openlattice.jdbc
+
+/**
+ * Classes of database work that are given separate connection pools, so that long running work can't starve request
+ * traffic of connections.
+ *
+ * @author Matthew Tamayo-Rios &lt;matthew@openlattice.com&gt;
+ */
+enum class Workload(val key: String) {
+    /**
+     * Short queries on the request path, such as mapstore loads and stores.
+     */
+    INTERACTIVE("interactive"),
+
+    /**
+     * Long running read-only scans, such as exports read through a postgres iterable.
+     */
+    STREAMING("streaming"),
+
+    /**
+     * Background jobs that read or write large amounts of data.
+     */
+    BATCH("batch");
+
+    companion object {
+        @JvmStatic
+        fun fromKey(key: String): Workload {
+            return values().firstOrNull { it.key == key } ?: throw IllegalArgumentException(
+                    "Unknown workload $key. Must be one of ${values().map { it.key }}"
+            )
+        }
+    }
+}
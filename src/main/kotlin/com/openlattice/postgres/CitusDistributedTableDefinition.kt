@@ -30,7 +30,8 @@ import java.util.*
 class CitusDistributedTableDefinition(
         name: String
 ) : PostgresTableDefinition(name) {
-    private lateinit var distributionColumn: PostgresColumnDefinition
+    lateinit var distributionColumn: PostgresColumnDefinition
+        private set
     private var colocationColumn: Optional<PostgresTableDefinition> = Optional.empty()
     private var unlogged = false
 
@@ -53,6 +54,11 @@ class CitusDistributedTableDefinition(
         }
     }
 
+    override fun writeBehind(writeDelaySeconds: Int, writeBatchSize: Int): CitusDistributedTableDefinition {
+        super.writeBehind(writeDelaySeconds, writeBatchSize)
+        return this
+    }
+
     override fun unlogged(): CitusDistributedTableDefinition {
         super.unlogged()
         return this
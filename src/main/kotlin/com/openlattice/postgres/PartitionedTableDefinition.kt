@@ -0,0 +1,357 @@
+/*
+ * Copyright (C) 2021. OpenLattice, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * You can contact the owner of the copyright at support@openlattice.com
+ *
+ *
+ */
+
+package com.openlattice.postgres
+
+import java.time.DayOfWeek
+import java.time.LocalDate
+import java.time.OffsetDateTime
+import java.time.Year
+import java.time.YearMonth
+import java.time.ZoneOffset
+import java.time.format.DateTimeFormatter
+import java.time.format.DateTimeParseException
+import java.time.temporal.ChronoUnit
+import java.time.temporal.TemporalAdjusters
+
+enum class PartitionStrategy {
+    RANGE,
+    LIST,
+    HASH
+}
+
+/**
+ * Length of the child partitions of a time partitioned table. Partitions start at midnight UTC, weeks start on Monday.
+ */
+enum class PartitionInterval(private val unit: ChronoUnit, suffixPattern: String) {
+    DAY(ChronoUnit.DAYS, "uuuuMMdd"),
+    WEEK(ChronoUnit.WEEKS, "uuuuMMdd"),
+    MONTH(ChronoUnit.MONTHS, "uuuuMM"),
+    YEAR(ChronoUnit.YEARS, "uuuu");
+
+    private val suffixFormat = DateTimeFormatter.ofPattern(suffixPattern)
+
+    /**
+     * Returns the first day of the partition containing [date].
+     */
+    fun start(date: LocalDate): LocalDate {
+        return when (this) {
+            DAY -> date
+            WEEK -> date.with(TemporalAdjusters.previousOrSame(DayOfWeek.MONDAY))
+            MONTH -> date.withDayOfMonth(1)
+            YEAR -> date.withDayOfYear(1)
+        }
+    }
+
+    fun plus(start: LocalDate, intervals: Long): LocalDate {
+        return start.plus(intervals, unit)
+    }
+
+    fun suffix(start: LocalDate): String {
+        return suffixFormat.format(start)
+    }
+
+    /**
+     * Returns the first day of the partition with the given suffix or null if it isn't a suffix of this interval.
+     */
+    fun parse(suffix: String): LocalDate? {
+        return try {
+            when (this) {
+                DAY, WEEK -> LocalDate.parse(suffix, suffixFormat)
+                MONTH -> YearMonth.parse(suffix, suffixFormat).atDay(1)
+                YEAR -> Year.parse(suffix, suffixFormat).atDay(1)
+            }
+        } catch (e: DateTimeParseException) {
+            null
+        }
+    }
+}
+
+/**
+ * Used to define a table using postgres declarative partitioning.
+ *
+ * Child partitions are named after the parent table and created by [createPartitionQueries]. Tables partitioned by
+ * time using [timePartitions] get a partition per interval, created [premake] intervals ahead of time, and partitions
+ * that fall out of the retention window are returned by [getExpiredPartitions] so they can be dropped instead of
+ * deleting rows in bulk. [PostgresTableManager] maintains the partitions of registered tables.
+ *
+ * Queries built with [partitionSelectQuery] and [partitionDeleteQuery] always constrain the partition column, so that
+ * postgres only has to visit the matching partitions.
+ *
+ * @author Matthew Tamayo-Rios &lt;matthew@openlattice.com&gt;
+ */
+class PartitionedTableDefinition(
+        name: String
+) : PostgresTableDefinition(name) {
+    companion object {
+        const val DEFAULT_PREMAKE = 2
+        const val DEFAULT_PARTITION_SUFFIX = "default"
+    }
+
+    lateinit var strategy: PartitionStrategy
+        private set
+    lateinit var partitionColumn: PostgresColumnDefinition
+        private set
+
+    var interval: PartitionInterval? = null
+        private set
+    var premake = DEFAULT_PREMAKE
+        private set
+    var retention: Int? = null
+        private set
+
+    private var hashModulus = 0
+    private var defaultPartition = false
+    private val listPartitions = linkedMapOf<String, List<Any>>()
+    private val rangePartitions = linkedMapOf<String, Pair<Any, Any>>()
+
+    fun partitionBy(strategy: PartitionStrategy, column: PostgresColumnDefinition): PartitionedTableDefinition {
+        this.strategy = strategy
+        this.partitionColumn = column
+        return this
+    }
+
+    /**
+     * Partitions a range partitioned table by time.
+     *
+     * @param interval The length of each partition.
+     * @param premake The number of partitions after the current one that are created ahead of time.
+     * @param retention The number of partitions before the current one that are kept, or null to keep all of them.
+     */
+    @JvmOverloads
+    fun timePartitions(
+            interval: PartitionInterval,
+            premake: Int = DEFAULT_PREMAKE,
+            retention: Int? = null
+    ): PartitionedTableDefinition {
+        require(premake >= 0) { "Number of partitions to create ahead of time must be nonnegative." }
+        require(retention == null || retention >= 0) { "Number of partitions to retain must be nonnegative." }
+        this.interval = interval
+        this.premake = premake
+        this.retention = retention
+        return this
+    }
+
+    /**
+     * Adds a partition for values in the range [from, to) of a range partitioned table.
+     */
+    fun rangePartition(suffix: String, from: Any, to: Any): PartitionedTableDefinition {
+        rangePartitions[suffix] = from to to
+        return this
+    }
+
+    /**
+     * Adds a partition for the given values of a list partitioned table.
+     */
+    fun listPartition(suffix: String, vararg values: Any): PartitionedTableDefinition {
+        require(values.isNotEmpty()) { "List partitions must contain at least one value." }
+        listPartitions[suffix] = values.toList()
+        return this
+    }
+
+    /**
+     * Splits a hash partitioned table into [modulus] partitions.
+     */
+    fun hashPartitions(modulus: Int): PartitionedTableDefinition {
+        require(modulus > 0) { "Number of hash partitions must be positive." }
+        this.hashModulus = modulus
+        return this
+    }
+
+    /**
+     * Adds a partition for rows that don't belong to any other partition of a range or list partitioned table. Time
+     * partitioned tables can't have a default partition.
+     */
+    fun defaultPartition(): PartitionedTableDefinition {
+        this.defaultPartition = true
+        return this
+    }
+
+    fun partitionName(suffix: String): String {
+        return "${name}_$suffix"
+    }
+
+    override fun createTableQuery(): String {
+        check(this::strategy.isInitialized) { "Partitioning strategy for table $name has not been specified." }
+        check(primaryKey.isEmpty() || primaryKey.contains(partitionColumn)) {
+            "Primary key of table $name must include partition column ${partitionColumn.name}."
+        }
+        check(unique.isEmpty() || unique.contains(partitionColumn)) {
+            "Unique constraint of table $name must include partition column ${partitionColumn.name}."
+        }
+        check(interval == null || !defaultPartition) {
+            "Time partitioned table $name can't have a default partition, since postgres can't create a partition " +
+                    "for a time range once the default partition holds rows in that range."
+        }
+        return "${super.createTableQuery()} PARTITION BY $strategy (${partitionColumn.name})"
+    }
+
+    /**
+     * Returns the queries that create the child partitions that should exist at time [now]. The queries are safe to
+     * run again, so they are run every time partitions are maintained.
+     */
+    @JvmOverloads
+    fun createPartitionQueries(now: OffsetDateTime = OffsetDateTime.now(ZoneOffset.UTC)): List<String> {
+        val bounds = linkedMapOf<String, String>()
+        when (strategy) {
+            PartitionStrategy.RANGE -> {
+                interval?.let { interval ->
+                    val current = interval.start(now.withOffsetSameInstant(ZoneOffset.UTC).toLocalDate())
+                    (0..premake.toLong()).forEach { i ->
+                        val start = interval.plus(current, i)
+                        bounds[interval.suffix(start)] = rangeBound(timeLiteral(start),
+                                timeLiteral(interval.plus(start, 1)))
+                    }
+                }
+                rangePartitions.forEach { (suffix, range) ->
+                    bounds[suffix] = rangeBound(literal(range.first), literal(range.second))
+                }
+            }
+            PartitionStrategy.LIST -> listPartitions.forEach { (suffix, values) ->
+                bounds[suffix] = "FOR VALUES IN (${values.joinToString(", ") { literal(it) }})"
+            }
+            PartitionStrategy.HASH -> (0 until hashModulus).forEach { remainder ->
+                bounds["p$remainder"] = "FOR VALUES WITH (MODULUS $hashModulus, REMAINDER $remainder)"
+            }
+        }
+
+        if (defaultPartition && strategy != PartitionStrategy.HASH) {
+            bounds[DEFAULT_PARTITION_SUFFIX] = "DEFAULT"
+        }
+
+        return bounds.map { (suffix, bound) ->
+            "CREATE TABLE IF NOT EXISTS ${partitionName(suffix)} PARTITION OF $name $bound"
+        }
+    }
+
+    /**
+     * Returns the time partitions among [partitions] that end before the retention window at time [now].
+     */
+    @JvmOverloads
+    fun getExpiredPartitions(
+            partitions: Collection<String>,
+            now: OffsetDateTime = OffsetDateTime.now(ZoneOffset.UTC)
+    ): List<String> {
+        val interval = interval ?: return listOf()
+        val retention = retention ?: return listOf()
+        val cutoff = interval.plus(
+                interval.start(now.withOffsetSameInstant(ZoneOffset.UTC).toLocalDate()),
+                -retention.toLong()
+        )
+        val prefix = partitionName("").toLowerCase()
+
+        return partitions.filter { partition ->
+            val start = if (partition.toLowerCase().startsWith(prefix)) {
+                interval.parse(partition.substring(prefix.length))
+            } else {
+                null
+            }
+            start != null && start.isBefore(cutoff)
+        }
+    }
+
+    fun dropPartitionQuery(partition: String): String {
+        return "DROP TABLE IF EXISTS $partition"
+    }
+
+    /**
+     * Builds a select query that constrains the partition column, so postgres can skip the other partitions. Unless
+     * [whereToSelect] already contains the partition column, range partitioned tables bind the start (inclusive) and
+     * end (exclusive) of the range to select after the other parameters, while list and hash partitioned tables bind
+     * the value of the partition column.
+     */
+    fun partitionSelectQuery(
+            columnsToSelect: List<PostgresColumnDefinition>,
+            whereToSelect: List<PostgresColumnDefinition>
+    ): String {
+        return when {
+            whereToSelect.contains(partitionColumn) -> selectQuery(columnsToSelect, whereToSelect)
+            strategy != PartitionStrategy.RANGE -> selectQuery(columnsToSelect, whereToSelect + partitionColumn)
+            whereToSelect.isEmpty() -> "${selectQuery(columnsToSelect)} WHERE ${rangePredicate()}"
+            else -> "${selectQuery(columnsToSelect, whereToSelect)} AND ${rangePredicate()}"
+        }
+    }
+
+    /**
+     * Builds a delete query that constrains the partition column in the same way as [partitionSelectQuery]. To remove
+     * whole time partitions, drop them instead.
+     */
+    fun partitionDeleteQuery(whereToDelete: List<PostgresColumnDefinition>): String {
+        return when {
+            whereToDelete.contains(partitionColumn) -> deleteQuery(whereToDelete)
+            strategy != PartitionStrategy.RANGE -> deleteQuery(whereToDelete + partitionColumn)
+            whereToDelete.isEmpty() -> "DELETE FROM $name WHERE ${rangePredicate()}"
+            else -> "${deleteQuery(whereToDelete)} AND ${rangePredicate()}"
+        }
+    }
+
+    private fun rangePredicate(): String {
+        return "${partitionColumn.name} >= ? AND ${partitionColumn.name} < ?"
+    }
+
+    private fun rangeBound(from: String, to: String): String {
+        return "FOR VALUES FROM ($from) TO ($to)"
+    }
+
+    private fun timeLiteral(date: LocalDate): String {
+        return "'$date 00:00:00+00'"
+    }
+
+    private fun literal(value: Any): String {
+        return when (value) {
+            is Number, is Boolean -> value.toString()
+            else -> "'${value.toString().replace("'", "''")}'"
+        }
+    }
+
+    override fun unlogged(): PartitionedTableDefinition {
+        throw UnsupportedOperationException("Partitioned table $name cannot be unlogged.")
+    }
+
+    override fun writeBehind(writeDelaySeconds: Int, writeBatchSize: Int): PartitionedTableDefinition {
+        super.writeBehind(writeDelaySeconds, writeBatchSize)
+        return this
+    }
+
+    override fun addColumns(vararg columnsToAdd: PostgresColumnDefinition): PartitionedTableDefinition {
+        super.addColumns(*columnsToAdd)
+        return this
+    }
+
+    /**
+     * Postgres can't build indexes on partitioned tables concurrently, so the indexes are built non-concurrently.
+     */
+    override fun addIndexes(vararg indexes: PostgresIndexDefinition): PartitionedTableDefinition {
+        indexes.forEach { it.notConcurrent() }
+        super.addIndexes(*indexes)
+        return this
+    }
+
+    override fun primaryKey(vararg primaryKeyColumns: PostgresColumnDefinition): PartitionedTableDefinition {
+        super.primaryKey(*primaryKeyColumns)
+        return this
+    }
+
+    override fun setUnique(vararg uniqueColumns: PostgresColumnDefinition): PartitionedTableDefinition {
+        super.setUnique(*uniqueColumns)
+        return this
+    }
+}
@@ -0,0 +1,131 @@
+/*
+ * Copyright (C) 2021. OpenLattice, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * You can contact the owner of the copyright at support@openlattice.com
+ *
+ *
+ */
+package com.openlattice.jdbc
+
+import com.codahale.metrics.MetricRegistry
+import com.codahale.metrics.health.HealthCheckRegistry
+import com.geekbeast.configuration.postgres.PostgresConfiguration
+import com.geekbeast.configuration.postgres.WorkloadConfiguration
+import org.junit.Assert
+import org.junit.Test
+import java.util.*
+
+/**
+ * @author Matthew Tamayo-Rios &lt;matthew@openlattice.com&gt;
+ */
+class DataSourceManagerTests {
+    private fun properties(vararg entries: Pair<String, String>): Properties {
+        val properties = Properties()
+        entries.forEach { (key, value) -> properties.setProperty(key, value) }
+        return properties
+    }
+
+    private fun configuration(workloads: Map<String, WorkloadConfiguration>): PostgresConfiguration {
+        //Pools that are allowed to start without connecting and never open idle connections, so no server is needed.
+        return PostgresConfiguration(
+                hikariConfiguration = properties(
+                        "jdbcUrl" to "jdbc:postgresql://localhost:5432/primary",
+                        "maximumPoolSize" to "10",
+                        "minimumIdle" to "0",
+                        "initializationFailTimeout" to "-1"
+                ),
+                readReplicaConfiguration = properties("jdbcUrl" to "jdbc:postgresql://localhost:5432/replica"),
+                workloads = workloads
+        )
+    }
+
+    @Test
+    fun testWorkloadFromKey() {
+        Workload.values().forEach { Assert.assertEquals(it, Workload.fromKey(it.key)) }
+    }
+
+    @Test(expected = IllegalArgumentException::class)
+    fun testUnknownWorkloadKey() {
+        Workload.fromKey("reporting")
+    }
+
+    @Test
+    fun testWorkloadPoolsFallBackToMainPool() {
+        val dataSources = DataSourceManager(
+                mapOf(DataSourceManager.DEFAULT_DATASOURCE to configuration(
+                        mapOf(Workload.STREAMING.key to WorkloadConfiguration(maximumPoolSize = 2))
+                )),
+                HealthCheckRegistry(),
+                MetricRegistry()
+        )
+        try {
+            val main = dataSources.getDefaultDataSource()
+            val streaming = dataSources.getDefaultDataSource(Workload.STREAMING)
+
+            Assert.assertNotSame(main, streaming)
+            Assert.assertEquals("default-streaming", streaming.poolName)
+            Assert.assertEquals(2, streaming.maximumPoolSize)
+            Assert.assertSame(main, dataSources.getDefaultDataSource(Workload.INTERACTIVE))
+            Assert.assertSame(main, dataSources.getDefaultDataSource(Workload.BATCH))
+
+            //Workload pools are opened in addition to the main pool.
+            Assert.assertEquals(12, dataSources.getMaximumConnections(DataSourceManager.DEFAULT_DATASOURCE))
+        } finally {
+            dataSources.shutdown()
+        }
+        Assert.assertTrue(dataSources.getDefaultDataSource(Workload.STREAMING).isClosed)
+        Assert.assertTrue(dataSources.getDefaultDataSource().isClosed)
+    }
+
+    @Test
+    fun testReadReplicaOverlay() {
+        val workload = WorkloadConfiguration(
+                maximumPoolSize = 3,
+                connectionTimeoutMillis = 1_000,
+                useReadReplica = true,
+                hikariConfiguration = properties("idleTimeout" to "60000")
+        )
+        val hc = DataSourceManager.workloadHikariConfig("default-batch", configuration(mapOf()), workload)
+
+        Assert.assertEquals("jdbc:postgresql://localhost:5432/replica", hc.jdbcUrl)
+        Assert.assertEquals("default-batch", hc.poolName)
+        Assert.assertEquals(3, hc.maximumPoolSize)
+        Assert.assertEquals(1_000L, hc.connectionTimeout)
+        Assert.assertEquals(60_000L, hc.idleTimeout)
+        Assert.assertTrue(hc.isReadOnly)
+    }
+
+    @Test
+    fun testPrimaryWorkloadIsNotReadOnly() {
+        val hc = DataSourceManager.workloadHikariConfig(
+                "default-batch",
+                configuration(mapOf()),
+                WorkloadConfiguration(maximumPoolSize = 3)
+        )
+
+        Assert.assertEquals("jdbc:postgresql://localhost:5432/primary", hc.jdbcUrl)
+        Assert.assertFalse(hc.isReadOnly)
+    }
+
+    @Test(expected = IllegalStateException::class)
+    fun testReadReplicaMustBeConfigured() {
+        DataSourceManager.workloadHikariConfig(
+                "default-batch",
+                configuration(mapOf()).copy(readReplicaConfiguration = null),
+                WorkloadConfiguration(maximumPoolSize = 3, useReadReplica = true)
+        )
+    }
+}
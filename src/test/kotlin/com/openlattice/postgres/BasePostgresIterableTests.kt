@@ -20,7 +20,10 @@
  */
 package com.openlattice.postgres
 
+import com.codahale.metrics.MetricRegistry
 import com.openlattice.postgres.streams.BasePostgresIterable
+import com.openlattice.postgres.streams.CursorExpirationWheel
+import com.openlattice.postgres.streams.PostgresIterator
 import com.openlattice.postgres.streams.StatementHolder
 import org.junit.Assert
 import org.junit.Test
@@ -53,4 +56,27 @@ class BasePostgresIterableTests {
         pi.iterator()
         Assert.assertEquals(3, closeCount.get().toLong())
     }
-}
\ No newline at end of file
+
+    @Test
+    fun testSlowSingleConsumerOutlivesTimeout() {
+        val rows = 10
+        var row = 0
+        val rs = Mockito.mock(ResultSet::class.java)
+        Mockito.`when`(rs.next()).thenAnswer { ++row <= rows }
+        val rsh = StatementHolder(Mockito.mock(Connection::class.java), Mockito.mock(Statement::class.java), rs)
+        val wheel = CursorExpirationWheel(10, 8, MetricRegistry())
+
+        //Reading all rows takes several times the timeout, but each row arrives well within it.
+        val iterator = PostgresIterator(rsh, { row }, 100, wheel, true)
+        var read = 0
+        while (iterator.hasNext()) {
+            Thread.sleep(30)
+            Assert.assertTrue(rsh.isOpen)
+            iterator.next()
+            read++
+        }
+
+        Assert.assertEquals(rows, read)
+        Assert.assertFalse(rsh.isOpen)
+    }
+}
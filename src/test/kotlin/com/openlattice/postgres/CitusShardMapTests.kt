@@ -0,0 +1,97 @@
+/*
+ * Copyright (C) 2021. OpenLattice, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * You can contact the owner of the copyright at support@openlattice.com
+ *
+ *
+ */
+package com.openlattice.postgres
+
+import com.zaxxer.hikari.HikariDataSource
+import org.junit.Assert
+import org.junit.Test
+import org.mockito.Mockito
+import java.sql.Connection
+import java.sql.PreparedStatement
+import java.sql.ResultSet
+import java.util.*
+
+/**
+ * @author Matthew Tamayo-Rios &lt;matthew@openlattice.com&gt;
+ */
+class CitusShardMapTests {
+    @Test
+    fun testIntegerHashes() {
+        Assert.assertEquals(-272711505, PostgresHash.hashUint32(0))
+        Assert.assertEquals(-1905060026, PostgresHash.hashUint32(1))
+        Assert.assertEquals(PostgresHash.hashUint32(1), PostgresHash.hashInt8(1L))
+        Assert.assertEquals(PostgresHash.hashUint32(-1), PostgresHash.hashInt8(-1L))
+    }
+
+    @Test
+    fun testGroupByShard() {
+        val shards = CitusShardMap(mockShards { PostgresHash.hash(PostgresDatatype.UUID, it).asInt }, "ids",
+                PostgresDatatype.UUID)
+        val ids = (1..100).map { UUID.randomUUID() }
+        val groups = shards.group(ids) { it }
+
+        Assert.assertEquals(2, groups.size)
+        groups.forEach { group ->
+            Assert.assertEquals(1, group.map { PostgresHash.hashUuid(it) < 0 }.toSet().size)
+        }
+        Assert.assertEquals(ids.toSet(), groups.flatten().toSet())
+    }
+
+    @Test
+    fun testMismatchedWorkerHashDisablesGrouping() {
+        val shards = CitusShardMap(mockShards { 0 }, "ids", PostgresDatatype.UUID)
+        Assert.assertEquals(CitusShardMap.UNKNOWN_SHARD, shards.getShard(UUID.randomUUID()))
+        Assert.assertEquals(1, shards.group((1..10).map { UUID.randomUUID() }) { it }.size)
+        Assert.assertFalse(shards.isSupported)
+    }
+
+    /**
+     * Mocks a table with two shards, one for negative and one for nonnegative hashes, whose worker hash is computed by
+     * [workerHash].
+     */
+    private fun mockShards(workerHash: (Any) -> Int): HikariDataSource {
+        val hds = Mockito.mock(HikariDataSource::class.java)
+        val connection = Mockito.mock(Connection::class.java)
+        Mockito.`when`(hds.connection).thenReturn(connection)
+        Mockito.`when`(connection.prepareStatement(Mockito.anyString())).thenAnswer { invocation ->
+            val ps = Mockito.mock(PreparedStatement::class.java)
+            val rs = Mockito.mock(ResultSet::class.java)
+            Mockito.`when`(ps.executeQuery()).thenReturn(rs)
+
+            if ((invocation.arguments[0] as String).contains("worker_hash")) {
+                var sample: Any = 0
+                Mockito.doAnswer { sample = it.arguments[1]; null }
+                        .`when`(ps).setObject(Mockito.eq(1), Mockito.any<Any>())
+                Mockito.`when`(rs.next()).thenReturn(true)
+                Mockito.`when`(rs.getInt(1)).thenAnswer { workerHash(sample) }
+            } else {
+                val rows = listOf(listOf(100L, Int.MIN_VALUE, -1), listOf(101L, 0, Int.MAX_VALUE))
+                var row = -1
+                Mockito.`when`(rs.next()).thenAnswer { ++row < rows.size }
+                Mockito.`when`(rs.getLong(1)).thenAnswer { rows[row][0] }
+                Mockito.`when`(rs.getInt(2)).thenAnswer { rows[row][1] }
+                Mockito.`when`(rs.getInt(3)).thenAnswer { rows[row][2] }
+            }
+            ps
+        }
+        return hds
+    }
+}
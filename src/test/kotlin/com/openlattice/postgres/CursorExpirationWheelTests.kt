@@ -0,0 +1,85 @@
+/*
+ * Copyright (C) 2021. OpenLattice, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * You can contact the owner of the copyright at support@openlattice.com
+ *
+ *
+ */
+package com.openlattice.postgres
+
+import com.codahale.metrics.MetricRegistry
+import com.openlattice.postgres.streams.CursorExpirationWheel
+import com.openlattice.postgres.streams.StatementHolder
+import org.junit.Assert
+import org.junit.Test
+import org.mockito.Mockito
+import java.sql.Connection
+import java.sql.ResultSet
+import java.sql.Statement
+
+/**
+ * @author Matthew Tamayo-Rios &lt;matthew@openlattice.com&gt;
+ */
+class CursorExpirationWheelTests {
+    private fun holder() = StatementHolder(
+            Mockito.mock(Connection::class.java),
+            Mockito.mock(Statement::class.java),
+            Mockito.mock(ResultSet::class.java)
+    )
+
+    @Test
+    fun testExpiredHoldersAreClosed() {
+        CursorExpirationWheel(10, 8, MetricRegistry()).use { wheel ->
+            val expired = holder()
+            val active = holder()
+            wheel.register(expired, 50)
+            val activeExpiration = wheel.register(active, 50)
+
+            val start = System.currentTimeMillis()
+            while (expired.isOpen && System.currentTimeMillis() - start < 5000) {
+                activeExpiration.touch()
+                Thread.sleep(5)
+            }
+
+            Assert.assertFalse(expired.isOpen)
+            Assert.assertTrue(active.isOpen)
+        }
+    }
+
+    @Test
+    fun testCancelledHoldersAreNotClosed() {
+        CursorExpirationWheel(10, 8, MetricRegistry()).use { wheel ->
+            val cancelled = holder()
+            wheel.register(cancelled, 20).cancel()
+
+            Thread.sleep(200)
+
+            Assert.assertTrue(cancelled.isOpen)
+        }
+    }
+
+    @Test
+    fun testClosedWheelStopsExpiring() {
+        val wheel = CursorExpirationWheel(10, 8, MetricRegistry())
+        val registered = holder()
+        wheel.register(registered, 20)
+        wheel.close()
+
+        Thread.sleep(200)
+
+        Assert.assertTrue(registered.isOpen)
+    }
+}
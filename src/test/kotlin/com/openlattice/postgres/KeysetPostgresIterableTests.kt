@@ -0,0 +1,133 @@
+/*
+ * Copyright (C) 2021. OpenLattice, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * You can contact the owner of the copyright at support@openlattice.com
+ *
+ *
+ */
+package com.openlattice.postgres
+
+import com.openlattice.postgres.streams.KeysetCursor
+import com.openlattice.postgres.streams.KeysetPostgresIterable
+import com.zaxxer.hikari.HikariDataSource
+import org.junit.Assert
+import org.junit.Test
+import org.mockito.Mockito
+import java.math.BigDecimal
+import java.sql.Connection
+import java.sql.PreparedStatement
+import java.sql.ResultSet
+import java.sql.Timestamp
+import java.time.Instant
+import java.time.OffsetDateTime
+import java.util.*
+
+/**
+ * @author Matthew Tamayo-Rios &lt;matthew@openlattice.com&gt;
+ */
+class KeysetPostgresIterableTests {
+    private val id = PostgresColumnDefinition("id", PostgresDatatype.BIGINT).primaryKey()
+    private val table = PostgresTableDefinition("keyset_test").addColumns(id).primaryKey(id)
+
+    @Test
+    fun testPageQueries() {
+        Assert.assertEquals(
+                "SELECT * FROM keyset_test ORDER BY id LIMIT ?",
+                table.keysetPageQuery(listOf(), false, false)
+        )
+        Assert.assertEquals(
+                "SELECT * FROM keyset_test WHERE (id) > (?) AND (id) <= (?) ORDER BY id LIMIT ?",
+                table.keysetPageQuery(listOf(), true, true)
+        )
+    }
+
+    @Test
+    fun testPagesAndResume() {
+        val hds = mockTable((1L..25L).toList())
+
+        val iterator = KeysetPostgresIterable(hds, table, { it.getLong("id") }, 10).iterator()
+        Assert.assertEquals((1L..12L).toList(), (1..12).map { iterator.next() })
+        Assert.assertEquals(KeysetCursor(listOf(12L)), iterator.cursor)
+
+        val resumed = KeysetPostgresIterable(hds, table, { it.getLong("id") }, 10, iterator.cursor)
+        Assert.assertEquals((13L..25L).toList(), resumed.toList())
+    }
+
+    @Test
+    fun testResumeFromEncodedCursor() {
+        val hds = mockTable((1L..25L).toList())
+
+        val iterator = KeysetPostgresIterable(hds, table, { it.getLong("id") }, 10).iterator()
+        (1..12).forEach { iterator.next() }
+        val encoded = iterator.cursor!!.encode()
+
+        val resumed = KeysetPostgresIterable(hds, table, { it.getLong("id") }, 10, KeysetCursor.decode(encoded))
+        Assert.assertEquals((13L..25L).toList(), resumed.toList())
+    }
+
+    @Test
+    fun testCursorEncodingRoundTrip() {
+        val cursor = KeysetCursor(listOf(
+                UUID.randomUUID(),
+                "it's",
+                42,
+                BigDecimal("1.50"),
+                Timestamp.from(Instant.parse("2021-03-17T15:30:00.123456Z")),
+                OffsetDateTime.parse("2021-03-17T15:30:00Z")
+        ))
+        Assert.assertEquals(cursor, KeysetCursor.decode(cursor.encode()))
+    }
+
+    @Test(expected = IllegalArgumentException::class)
+    fun testInvalidCursorIsRejected() {
+        KeysetCursor.decode("bm90IGEgY3Vyc29y")
+    }
+
+    /**
+     * Mocks a data source whose page queries return the rows of [keys] after the bound lower bound.
+     */
+    private fun mockTable(keys: List<Long>): HikariDataSource {
+        val hds = Mockito.mock(HikariDataSource::class.java)
+        Mockito.`when`(hds.connection).thenAnswer {
+            val connection = Mockito.mock(Connection::class.java)
+            Mockito.`when`(connection.prepareStatement(Mockito.anyString())).thenAnswer { invocation ->
+                mockPage(keys, (invocation.arguments[0] as String).contains(">"))
+            }
+            connection
+        }
+        return hds
+    }
+
+    private fun mockPage(keys: List<Long>, hasLowerBound: Boolean): PreparedStatement {
+        val ps = Mockito.mock(PreparedStatement::class.java)
+        var lower = Long.MIN_VALUE
+        var limit = Int.MAX_VALUE
+        Mockito.doAnswer { lower = it.arguments[1] as Long; null }
+                .`when`(ps).setObject(Mockito.eq(1), Mockito.any<Any>())
+        Mockito.doAnswer { limit = it.arguments[1] as Int; null }
+                .`when`(ps).setInt(Mockito.eq(if (hasLowerBound) 2 else 1), Mockito.anyInt())
+        Mockito.`when`(ps.executeQuery()).thenAnswer {
+            val rows = keys.filter { it > lower }.take(limit)
+            var row = -1
+            val rs = Mockito.mock(ResultSet::class.java)
+            Mockito.`when`(rs.next()).thenAnswer { ++row < rows.size }
+            Mockito.`when`(rs.getLong("id")).thenAnswer { rows[row] }
+            Mockito.`when`(rs.getObject("id")).thenAnswer { rows[row] }
+            rs
+        }
+        return ps
+    }
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright (C) 2021. OpenLattice, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * You can contact the owner of the copyright at support@openlattice.com
+ *
+ *
+ */
+package com.openlattice.postgres
+
+import com.openlattice.postgres.streams.ParallelMappingPostgresIterable
+import com.openlattice.postgres.streams.RawRow
+import com.openlattice.postgres.streams.StatementHolder
+import org.junit.Assert
+import org.junit.Test
+import org.mockito.Mockito
+import java.math.BigDecimal
+import java.sql.Connection
+import java.sql.ResultSet
+import java.sql.ResultSetMetaData
+import java.sql.SQLException
+import java.sql.Statement
+import java.sql.Timestamp
+import java.time.OffsetDateTime
+import java.time.ZoneOffset
+import java.util.concurrent.atomic.AtomicInteger
+import java.util.function.Supplier
+
+/**
+ * @author Matthew Tamayo-Rios &lt;matthew@openlattice.com&gt;
+ */
+class ParallelMappingPostgresIterableTests {
+    private val rows = 10_000
+
+    private fun holder(): Supplier<StatementHolder> {
+        val row = AtomicInteger()
+        val rs = Mockito.mock(ResultSet::class.java)
+        Mockito.`when`(rs.next()).thenAnswer { row.incrementAndGet() <= rows }
+        Mockito.`when`(rs.getInt(1)).thenAnswer { row.get() }
+        return Supplier {
+            StatementHolder(Mockito.mock(Connection::class.java), Mockito.mock(Statement::class.java), rs)
+        }
+    }
+
+    @Test
+    fun testOrderPreserved() {
+        val iterable = ParallelMappingPostgresIterable(holder(), { it.getInt(1) }, { it * 2 }, 64)
+        Assert.assertEquals((1..rows).map { it * 2 }, iterable.toList())
+    }
+
+    @Test
+    fun testUnorderedReturnsAllRows() {
+        val iterable = ParallelMappingPostgresIterable(holder(), { it.getInt(1) }, { it * 2 }, 64, false)
+        Assert.assertEquals((1..rows).map { it * 2 }.toSet(), iterable.toSet())
+    }
+
+    private fun rawRow(vararg columns: Pair<String, Any?>): RawRow {
+        val metaData = Mockito.mock(ResultSetMetaData::class.java)
+        Mockito.`when`(metaData.columnCount).thenReturn(columns.size)
+        val rs = Mockito.mock(ResultSet::class.java)
+        Mockito.`when`(rs.metaData).thenReturn(metaData)
+        columns.forEachIndexed { i, (label, value) ->
+            Mockito.`when`(metaData.getColumnLabel(i + 1)).thenReturn(label)
+            Mockito.`when`(rs.getObject(i + 1)).thenReturn(value)
+        }
+        return RawRow.capture(rs)
+    }
+
+    @Test
+    fun testRawRowConvertsLikeResultSet() {
+        val ts = OffsetDateTime.of(2021, 3, 17, 15, 30, 0, 0, ZoneOffset.UTC)
+        val row = rawRow(
+                "int4" to 42,
+                "numeric" to BigDecimal("7"),
+                "int8" to 9L,
+                "ts" to Timestamp.from(ts.toInstant()),
+                "missing" to null
+        )
+
+        Assert.assertEquals(42L, row.getObject("int4", Long::class.javaObjectType))
+        Assert.assertEquals(7L, row.getObject("numeric", Long::class.java))
+        Assert.assertEquals(9, row.getObject("int8", Int::class.javaObjectType))
+        Assert.assertEquals(BigDecimal.valueOf(42L), row.getObject("int4", BigDecimal::class.java))
+        Assert.assertEquals("42", row.getObject("int4", String::class.java))
+        Assert.assertEquals(ts, row.getObject("ts", OffsetDateTime::class.java))
+        Assert.assertNull(row.getObject("missing", Long::class.javaObjectType))
+    }
+
+    @Test(expected = SQLException::class)
+    fun testRawRowRejectsLossyConversions() {
+        rawRow("numeric" to BigDecimal("7.5")).getObject("numeric", Long::class.javaObjectType)
+    }
+
+    @Test(expected = IllegalStateException::class)
+    fun testMapperFailurePropagates() {
+        ParallelMappingPostgresIterable<Int, Int>(
+                holder(),
+                { it.getInt(1) },
+                { throw IllegalStateException("Unable to decode row.") }
+        ).toList()
+    }
+}
@@ -0,0 +1,85 @@
+/*
+ * Copyright (C) 2021. OpenLattice, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * You can contact the owner of the copyright at support@openlattice.com
+ *
+ *
+ */
+package com.openlattice.postgres
+
+import com.codahale.metrics.MetricRegistry
+import com.openlattice.postgres.streams.CursorExpirationWheel
+import com.openlattice.postgres.streams.ParallelPostgresIterable
+import org.junit.Assert
+import org.junit.Test
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.TimeUnit
+
+/**
+ * @author Matthew Tamayo-Rios &lt;matthew@openlattice.com&gt;
+ */
+class ParallelPostgresIterableTests {
+    @Test
+    fun testAllPartitionsConsumed() {
+        val partitions = (0 until 8).map { partition -> (0 until 10_000).map { partition * 10_000 + it } }
+        val iterable = ParallelPostgresIterable(partitions, 128)
+
+        val actual = iterable.toSet()
+
+        Assert.assertEquals(80_000, actual.size)
+        Assert.assertEquals(partitions.flatten().toSet(), actual)
+    }
+
+    @Test(expected = IllegalStateException::class)
+    fun testFailurePropagates() {
+        val failing = Iterable<Int> { throw IllegalStateException("Unable to open cursor.") }
+        ParallelPostgresIterable(listOf(listOf(1, 2, 3), failing)).toList()
+    }
+
+    @Test
+    fun testExpiredIteratorStopsProducers() {
+        val closed = CountDownLatch(2)
+        val endless = Iterable<Int> {
+            object : Iterator<Int>, AutoCloseable {
+                override fun hasNext(): Boolean = true
+                override fun next(): Int = 1
+                override fun close() = closed.countDown()
+            }
+        }
+        val wheel = CursorExpirationWheel(10, 8, MetricRegistry())
+        val iterator = ParallelPostgresIterable(listOf(endless, endless), 1, 50, wheel).iterator()
+
+        Assert.assertEquals(1, iterator.next())
+        //Producers are blocked on the full queue until the iterator expires and interrupts them.
+        Assert.assertTrue(closed.await(5, TimeUnit.SECONDS))
+        try {
+            iterator.hasNext()
+            Assert.fail("Expired iterator should not report the end of the stream.")
+        } catch (e: IllegalStateException) {
+            //Expected, the stream was cut short.
+        }
+        wheel.close()
+    }
+
+    @Test
+    fun testClosedIteratorEndsStream() {
+        val iterator = ParallelPostgresIterable(listOf(listOf(1, 2, 3))).iterator()
+
+        Assert.assertEquals(1, iterator.next())
+        iterator.close()
+        Assert.assertFalse(iterator.hasNext())
+    }
+}
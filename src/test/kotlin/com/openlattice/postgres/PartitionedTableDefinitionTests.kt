@@ -0,0 +1,125 @@
+/*
+ * Copyright (C) 2021. OpenLattice, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * You can contact the owner of the copyright at support@openlattice.com
+ *
+ *
+ */
+package com.openlattice.postgres
+
+import org.junit.Assert
+import org.junit.Test
+import java.time.OffsetDateTime
+import java.time.ZoneOffset
+
+/**
+ * @author Matthew Tamayo-Rios &lt;matthew@openlattice.com&gt;
+ */
+class PartitionedTableDefinitionTests {
+    private val id = PostgresColumnDefinition("id", PostgresDatatype.UUID)
+    private val ts = PostgresColumnDefinition("ts", PostgresDatatype.TIMESTAMPTZ)
+    private val now = OffsetDateTime.of(2021, 3, 17, 15, 30, 0, 0, ZoneOffset.UTC)
+
+    private fun auditTable(retention: Int? = null): PartitionedTableDefinition {
+        return PartitionedTableDefinition("audit")
+                .addColumns(id, ts)
+                .primaryKey(id, ts)
+                .partitionBy(PartitionStrategy.RANGE, ts)
+                .timePartitions(PartitionInterval.MONTH, 1, retention)
+    }
+
+    @Test
+    fun testCreateTableQuery() {
+        Assert.assertTrue(auditTable().createTableQuery().endsWith(" PARTITION BY RANGE (ts)"))
+    }
+
+    @Test(expected = IllegalStateException::class)
+    fun testPrimaryKeyMustIncludePartitionColumn() {
+        PartitionedTableDefinition("audit")
+                .addColumns(id, ts)
+                .primaryKey(id)
+                .partitionBy(PartitionStrategy.RANGE, ts)
+                .createTableQuery()
+    }
+
+    @Test(expected = IllegalStateException::class)
+    fun testTimePartitionsCantHaveDefaultPartition() {
+        auditTable().defaultPartition().createTableQuery()
+    }
+
+    @Test(expected = IllegalArgumentException::class)
+    fun testNegativeRetentionIsRejected() {
+        auditTable(-1)
+    }
+
+    @Test(expected = IllegalArgumentException::class)
+    fun testHashModulusMustBePositive() {
+        PartitionedTableDefinition("ids").addColumns(id).partitionBy(PartitionStrategy.HASH, id).hashPartitions(0)
+    }
+
+    @Test
+    fun testTimePartitions() {
+        Assert.assertEquals(
+                listOf(
+                        "CREATE TABLE IF NOT EXISTS audit_202103 PARTITION OF audit " +
+                                "FOR VALUES FROM ('2021-03-01 00:00:00+00') TO ('2021-04-01 00:00:00+00')",
+                        "CREATE TABLE IF NOT EXISTS audit_202104 PARTITION OF audit " +
+                                "FOR VALUES FROM ('2021-04-01 00:00:00+00') TO ('2021-05-01 00:00:00+00')"
+                ),
+                auditTable().createPartitionQueries(now)
+        )
+    }
+
+    @Test
+    fun testExpiredPartitions() {
+        val partitions = listOf("audit_202012", "audit_202101", "audit_202102", "audit_202103", "audit_default")
+        Assert.assertEquals(listOf<String>(), auditTable().getExpiredPartitions(partitions, now))
+        Assert.assertEquals(listOf("audit_202012", "audit_202101"), auditTable(1).getExpiredPartitions(partitions, now))
+    }
+
+    @Test
+    fun testListAndHashPartitions() {
+        val kind = PostgresColumnDefinition("kind", PostgresDatatype.TEXT)
+        val list = PartitionedTableDefinition("events")
+                .addColumns(id, kind)
+                .partitionBy(PartitionStrategy.LIST, kind)
+                .listPartition("read", "read", "it's")
+                .defaultPartition()
+        Assert.assertEquals(
+                listOf(
+                        "CREATE TABLE IF NOT EXISTS events_read PARTITION OF events FOR VALUES IN ('read', 'it''s')",
+                        "CREATE TABLE IF NOT EXISTS events_default PARTITION OF events DEFAULT"
+                ),
+                list.createPartitionQueries(now)
+        )
+
+        val hash = PartitionedTableDefinition("ids").addColumns(id).partitionBy(PartitionStrategy.HASH, id)
+        Assert.assertEquals(
+                "CREATE TABLE IF NOT EXISTS ids_p1 PARTITION OF ids FOR VALUES WITH (MODULUS 2, REMAINDER 1)",
+                hash.hashPartitions(2).createPartitionQueries(now)[1]
+        )
+    }
+
+    @Test
+    fun testPartitionQueries() {
+        val table = auditTable()
+        Assert.assertEquals(
+                "SELECT id FROM audit WHERE id = ?  AND ts >= ? AND ts < ?",
+                table.partitionSelectQuery(listOf(id), listOf(id))
+        )
+        Assert.assertEquals("DELETE FROM audit WHERE ts >= ? AND ts < ?", table.partitionDeleteQuery(listOf()))
+    }
+}
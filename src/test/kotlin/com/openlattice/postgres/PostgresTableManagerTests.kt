@@ -0,0 +1,250 @@
+/*
+ * Copyright (C) 2021. OpenLattice, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * You can contact the owner of the copyright at support@openlattice.com
+ *
+ *
+ */
+package com.openlattice.postgres
+
+import com.zaxxer.hikari.HikariDataSource
+import org.junit.Assert
+import org.junit.Test
+import org.mockito.Mockito
+import org.mockito.stubbing.Answer
+import java.sql.Connection
+import java.sql.PreparedStatement
+import java.sql.ResultSet
+import java.sql.SQLException
+import java.sql.Statement
+
+/**
+ * @author Matthew Tamayo-Rios &lt;matthew@openlattice.com&gt;
+ */
+class PostgresTableManagerTests {
+    private fun table(name: String, vararg references: PostgresTableDefinition): PostgresTableDefinition {
+        val id = PostgresColumnDefinition("id", PostgresDatatype.UUID).primaryKey()
+        val table = PostgresTableDefinition(name).addColumns(id)
+        references.forEach {
+            table.addColumns(PostgresColumnDefinition("${it.name}_id", PostgresDatatype.UUID).foreignKey(it))
+        }
+        return table
+    }
+
+    @Test
+    fun testCreationWavesFollowForeignKeys() {
+        val a = table("a")
+        val b = table("b", a)
+        val c = table("c", a, b)
+        val d = table("d")
+
+        val waves = PostgresTableManager.getCreationWaves(linkedMapOf("c" to c, "b" to b, "a" to a, "d" to d))
+
+        Assert.assertEquals(
+                listOf(listOf("a", "d"), listOf("b"), listOf("c")),
+                waves.map { wave -> wave.map { it.name } }
+        )
+    }
+
+    @Test
+    fun testReferencesOutsideRegistrationAreIgnored() {
+        val external = table("external")
+        val a = table("a", external)
+
+        val waves = PostgresTableManager.getCreationWaves(linkedMapOf("a" to a))
+
+        Assert.assertEquals(listOf(listOf("a")), waves.map { wave -> wave.map { it.name } })
+    }
+
+    @Test(expected = IllegalStateException::class)
+    fun testCircularReferencesFail() {
+        val a = table("a")
+        val b = table("b", a)
+        a.addColumns(PostgresColumnDefinition("b_id", PostgresDatatype.UUID).foreignKey(b))
+
+        PostgresTableManager.getCreationWaves(linkedMapOf("a" to a, "b" to b))
+    }
+
+    @Test
+    fun testUnchangedTablesAreSkipped() {
+        val db = FakeSchemaDatabase()
+        manager(db).registerTables(table("a"))
+        Assert.assertEquals(setOf("a"), db.fingerprints.keys)
+
+        db.executed.clear()
+        manager(db).registerTables(table("a"))
+        Assert.assertEquals(listOf<String>(), db.executed)
+    }
+
+    @Test
+    fun testChangedTableIsMigratedBeforeFingerprintIsSaved() {
+        val db = FakeSchemaDatabase()
+        manager(db).registerTables(table("a"))
+        val fingerprint = db.fingerprints.getValue("a").first
+
+        val changed = table("a").addColumns(PostgresColumnDefinition("extra", PostgresDatatype.TEXT))
+        val migrated = mutableListOf<List<String>>()
+        val manager = manager(db)
+        manager.registerMigration("a") { _, _, previousDdl, currentDdl ->
+            Assert.assertEquals(fingerprint, db.fingerprints.getValue("a").first)
+            migrated.add(previousDdl)
+            migrated.add(currentDdl)
+        }
+        manager.registerTables(changed)
+
+        Assert.assertEquals(listOf(listOf(table("a").createTableQuery()), listOf(changed.createTableQuery())), migrated)
+        Assert.assertNotEquals(fingerprint, db.fingerprints.getValue("a").first)
+        Assert.assertEquals(listOf(changed.createTableQuery()), db.fingerprints.getValue("a").second)
+    }
+
+    @Test
+    fun testChangedTableWithoutMigrationIsReportedOnEveryRegistration() {
+        val db = FakeSchemaDatabase()
+        manager(db).registerTables(table("a"))
+        val fingerprint = db.fingerprints.getValue("a")
+
+        val changed = table("a").addColumns(PostgresColumnDefinition("extra", PostgresDatatype.TEXT))
+        manager(db).registerTables(changed)
+        Assert.assertEquals(fingerprint, db.fingerprints.getValue("a"))
+
+        db.executed.clear()
+        manager(db).registerTables(changed)
+        Assert.assertEquals(listOf(changed.createTableQuery()), db.executed)
+        Assert.assertEquals(fingerprint, db.fingerprints.getValue("a"))
+    }
+
+    @Test
+    fun testFingerprintIsNotSavedWhenMigrationFails() {
+        val db = FakeSchemaDatabase()
+        manager(db).registerTables(table("a"))
+        val fingerprint = db.fingerprints.getValue("a")
+
+        val manager = manager(db)
+        manager.registerMigration("a") { _, _, _, _ -> throw SQLException("Migration failed.") }
+        try {
+            manager.registerTables(table("a").addColumns(PostgresColumnDefinition("extra", PostgresDatatype.TEXT)))
+            Assert.fail("Registration should fail when the migration fails.")
+        } catch (e: SQLException) {
+            Assert.assertEquals(fingerprint, db.fingerprints.getValue("a"))
+        }
+    }
+
+    @Test
+    fun testFingerprintIsNotSavedWhenDdlFails() {
+        val db = FakeSchemaDatabase()
+        db.failing = "CREATE TABLE IF NOT EXISTS a"
+        try {
+            manager(db).registerTables(table("a"))
+            Assert.fail("Registration should fail when the DDL fails.")
+        } catch (e: SQLException) {
+            Assert.assertEquals(setOf<String>(), db.fingerprints.keys)
+        }
+    }
+
+    private fun manager(db: FakeSchemaDatabase) = PostgresTableManager(db.dataSource, false, true, true)
+
+    /**
+     * Emulates the fingerprint table and records all other DDL that is executed.
+     */
+    private class FakeSchemaDatabase {
+        val fingerprints = mutableMapOf<String, Pair<String, List<String>>>()
+        val executed = mutableListOf<String>()
+        var failing: String? = null
+        val dataSource: HikariDataSource = Mockito.mock(HikariDataSource::class.java)
+
+        init {
+            Mockito.`when`(dataSource.connection).thenAnswer { connection() }
+            Mockito.`when`(dataSource.maximumPoolSize).thenReturn(4)
+        }
+
+        private fun connection(): Connection = Mockito.mock(Connection::class.java, Answer<Any?> { invocation ->
+            when (invocation.method.name) {
+                "createStatement" -> statement()
+                "prepareStatement" -> preparedStatement(invocation.arguments[0] as String)
+                "createArrayOf" -> array(invocation.arguments[1] as Array<*>)
+                else -> Mockito.RETURNS_DEFAULTS.answer(invocation)
+            }
+        })
+
+        private fun statement(): Statement = Mockito.mock(Statement::class.java, Answer<Any?> { invocation ->
+            if (invocation.method.name == "execute") {
+                val sql = invocation.arguments[0] as String
+                if (failing != null && sql.startsWith(failing!!)) {
+                    throw SQLException("Unable to execute $sql")
+                }
+                if (!sql.startsWith("CREATE TABLE IF NOT EXISTS ${PostgresTableManager.FINGERPRINTS_TABLE}")) {
+                    synchronized(executed) { executed.add(sql) }
+                }
+                false
+            } else {
+                Mockito.RETURNS_DEFAULTS.answer(invocation)
+            }
+        })
+
+        private fun preparedStatement(sql: String): PreparedStatement {
+            val parameters = mutableMapOf<Int, Any?>()
+            val batch = mutableListOf<Map<Int, Any?>>()
+
+            return Mockito.mock(PreparedStatement::class.java, Answer<Any?> { invocation ->
+                when (invocation.method.name) {
+                    "setString", "setArray" -> {
+                        parameters[invocation.arguments[0] as Int] = invocation.arguments[1]
+                        null
+                    }
+                    "addBatch" -> {
+                        batch.add(parameters.toMap())
+                        null
+                    }
+                    "executeBatch" -> {
+                        batch.forEach {
+                            val ddl = ((it.getValue(3) as java.sql.Array).array as Array<*>).map { q -> q as String }
+                            fingerprints[it[1] as String] = (it[2] as String) to ddl
+                        }
+                        IntArray(batch.size) { 1 }
+                    }
+                    "executeQuery" -> resultSet(
+                            if (sql.startsWith("SELECT table_name, fingerprint")) {
+                                fingerprints.map { (name, fingerprint) ->
+                                    listOf(name, fingerprint.first, array(fingerprint.second.toTypedArray()))
+                                }
+                            } else {
+                                listOf()
+                            }
+                    )
+                    else -> Mockito.RETURNS_DEFAULTS.answer(invocation)
+                }
+            })
+        }
+
+        private fun resultSet(rows: List<List<Any>>): ResultSet {
+            var row = -1
+            return Mockito.mock(ResultSet::class.java, Answer<Any?> { invocation ->
+                when (invocation.method.name) {
+                    "next" -> ++row < rows.size
+                    "getString", "getArray" -> rows[row][(invocation.arguments[0] as Int) - 1]
+                    else -> Mockito.RETURNS_DEFAULTS.answer(invocation)
+                }
+            })
+        }
+
+        private fun array(elements: Array<*>): java.sql.Array = Mockito.mock(
+                java.sql.Array::class.java,
+                Answer<Any?> { invocation ->
+                    if (invocation.method.name == "getArray") elements else Mockito.RETURNS_DEFAULTS.answer(invocation)
+                }
+        )
+    }
+}
@@ -0,0 +1,115 @@
+/*
+ * Copyright (C) 2021. OpenLattice, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * You can contact the owner of the copyright at support@openlattice.com
+ *
+ *
+ */
+package com.openlattice.postgres
+
+import com.codahale.metrics.MetricRegistry
+import com.openlattice.postgres.streams.CursorExpirationWheel
+import com.openlattice.postgres.streams.PrefetchingPostgresIterable
+import com.openlattice.postgres.streams.PrefetchingPostgresIterator
+import com.openlattice.postgres.streams.StatementHolder
+import org.junit.Assert
+import org.junit.Test
+import org.mockito.Mockito
+import java.sql.Connection
+import java.sql.ResultSet
+import java.sql.Statement
+import java.util.concurrent.atomic.AtomicInteger
+import java.util.function.Supplier
+
+/**
+ * @author Matthew Tamayo-Rios &lt;matthew@openlattice.com&gt;
+ */
+class PrefetchingPostgresIterableTests {
+    @Test
+    fun testAllRowsConsumedAndClosed() {
+        val rows = 10_001
+        val row = AtomicInteger()
+        val closeCount = AtomicInteger()
+        val rs = Mockito.mock(ResultSet::class.java)
+        val stmt = Mockito.mock(Statement::class.java)
+        val connection = Mockito.mock(Connection::class.java)
+        Mockito.`when`(rs.next()).thenAnswer { row.incrementAndGet() <= rows }
+        Mockito.doAnswer { closeCount.getAndIncrement() }.`when`(connection).close()
+
+        val iterable = PrefetchingPostgresIterable(
+                Supplier { StatementHolder(connection, stmt, rs) },
+                { row.get() },
+                64
+        )
+
+        Assert.assertEquals((1..rows).toList(), iterable.toList())
+        Assert.assertEquals(1, closeCount.get())
+    }
+
+    @Test(expected = IllegalStateException::class)
+    fun testMapperFailurePropagates() {
+        val rs = Mockito.mock(ResultSet::class.java)
+        val stmt = Mockito.mock(Statement::class.java)
+        val connection = Mockito.mock(Connection::class.java)
+        Mockito.`when`(rs.next()).thenReturn(true)
+
+        PrefetchingPostgresIterable<Any>(
+                Supplier { StatementHolder(connection, stmt, rs) },
+                { throw IllegalStateException("Unable to map row.") }
+        ).toList()
+    }
+
+    private fun countingHolder(rows: Int): StatementHolder {
+        val row = AtomicInteger()
+        val rs = Mockito.mock(ResultSet::class.java)
+        Mockito.`when`(rs.next()).thenAnswer { row.incrementAndGet() <= rows }
+        Mockito.`when`(rs.getInt(1)).thenAnswer { row.get() }
+        return StatementHolder(Mockito.mock(Connection::class.java), Mockito.mock(Statement::class.java), rs)
+    }
+
+    @Test
+    fun testExpiredCursorFailsSlowConsumer() {
+        CursorExpirationWheel(10, 8, MetricRegistry()).use { wheel ->
+            val iterator = PrefetchingPostgresIterator(countingHolder(100), { it.getInt(1) }, 1, 1, 50, wheel)
+
+            Assert.assertEquals(1, iterator.next())
+            Thread.sleep(500)
+
+            try {
+                iterator.asSequence().toList()
+                Assert.fail("Expired cursor should not look like the end of the result set.")
+            } catch (e: IllegalStateException) {
+                Assert.assertEquals("cursor expired", e.cause?.message)
+            }
+        }
+    }
+
+    @Test
+    fun testReadingWithinBlockKeepsCursorOpen() {
+        CursorExpirationWheel(10, 8, MetricRegistry()).use { wheel ->
+            val iterator = PrefetchingPostgresIterator(countingHolder(30), { it.getInt(1) }, 10, 1, 200, wheel)
+            val rows = mutableListOf<Int>()
+
+            //Consuming a whole block takes longer than the timeout, but every row read refreshes the deadline.
+            iterator.forEach {
+                rows.add(it)
+                Thread.sleep(40)
+            }
+
+            Assert.assertEquals((1..30).toList(), rows)
+        }
+    }
+}
@@ -0,0 +1,121 @@
+/*
+ * Copyright (C) 2021. OpenLattice, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * You can contact the owner of the copyright at support@openlattice.com
+ *
+ *
+ */
+package com.openlattice.postgres
+
+import org.junit.Assert
+import org.junit.Test
+import java.lang.reflect.Proxy
+import java.sql.Connection
+import java.sql.ResultSet
+import java.util.concurrent.Executors
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicInteger
+
+/**
+ * @author Matthew Tamayo-Rios &lt;matthew@openlattice.com&gt;
+ */
+class RefCountedCloserTests {
+    @Test
+    fun testClosesOnLastRelease() {
+        val closed = AtomicInteger()
+        val closer = RefCountedCloser(2, AutoCloseable { closed.incrementAndGet() })
+
+        closer.release()
+        Assert.assertEquals(0, closed.get())
+        closer.retain()
+        closer.release()
+        closer.release()
+        Assert.assertEquals(1, closed.get())
+        Assert.assertTrue(closer.isClosed)
+
+        closer.release()
+        Assert.assertEquals(1, closed.get())
+    }
+
+    @Test(expected = IllegalStateException::class)
+    fun testRetainAfterClose() {
+        val closer = RefCountedCloser(1)
+        closer.release()
+        closer.retain()
+    }
+
+    @Test
+    fun testZeroReferencesClosesImmediately() {
+        val closed = AtomicInteger()
+        val closer = CountdownConnectionCloser(connection(closed), 0).closer
+
+        Assert.assertEquals(1, closed.get())
+        Assert.assertTrue(closer.isClosed)
+    }
+
+    @Test(expected = IllegalArgumentException::class)
+    fun testNegativeReferences() {
+        RefCountedCloser(-1)
+    }
+
+    @Test
+    fun testConstantThreadCountUnderConcurrentIterators() {
+        val iterators = 10_000
+        val iteratorsPerConnection = 10
+        val rowsPerIterator = 3
+        val closedConnections = AtomicInteger()
+        val threadsBefore = Thread.activeCount()
+
+        val keyIterators = (0 until iterators / iteratorsPerConnection).flatMap {
+            val closer = RefCountedCloser(iteratorsPerConnection, connection(closedConnections))
+            (0 until iteratorsPerConnection).map { KeyIterator(resultSet(rowsPerIterator), closer) { 1 } }
+        }
+
+        Assert.assertTrue(
+                "Open iterators must not hold threads.",
+                Thread.activeCount() - threadsBefore < 8
+        )
+        Assert.assertEquals(0, closedConnections.get())
+
+        val executor = Executors.newFixedThreadPool(8)
+        val rows = AtomicInteger()
+        keyIterators.forEach { iterator -> executor.execute { iterator.forEach { rows.addAndGet(it) } } }
+        executor.shutdown()
+        Assert.assertTrue(executor.awaitTermination(1, TimeUnit.MINUTES))
+
+        Assert.assertEquals(iterators * rowsPerIterator, rows.get())
+        Assert.assertEquals(iterators / iteratorsPerConnection, closedConnections.get())
+    }
+
+    private fun connection(closed: AtomicInteger): Connection {
+        return Proxy.newProxyInstance(javaClass.classLoader, arrayOf(Connection::class.java)) { _, method, _ ->
+            if (method.name == "close") {
+                closed.incrementAndGet()
+            }
+            null
+        } as Connection
+    }
+
+    private fun resultSet(rows: Int): ResultSet {
+        var remaining = rows
+        return Proxy.newProxyInstance(javaClass.classLoader, arrayOf(ResultSet::class.java)) { _, method, _ ->
+            when (method.name) {
+                "next" -> remaining-- > 0
+                else -> null
+            }
+        } as ResultSet
+    }
+}
@@ -0,0 +1,76 @@
+/*
+ * Copyright (C) 2021. OpenLattice, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * You can contact the owner of the copyright at support@openlattice.com
+ *
+ *
+ */
+package com.openlattice.postgres
+
+import com.openlattice.postgres.streams.SharedPostgresScan
+import com.openlattice.postgres.streams.SlowConsumerPolicy
+import org.junit.Assert
+import org.junit.Test
+import java.util.concurrent.CompletableFuture
+
+/**
+ * @author Matthew Tamayo-Rios &lt;matthew@openlattice.com&gt;
+ */
+class SharedPostgresScanTests {
+    private val rows = (0 until 10_000).toList()
+
+    @Test
+    fun testEverySubscriberReceivesEveryRow() {
+        val scan = SharedPostgresScan(rows, 64, 2)
+        val subscriptions = (0 until 4).map { scan.subscribe() }
+        scan.start()
+
+        val results = subscriptions.map { subscription ->
+            CompletableFuture.supplyAsync { subscription.asSequence().toList() }
+        }
+
+        results.forEach { Assert.assertEquals(rows, it.join()) }
+    }
+
+    @Test
+    fun testSlowSubscriberIsDisconnected() {
+        val scan = SharedPostgresScan(rows, 64, 2, SlowConsumerPolicy.DISCONNECT, 200)
+        val fast = scan.subscribe()
+        val slow = scan.subscribe()
+        scan.start()
+
+        Assert.assertEquals(rows, fast.asSequence().toList())
+        try {
+            slow.asSequence().toList()
+            Assert.fail("Slow subscriber should have been disconnected.")
+        } catch (e: IllegalStateException) {
+            //Expected.
+        }
+    }
+
+    @Test
+    fun testSubscribeAfterStartFails() {
+        val scan = SharedPostgresScan(rows)
+        scan.subscribe().close()
+        scan.start()
+        try {
+            scan.subscribe()
+            Assert.fail("Subscribing to a started scan should fail.")
+        } catch (e: IllegalStateException) {
+            //Expected.
+        }
+    }
+}
@@ -0,0 +1,85 @@
+/*
+ * Copyright (C) 2021. OpenLattice, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * You can contact the owner of the copyright at support@openlattice.com
+ *
+ *
+ */
+package com.openlattice.postgres
+
+import com.openlattice.postgres.streams.StreamingQueryExecutor
+import com.zaxxer.hikari.HikariDataSource
+import org.junit.Assert
+import org.junit.Test
+import org.mockito.Mockito
+import java.util.concurrent.CompletableFuture
+import java.util.concurrent.RejectedExecutionException
+import java.util.concurrent.atomic.AtomicInteger
+import java.util.function.Consumer
+
+/**
+ * @author Matthew Tamayo-Rios &lt;matthew@openlattice.com&gt;
+ */
+class StreamingQueryExecutorTests {
+    @Test
+    fun testOpenCursorsAreBounded() {
+        val hds = Mockito.mock(HikariDataSource::class.java)
+        Mockito.`when`(hds.maximumPoolSize).thenReturn(8)
+        val executor = StreamingQueryExecutor(hds, 3)
+
+        val open = AtomicInteger()
+        val maxOpen = AtomicInteger()
+        val cursor = Iterable {
+            val opened = open.incrementAndGet()
+            maxOpen.accumulateAndGet(opened, ::maxOf)
+            (0 until 100).iterator()
+        }
+
+        val rows = (0 until 50).map {
+            executor.consume(cursor, Consumer {
+                if (it == 99) {
+                    open.decrementAndGet()
+                }
+                Thread.sleep(0, 1000)
+            })
+        }
+        CompletableFuture.allOf(*rows.toTypedArray()).join()
+
+        Assert.assertEquals(50 * 100L, rows.sumOf { it.join() })
+        Assert.assertTrue(maxOpen.get() <= 3)
+        Assert.assertEquals(3, executor.getAvailableCursors())
+    }
+
+    @Test
+    fun testExecutorsOfClosedPoolsAreReleased() {
+        val hds = Mockito.mock(HikariDataSource::class.java)
+        Mockito.`when`(hds.maximumPoolSize).thenReturn(8)
+        val shared = StreamingQueryExecutor.forDataSource(hds)
+        Assert.assertSame(shared, StreamingQueryExecutor.forDataSource(hds))
+
+        Mockito.`when`(hds.isClosed).thenReturn(true)
+        val other = Mockito.mock(HikariDataSource::class.java)
+        Mockito.`when`(other.maximumPoolSize).thenReturn(8)
+        StreamingQueryExecutor.forDataSource(other)
+
+        //The executor of the closed pool was shut down and dropped, so it no longer accepts queries.
+        try {
+            shared.consume(listOf(1), Consumer {})
+            Assert.fail("Executor of a closed pool should reject queries.")
+        } catch (e: RejectedExecutionException) {
+        }
+    }
+}
@@ -0,0 +1,152 @@
+/*
+ * Copyright (C) 2021. OpenLattice, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * You can contact the owner of the copyright at support@openlattice.com
+ *
+ *
+ */
+package com.openlattice.postgres.mapstores
+
+import org.junit.Assert
+import org.junit.Test
+import java.sql.ResultSet
+import java.util.*
+import java.util.concurrent.CompletionException
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.TimeUnit
+
+/**
+ * @author Matthew Tamayo-Rios &lt;matthew@openlattice.com&gt;
+ */
+class AbstractAsyncPostgresMapstoreTests {
+    /**
+     * Records the threads that decode rows and fails to decode the row for [badKey].
+     */
+    private class RecordingMapstore(
+            db: FakeDatabase,
+            maxConcurrency: Int = 4,
+            private val badKey: Long? = null
+    ) : TestAsyncMapstore(db.dataSource, maxConcurrency = maxConcurrency) {
+        val threads: MutableSet<String> = Collections.synchronizedSet(mutableSetOf())
+
+        override fun mapToValue(rs: ResultSet): String {
+            threads.add(Thread.currentThread().name)
+            check(mapToKey(rs) != badKey) { "Unable to decode row." }
+            return super.mapToValue(rs)
+        }
+    }
+
+    private fun database(): FakeDatabase {
+        val db = FakeDatabase()
+        (1L..40L).forEach { db.rows[it] = "value-$it" }
+        return db
+    }
+
+    @Test
+    fun testLoadAllFansOutChunks() {
+        val db = database()
+        val mapstore = RecordingMapstore(db)
+
+        Assert.assertEquals(db.rows, mapstore.loadAll((1L..40L).toList()))
+
+        //One query per chunk of at most batch size keys, all run on the executor of the map.
+        Assert.assertEquals(5, db.queries.size)
+        db.queries.forEach { Assert.assertTrue(it.keys.toSet().size <= 8) }
+        Assert.assertTrue(mapstore.threads.isNotEmpty())
+        mapstore.threads.forEach { Assert.assertTrue(it.startsWith("mapstore-test_map-")) }
+        mapstore.destroy()
+    }
+
+    @Test
+    fun testLoadAllOnExecutorDoesNotFanOut() {
+        val db = database()
+        val mapstore = RecordingMapstore(db, maxConcurrency = 1)
+
+        //With a single executor thread, fanning out from that thread would wait forever on its own chunks.
+        val loaded = mapstore.loadAllAsync((1L..40L).toList()).get(5, TimeUnit.SECONDS)
+
+        Assert.assertEquals(db.rows, loaded)
+        Assert.assertEquals(1, mapstore.threads.size)
+        mapstore.destroy()
+    }
+
+    @Test
+    fun testCallerRunsWhenQueueIsFull() {
+        val db = FakeDatabase()
+        val blocked = CountDownLatch(1)
+        val release = CountDownLatch(1)
+        val writers: MutableList<String> = Collections.synchronizedList(mutableListOf())
+        db.beforeWrite = {
+            writers.add(Thread.currentThread().name)
+            if (it.parameters[1] == 0L) {
+                blocked.countDown()
+                release.await()
+            }
+        }
+        val mapstore = TestAsyncMapstore(db.dataSource, maxConcurrency = 1)
+
+        val first = mapstore.storeAsync(0L, "first")
+        Assert.assertTrue(blocked.await(5, TimeUnit.SECONDS))
+        val queued = (1..AbstractAsyncPostgresMapstore.DEFAULT_QUEUE_CAPACITY).map { mapstore.loadAsync(1L) }
+
+        //The only executor thread is busy and its queue is full, so the store runs on the calling thread.
+        val overflow = mapstore.storeAsync(1L, "overflow")
+        Assert.assertTrue(overflow.isDone)
+        Assert.assertEquals(Thread.currentThread().name, writers.last())
+
+        release.countDown()
+        first.join()
+        queued.forEach { it.join() }
+        Assert.assertEquals(mapOf(0L to "first", 1L to "overflow"), db.rows)
+        mapstore.destroy()
+    }
+
+    @Test
+    fun testLoadAllFailurePropagates() {
+        val mapstore = RecordingMapstore(database(), badKey = 13L)
+
+        try {
+            mapstore.loadAll((1L..40L).toList())
+            Assert.fail("Load all should have failed.")
+        } catch (e: IllegalStateException) {
+            Assert.assertEquals("Unable to decode row.", e.cause?.message)
+        }
+
+        //Loads on the executor don't fan out, so the failure reaches the future unwrapped.
+        try {
+            mapstore.loadAllAsync((1L..40L).toList()).join()
+            Assert.fail("Load all should have failed.")
+        } catch (e: CompletionException) {
+            Assert.assertEquals("Unable to decode row.", e.cause?.message)
+        }
+        mapstore.destroy()
+    }
+
+    @Test
+    fun testCallerRunsAfterDestroy() {
+        val db = database()
+        val mapstore = RecordingMapstore(db)
+        mapstore.destroy()
+
+        //Work rejected by the shut down executor runs on the calling thread instead of leaving futures incomplete.
+        Assert.assertEquals(db.rows, mapstore.loadAll((1L..40L).toList()))
+        Assert.assertEquals("value-1", mapstore.loadAsync(1L).get(5, TimeUnit.SECONDS))
+        mapstore.storeAsync(41L, "value-41").get(5, TimeUnit.SECONDS)
+
+        Assert.assertEquals("value-41", db.rows[41L])
+        Assert.assertEquals(setOf(Thread.currentThread().name), mapstore.threads)
+    }
+}
@@ -0,0 +1,153 @@
+/*
+ * Copyright (C) 2021. OpenLattice, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * You can contact the owner of the copyright at support@openlattice.com
+ *
+ *
+ */
+package com.openlattice.postgres.mapstores
+
+import com.codahale.metrics.MetricRegistry
+import com.codahale.metrics.SharedMetricRegistries
+import com.kryptnostic.rhizome.pods.MetricsPod
+import com.zaxxer.hikari.HikariDataSource
+import org.junit.Assert
+import org.junit.Test
+import java.sql.SQLException
+
+/**
+ * @author Matthew Tamayo-Rios &lt;matthew@openlattice.com&gt;
+ */
+class AbstractBasePostgresMapstoreTests {
+    private class CopyMapstore(hds: HikariDataSource) : TestMapstore(hds), CopyRowValues<Long, String> {
+        override fun getCopyThreshold(): Int = 4
+
+        override fun copyValues(key: Long, value: String): Array<Any> = arrayOf(key, value)
+    }
+
+    private class FailureRecordingMapstore(hds: HikariDataSource) : TestMapstore(hds, batchSize = 2) {
+        val failures = mutableListOf<Long>()
+
+        override fun handleStoreFailed(key: Long, value: String) {
+            failures.add(key)
+        }
+    }
+
+    private fun storeAllFailing(mapstore: TestMapstore, entries: MutableMap<Long, String>): IllegalStateException {
+        try {
+            mapstore.storeAll(entries)
+        } catch (e: IllegalStateException) {
+            return e
+        }
+        throw AssertionError("Store all should have failed.")
+    }
+
+    @Test
+    fun testStoreAllBisectsDataErrors() {
+        val db = FakeDatabase()
+        db.failWrite = { if (it.parameters[1] == 3L) SQLException("duplicate key", "23505") else null }
+        val mapstore = FailureRecordingMapstore(db.dataSource)
+        val entries = (1L..6L).associateWithTo(mutableMapOf()) { "value-$it" }
+
+        storeAllFailing(mapstore, entries)
+
+        //Only the offending entry is lost, is reported once, and is left for Hazelcast to retry.
+        Assert.assertEquals((1L..6L).filter { it != 3L }.toSet(), db.rows.keys)
+        Assert.assertEquals(listOf(3L), mapstore.failures)
+        Assert.assertEquals(setOf(3L), entries.keys)
+    }
+
+    @Test
+    fun testStoreAllStopsOnConnectionErrors() {
+        val db = FakeDatabase()
+        val attempts = mutableListOf<Long>()
+        db.beforeWrite = { attempts.add(it.parameters[1] as Long) }
+        db.failWrite = { if (it.parameters[1] == 3L) SQLException("connection lost", "08006") else null }
+        val mapstore = FailureRecordingMapstore(db.dataSource)
+        val entries = (1L..6L).associateWithTo(mutableMapOf()) { "value-$it" }
+
+        val e = storeAllFailing(mapstore, entries)
+
+        //The failing chunk is not bisected and the remaining chunks are not attempted.
+        Assert.assertEquals("08006", (e.cause?.cause as SQLException).sqlState)
+        Assert.assertEquals(listOf(1L, 2L, 3L), attempts)
+        Assert.assertEquals(setOf(1L, 2L), db.rows.keys)
+        Assert.assertEquals(listOf(3L, 4L, 5L, 6L), mapstore.failures.sorted())
+        Assert.assertEquals(setOf(3L, 4L, 5L, 6L), entries.keys)
+    }
+
+    @Test
+    fun testStoreAllUsingCopy() {
+        val db = FakeDatabase()
+        val mapstore = CopyMapstore(db.dataSource)
+        val entries = (1L..6L).associateWith { "value-$it" }
+
+        mapstore.storeAll(entries.toMutableMap())
+
+        Assert.assertEquals(entries, db.rows)
+        Assert.assertEquals(
+                listOf(
+                        mapstore.createStagingTableQuery,
+                        "COPY copy_stage_test_map (id,value) FROM STDIN (FORMAT binary)",
+                        mapstore.copyMergeQuery
+                ),
+                db.executed
+        )
+        //The whole batch is merged in a single transaction.
+        Assert.assertEquals(listOf(6), db.commits.map { it.size })
+    }
+
+    @Test
+    fun testStoreAllBelowCopyThresholdUsesBatches() {
+        val db = FakeDatabase()
+        val mapstore = CopyMapstore(db.dataSource)
+
+        mapstore.storeAll(mutableMapOf(1L to "a", 2L to "b"))
+
+        Assert.assertEquals(mapOf(1L to "a", 2L to "b"), db.rows)
+        Assert.assertEquals(listOf<String>(), db.executed)
+    }
+
+    @Test
+    fun testStoreRecordsFlush() {
+        val metrics = SharedMetricRegistries.getOrCreate(MetricsPod.METRIC_REGISTRY_NAME)
+        val metricName = { name: String ->
+            MetricRegistry.name(AbstractPostgresMapstore2::class.java, "test_map", name)
+        }
+        val mapstore = TestMapstore(FakeDatabase().dataSource)
+        val millisSinceFlush = metrics.gauges.getValue(metricName("millis-since-flush"))
+        val flushes = metrics.timer(metricName("flush")).count
+        val flushSizes = metrics.histogram(metricName("flush-size")).count
+
+        Thread.sleep(250)
+        val idle = millisSinceFlush.value as Long
+        Assert.assertTrue(idle >= 250)
+
+        //Write-behind flushes of a single entry go through store, not storeAll.
+        mapstore.store(1L, "a")
+
+        Assert.assertTrue((millisSinceFlush.value as Long) < idle)
+        Assert.assertEquals(flushes + 1, metrics.timer(metricName("flush")).count)
+        Assert.assertEquals(flushSizes + 1, metrics.histogram(metricName("flush-size")).count)
+    }
+
+    @Test(expected = IllegalStateException::class)
+    fun testCopyRequiresCopyRowValues() {
+        object : TestMapstore(FakeDatabase().dataSource) {
+            override fun getCopyThreshold(): Int = 4
+        }
+    }
+}
@@ -0,0 +1,122 @@
+/*
+ * Copyright (C) 2021. OpenLattice, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * You can contact the owner of the copyright at support@openlattice.com
+ *
+ *
+ */
+package com.openlattice.postgres.mapstores
+
+import com.openlattice.postgres.PostgresColumnDefinition
+import com.openlattice.postgres.PostgresDatatype
+import com.openlattice.postgres.PostgresTableDefinition
+import com.zaxxer.hikari.HikariDataSource
+import org.junit.Assert
+import org.junit.Test
+import java.sql.PreparedStatement
+import java.sql.ResultSet
+import java.sql.SQLException
+
+/**
+ * @author Matthew Tamayo-Rios &lt;matthew@openlattice.com&gt;
+ */
+class AbstractBaseSplitKeyPostgresMapstoreTests {
+    companion object {
+        private val ID = PostgresColumnDefinition("id", PostgresDatatype.BIGINT).notNull()
+        private val SUB_ID = PostgresColumnDefinition("sub_id", PostgresDatatype.BIGINT).notNull()
+        private val VALUE = PostgresColumnDefinition("value", PostgresDatatype.TEXT)
+        private val TABLE = PostgresTableDefinition("split_map").addColumns(ID, SUB_ID, VALUE).primaryKey(ID, SUB_ID)
+    }
+
+    private open class SplitMapstore(
+            hds: HikariDataSource
+    ) : AbstractBaseSplitKeyPostgresMapstore<Long, Long, String>("split_map", TABLE, hds, 8) {
+        override fun generateTestKey(): Long = 1L
+
+        override fun generateTestValue(): Map<Long, String> = mapOf(1L to "value")
+
+        override fun initKeyColumns(): List<PostgresColumnDefinition> = listOf(ID)
+
+        override fun bind(ps: PreparedStatement, key: Long, subKey: Long, value: String) {
+            ps.setLong(1, key)
+            ps.setLong(2, subKey)
+            ps.setString(3, value)
+            ps.setString(4, value)
+        }
+
+        override fun bind(ps: PreparedStatement, key: Long, offset: Int): Int {
+            ps.setLong(offset, key)
+            return offset + 1
+        }
+
+        override fun mapToKey(rs: ResultSet): Long = rs.getLong(ID.name)
+
+        override fun mapToValue(rs: ResultSet): Map<Long, String> = mapOf(
+                rs.getLong(SUB_ID.name) to rs.getString(VALUE.name)
+        )
+    }
+
+    @Test
+    fun testMultiRowUpsertAcceptsMultiRowBinder() {
+        object : SplitMapstore(FakeDatabase().dataSource), MultiRowBinder<Long, Long, String> {
+            override fun isMultiRowUpsertEnabled(): Boolean = true
+
+            override fun bind(ps: PreparedStatement, key: Long, subKey: Long, value: String, offset: Int): Int {
+                ps.setLong(offset, key)
+                ps.setLong(offset + 1, subKey)
+                ps.setString(offset + 2, value)
+                return offset + 3
+            }
+        }
+    }
+
+    @Test(expected = IllegalStateException::class)
+    fun testMultiRowUpsertRequiresMultiRowBinder() {
+        object : SplitMapstore(FakeDatabase().dataSource) {
+            override fun isMultiRowUpsertEnabled(): Boolean = true
+        }
+    }
+
+    @Test
+    fun testFailedMultiRowReplaceIsRetried() {
+        val db = FakeDatabase()
+        val failed = mutableListOf<Long>()
+        val mapstore = object : SplitMapstore(db.dataSource), MultiRowBinder<Long, Long, String> {
+            override fun isMultiRowUpsertEnabled(): Boolean = true
+
+            override fun bind(ps: PreparedStatement, key: Long, subKey: Long, value: String, offset: Int): Int {
+                ps.setLong(offset, key)
+                ps.setLong(offset + 1, subKey)
+                ps.setString(offset + 2, value)
+                return offset + 3
+            }
+
+            override fun handleStoreFailed(key: Long, value: Map<Long, String>) {
+                failed.add(key)
+            }
+        }
+        db.failWrite = { SQLException("connection lost", "08006") }
+
+        try {
+            mapstore.storeAll(mapOf(1L to mapOf(1L to "a"), 2L to mapOf(1L to "b")))
+            Assert.fail("Failed replace must be reported so that write-behind retries the batch.")
+        } catch (e: IllegalStateException) {
+            Assert.assertTrue(e.cause is SQLException)
+        }
+        Assert.assertEquals(listOf(1L, 2L), failed.sorted())
+        Assert.assertTrue(db.commits.isEmpty())
+    }
+}
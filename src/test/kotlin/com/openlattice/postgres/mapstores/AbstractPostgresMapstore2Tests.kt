@@ -0,0 +1,104 @@
+/*
+ * Copyright (C) 2021. OpenLattice, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * You can contact the owner of the copyright at support@openlattice.com
+ *
+ *
+ */
+package com.openlattice.postgres.mapstores
+
+import com.openlattice.postgres.PostgresColumnDefinition
+import com.openlattice.postgres.PostgresDatatype
+import com.openlattice.postgres.PostgresTableDefinition
+import com.zaxxer.hikari.HikariDataSource
+import org.junit.Assert
+import org.junit.Test
+
+/**
+ * @author Matthew Tamayo-Rios &lt;matthew@openlattice.com&gt;
+ */
+class AbstractPostgresMapstore2Tests {
+    private open class ArrayMapstore(
+            hds: HikariDataSource,
+            table: PostgresTableDefinition = TestMapstore.TABLE
+    ) : TestMapstore(hds, table = table), KeyColumnValues<Long> {
+        override fun isArrayLoadAllEnabled(): Boolean = true
+
+        override fun keyValues(key: Long): Array<Any> = arrayOf(key)
+    }
+
+    @Test
+    fun testLoadAllUsingArrays() {
+        val db = FakeDatabase()
+        (1L..20L).forEach { db.rows[it] = "value-$it" }
+        val mapstore = ArrayMapstore(db.dataSource)
+
+        val keys = listOf(3L, 5L, 7L, 30L)
+        Assert.assertEquals(mapOf(3L to "value-3", 5L to "value-5", 7L to "value-7"), mapstore.loadAll(keys))
+
+        //A single statement with one unpadded array of keys, regardless of the batch size.
+        val query = db.queries.single()
+        Assert.assertEquals("SELECT * FROM test_map WHERE id = ANY(?)", query.sql)
+        val keyArray = query.parameters.getValue(1) as java.sql.Array
+        Assert.assertEquals(PostgresDatatype.BIGINT.sql(), keyArray.baseTypeName)
+        Assert.assertEquals(keys, (keyArray.array as Array<*>).toList())
+    }
+
+    @Test
+    fun testLoadAllUsingPaddedInList() {
+        val db = FakeDatabase()
+        (1L..20L).forEach { db.rows[it] = "value-$it" }
+        val mapstore = TestMapstore(db.dataSource, batchSize = 4)
+
+        Assert.assertEquals(mapOf(3L to "value-3", 5L to "value-5"), mapstore.loadAll(listOf(3L, 5L)))
+
+        val query = db.queries.single()
+        Assert.assertEquals(mapOf(1 to 3L, 2 to 5L, 3 to 5L, 4 to 5L), query.parameters)
+    }
+
+    @Test(expected = IllegalStateException::class)
+    fun testArrayLoadAllRequiresKeyColumnValues() {
+        object : TestMapstore(FakeDatabase().dataSource) {
+            override fun isArrayLoadAllEnabled(): Boolean = true
+        }
+    }
+
+    @Test(expected = IllegalStateException::class)
+    fun testArrayLoadAllRejectsArrayKeyColumns() {
+        val ids = PostgresColumnDefinition("id", PostgresDatatype.UUID_ARRAY).notNull()
+        val value = PostgresColumnDefinition("value", PostgresDatatype.TEXT)
+        val table = PostgresTableDefinition("arrays").addColumns(ids, value).primaryKey(ids)
+        ArrayMapstore(FakeDatabase().dataSource, table)
+    }
+
+    @Test(expected = IllegalStateException::class)
+    fun testReadOnlyDataSourceIsRejected() {
+        TestMapstore(FakeDatabase(readOnly = true).dataSource)
+    }
+
+    @Test
+    fun testSelectAllKeysPartitionQueryWrapsOverriddenQuery() {
+        val mapstore = object : TestMapstore(FakeDatabase().dataSource) {
+            override fun buildSelectAllKeysQuery(): String = "SELECT id FROM test_map WHERE value IS NOT NULL"
+        }
+
+        Assert.assertEquals(
+                "SELECT * FROM (SELECT id FROM test_map WHERE value IS NOT NULL) AS all_keys " +
+                        "WHERE abs(hashtext((id)::text) % 4) = 1",
+                mapstore.buildSelectAllKeysPartitionQuery(1, 4)
+        )
+    }
+}
@@ -0,0 +1,313 @@
+/*
+ * Copyright (C) 2021. OpenLattice, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * You can contact the owner of the copyright at support@openlattice.com
+ *
+ *
+ */
+package com.openlattice.postgres.mapstores
+
+import com.openlattice.postgres.PostgresDatatype
+import com.openlattice.postgres.PostgresHash
+import com.zaxxer.hikari.HikariDataSource
+import org.mockito.Mockito
+import org.mockito.stubbing.Answer
+import org.postgresql.PGConnection
+import org.postgresql.copy.CopyIn
+import org.postgresql.copy.CopyManager
+import java.io.ByteArrayOutputStream
+import java.nio.ByteBuffer
+import java.nio.charset.StandardCharsets
+import java.sql.Connection
+import java.sql.PreparedStatement
+import java.sql.ResultSet
+import java.sql.SQLException
+import java.sql.Statement
+import java.util.*
+import java.util.concurrent.ConcurrentHashMap
+
+/**
+ * A single write or query executed against a [FakeDatabase].
+ */
+data class FakeStatement(val sql: String, val parameters: Map<Int, Any?>) {
+    /**
+     * The keys bound to the statement, with arrays flattened and padding removed.
+     */
+    val keys: Set<Long>
+        get() = parameters.values.flatMap { value ->
+            when (value) {
+                is java.sql.Array -> (value.array as Array<*>).toList()
+                else -> listOf(value)
+            }
+        }.filterIsInstance<Long>().toSet()
+}
+
+/**
+ * In memory table of `id bigint` to `value text` rows behind a mocked [HikariDataSource], which understands the
+ * statements issued by [TestMapstore].
+ *
+ * Connections with auto-commit disabled buffer their writes until they are committed. Writes that [failWrite] returns
+ * an exception for are rejected with that exception. Rows written using binary copy are staged per connection and
+ * written to the table by the next update run through a plain [Statement]. Citus catalog queries are answered as if
+ * the table were distributed over two shards by its `id` column.
+ *
+ * @author Matthew Tamayo-Rios &lt;matthew@openlattice.com&gt;
+ */
+class FakeDatabase(poolSize: Int = 8, readOnly: Boolean = false) {
+    companion object {
+        private const val COPY_HEADER_LENGTH = 19
+
+        /**
+         * Rows of `pg_dist_shard` for a table with two shards, one for negative and one for nonnegative hashes.
+         */
+        private val SHARDS = listOf(listOf<Number>(100L, Int.MIN_VALUE, -1), listOf<Number>(101L, 0, Int.MAX_VALUE))
+
+        /**
+         * @return The shard of `pg_dist_shard` that stores a key.
+         */
+        fun shardOf(key: Long): Long = if (PostgresHash.hash(PostgresDatatype.BIGINT, key).asInt < 0) 100L else 101L
+    }
+
+    val rows: MutableMap<Long, String> = ConcurrentHashMap()
+    val queries: MutableList<FakeStatement> = Collections.synchronizedList(mutableListOf())
+    val commits: MutableList<List<FakeStatement>> = Collections.synchronizedList(mutableListOf())
+    val executed: MutableList<String> = Collections.synchronizedList(mutableListOf())
+
+    @Volatile
+    var beforeWrite: (FakeStatement) -> Unit = {}
+
+    @Volatile
+    var failWrite: (FakeStatement) -> SQLException? = { null }
+
+    val dataSource: HikariDataSource = Mockito.mock(HikariDataSource::class.java)
+
+    init {
+        Mockito.`when`(dataSource.connection).thenAnswer { connection() }
+        Mockito.`when`(dataSource.maximumPoolSize).thenReturn(poolSize)
+        Mockito.`when`(dataSource.isReadOnly).thenReturn(readOnly)
+        Mockito.`when`(dataSource.poolName).thenReturn("fake")
+    }
+
+    private fun connection(): Connection {
+        var autoCommit = true
+        val pending = mutableListOf<FakeStatement>()
+        val staged = mutableListOf<FakeStatement>()
+        val write: (FakeStatement) -> Unit = { statement ->
+            beforeWrite(statement)
+            failWrite(statement)?.let { throw it }
+            if (autoCommit) {
+                apply(statement)
+                commits.add(listOf(statement))
+            } else {
+                pending.add(statement)
+            }
+        }
+
+        return Mockito.mock(Connection::class.java, Answer<Any?> { invocation ->
+            when (invocation.method.name) {
+                "setAutoCommit" -> {
+                    autoCommit = invocation.arguments[0] as Boolean
+                    null
+                }
+                "getAutoCommit" -> autoCommit
+                "commit" -> {
+                    pending.forEach(::apply)
+                    commits.add(pending.toList())
+                    pending.clear()
+                    null
+                }
+                "rollback" -> {
+                    pending.clear()
+                    null
+                }
+                "createArrayOf" -> array(invocation.arguments[0] as String, invocation.arguments[1] as Array<*>)
+                "prepareStatement" -> preparedStatement(invocation.arguments[0] as String, write)
+                "createStatement" -> statement(staged, write)
+                "unwrap" -> pgConnection(staged)
+                else -> Mockito.RETURNS_DEFAULTS.answer(invocation)
+            }
+        })
+    }
+
+    /**
+     * Statements are only used to create the copy staging table and to merge staged rows into the table.
+     */
+    private fun statement(staged: MutableList<FakeStatement>, write: (FakeStatement) -> Unit): Statement {
+        return Mockito.mock(Statement::class.java, Answer<Any?> { invocation ->
+            when (invocation.method.name) {
+                "execute" -> {
+                    executed.add(invocation.arguments[0] as String)
+                    false
+                }
+                "executeUpdate" -> {
+                    executed.add(invocation.arguments[0] as String)
+                    val merged = staged.size
+                    staged.forEach(write)
+                    staged.clear()
+                    merged
+                }
+                else -> Mockito.RETURNS_DEFAULTS.answer(invocation)
+            }
+        })
+    }
+
+    /**
+     * Decodes rows written using binary copy into `staged`.
+     */
+    private fun pgConnection(staged: MutableList<FakeStatement>): PGConnection {
+        val copyManager = Mockito.mock(CopyManager::class.java, Answer<Any?> { invocation ->
+            if (invocation.method.name == "copyIn") {
+                executed.add(invocation.arguments[0] as String)
+                copyIn(staged)
+            } else {
+                Mockito.RETURNS_DEFAULTS.answer(invocation)
+            }
+        })
+        return Mockito.mock(PGConnection::class.java, Answer<Any?> { invocation ->
+            if (invocation.method.name == "getCopyAPI") copyManager else Mockito.RETURNS_DEFAULTS.answer(invocation)
+        })
+    }
+
+    private fun copyIn(staged: MutableList<FakeStatement>): CopyIn {
+        val data = ByteArrayOutputStream()
+        var active = true
+
+        return Mockito.mock(CopyIn::class.java, Answer<Any?> { invocation ->
+            when (invocation.method.name) {
+                "writeToCopy" -> {
+                    val bytes = invocation.arguments[0] as ByteArray
+                    data.write(bytes, invocation.arguments[1] as Int, invocation.arguments[2] as Int)
+                    null
+                }
+                "endCopy" -> {
+                    active = false
+                    val buffer = ByteBuffer.wrap(data.toByteArray())
+                    buffer.position(COPY_HEADER_LENGTH)
+                    var rows = 0L
+                    while (buffer.short.toInt() != -1) {
+                        buffer.int
+                        val id = buffer.long
+                        val value = ByteArray(buffer.int)
+                        buffer.get(value)
+                        staged.add(FakeStatement("INSERT", mapOf(1 to id, 2 to String(value, StandardCharsets.UTF_8))))
+                        rows++
+                    }
+                    rows
+                }
+                "isActive" -> active
+                "cancelCopy" -> {
+                    active = false
+                    null
+                }
+                else -> Mockito.RETURNS_DEFAULTS.answer(invocation)
+            }
+        })
+    }
+
+    private fun preparedStatement(sql: String, write: (FakeStatement) -> Unit): PreparedStatement {
+        val parameters = mutableMapOf<Int, Any?>()
+        val batch = mutableListOf<FakeStatement>()
+
+        return Mockito.mock(PreparedStatement::class.java, Answer<Any?> { invocation ->
+            val name = invocation.method.name
+            when {
+                name.startsWith("set") && invocation.arguments.size == 2 && invocation.arguments[0] is Int -> {
+                    parameters[invocation.arguments[0] as Int] = invocation.arguments[1]
+                    null
+                }
+                name == "clearParameters" -> {
+                    parameters.clear()
+                    null
+                }
+                name == "addBatch" -> {
+                    batch.add(FakeStatement(sql, parameters.toMap()))
+                    null
+                }
+                name == "clearBatch" -> {
+                    batch.clear()
+                    null
+                }
+                name == "executeBatch" -> {
+                    val statements = batch.toList()
+                    batch.clear()
+                    statements.forEach(write)
+                    IntArray(statements.size) { 1 }
+                }
+                name == "execute" || name == "executeUpdate" -> {
+                    write(FakeStatement(sql, parameters.toMap()))
+                    if (name == "execute") false else 1
+                }
+                name == "executeQuery" -> when {
+                    sql.contains("worker_hash") -> catalog(
+                            listOf(listOf(PostgresHash.hash(PostgresDatatype.BIGINT, parameters[1]).asInt))
+                    )
+                    sql.contains("pg_dist_shard") -> catalog(SHARDS)
+                    else -> query(FakeStatement(sql, parameters.toMap()))
+                }
+                else -> Mockito.RETURNS_DEFAULTS.answer(invocation)
+            }
+        })
+    }
+
+    private fun apply(write: FakeStatement) {
+        val id = write.parameters[1] as Long
+        when {
+            write.sql.startsWith("INSERT") -> rows[id] = write.parameters[2] as String
+            write.sql.startsWith("DELETE") -> rows.remove(id)
+        }
+    }
+
+    private fun query(statement: FakeStatement): ResultSet {
+        queries.add(statement)
+        val keys = statement.keys
+        val result = rows.entries
+                .filter { keys.isEmpty() || keys.contains(it.key) }
+                .map { it.key to it.value }
+        var row = -1
+
+        return Mockito.mock(ResultSet::class.java, Answer<Any?> { invocation ->
+            when (invocation.method.name) {
+                "next" -> ++row < result.size
+                "getLong" -> result[row].first
+                "getString" -> result[row].second
+                else -> Mockito.RETURNS_DEFAULTS.answer(invocation)
+            }
+        })
+    }
+
+    private fun catalog(rows: List<List<Number>>): ResultSet {
+        var row = -1
+
+        return Mockito.mock(ResultSet::class.java, Answer<Any?> { invocation ->
+            when (invocation.method.name) {
+                "next" -> ++row < rows.size
+                "getInt" -> rows[row][(invocation.arguments[0] as Int) - 1].toInt()
+                "getLong" -> rows[row][(invocation.arguments[0] as Int) - 1].toLong()
+                else -> Mockito.RETURNS_DEFAULTS.answer(invocation)
+            }
+        })
+    }
+
+    private fun array(typeName: String, elements: Array<*>): java.sql.Array {
+        return Mockito.mock(java.sql.Array::class.java, Answer<Any?> { invocation ->
+            when (invocation.method.name) {
+                "getArray" -> elements
+                "getBaseTypeName" -> typeName
+                else -> Mockito.RETURNS_DEFAULTS.answer(invocation)
+            }
+        })
+    }
+}
@@ -0,0 +1,116 @@
+/*
+ * Copyright (C) 2021. OpenLattice, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * You can contact the owner of the copyright at support@openlattice.com
+ *
+ *
+ */
+package com.openlattice.postgres.mapstores
+
+import com.zaxxer.hikari.HikariDataSource
+import org.junit.Assert
+import org.junit.Test
+import java.sql.ResultSet
+
+/**
+ * @author Matthew Tamayo-Rios &lt;matthew@openlattice.com&gt;
+ */
+class MapstoreCacheInvalidationTests {
+    /**
+     * Runs [afterRead] once, after the next row has been read but before the loaded value is put in the cache.
+     */
+    private class SlowLoadMapstore(hds: HikariDataSource) : TestMapstore(hds, localCacheWeight = 100) {
+        @Volatile
+        var afterRead: () -> Unit = {}
+
+        override fun mapToValue(rs: ResultSet): String {
+            val value = super.mapToValue(rs)
+            val hook = afterRead
+            afterRead = {}
+            hook()
+            return value
+        }
+    }
+
+    @Test
+    fun testLoadDuringStoreDoesNotCacheStaleValue() {
+        val db = FakeDatabase()
+        val mapstore = TestMapstore(db.dataSource, localCacheWeight = 100)
+        db.rows[1L] = "old"
+        Assert.assertEquals("old", mapstore.load(1L))
+
+        //A load that runs after the write was started but before it commits reads and caches the old value.
+        db.beforeWrite = { Assert.assertEquals("old", mapstore.load(1L)) }
+        mapstore.store(1L, "new")
+
+        Assert.assertEquals("new", db.rows[1L])
+        Assert.assertEquals("new", mapstore.load(1L))
+    }
+
+    @Test
+    fun testLoadDuringStoreAllDoesNotCacheStaleValue() {
+        val db = FakeDatabase()
+        val mapstore = TestMapstore(db.dataSource, localCacheWeight = 100)
+        db.rows[1L] = "old"
+        db.rows[2L] = "old"
+        Assert.assertEquals(mapOf(1L to "old", 2L to "old"), mapstore.loadAll(listOf(1L, 2L)))
+
+        db.beforeWrite = { mapstore.loadAll(listOf(1L, 2L)) }
+        mapstore.storeAll(mutableMapOf(1L to "new", 2L to "new"))
+
+        Assert.assertEquals(mapOf(1L to "new", 2L to "new"), mapstore.loadAll(listOf(1L, 2L)))
+    }
+
+    @Test
+    fun testLoadDuringDeleteDoesNotCacheStaleValue() {
+        val db = FakeDatabase()
+        val mapstore = TestMapstore(db.dataSource, localCacheWeight = 100)
+        db.rows[1L] = "old"
+        Assert.assertEquals("old", mapstore.load(1L))
+
+        db.beforeWrite = { Assert.assertEquals("old", mapstore.load(1L)) }
+        mapstore.delete(1L)
+
+        Assert.assertNull(mapstore.load(1L))
+    }
+
+    @Test
+    fun testLoadFinishingAfterStoreDoesNotCacheStaleValue() {
+        val db = FakeDatabase()
+        val mapstore = SlowLoadMapstore(db.dataSource)
+        db.rows[1L] = "old"
+
+        //The load reads the old row, then the whole store runs before the load puts what it read in the cache.
+        mapstore.afterRead = { mapstore.store(1L, "new") }
+        Assert.assertEquals("old", mapstore.load(1L))
+
+        Assert.assertEquals("new", db.rows[1L])
+        Assert.assertEquals("new", mapstore.load(1L))
+    }
+
+    @Test
+    fun testLoadAllFinishingAfterStoreDoesNotCacheStaleValue() {
+        val db = FakeDatabase()
+        val mapstore = SlowLoadMapstore(db.dataSource)
+        db.rows[1L] = "old"
+        db.rows[2L] = "old"
+
+        mapstore.afterRead = { mapstore.store(1L, "new") }
+        Assert.assertEquals(mapOf(1L to "old", 2L to "old"), mapstore.loadAll(listOf(1L, 2L)))
+
+        Assert.assertEquals(mapOf(1L to "new", 2L to "old"), mapstore.loadAll(listOf(1L, 2L)))
+    }
+}
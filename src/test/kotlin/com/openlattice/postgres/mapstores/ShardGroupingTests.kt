@@ -0,0 +1,83 @@
+/*
+ * Copyright (C) 2021. OpenLattice, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * You can contact the owner of the copyright at support@openlattice.com
+ *
+ *
+ */
+package com.openlattice.postgres.mapstores
+
+import com.openlattice.postgres.CitusDistributedTableDefinition
+import com.zaxxer.hikari.HikariDataSource
+import org.junit.Assert
+import org.junit.Test
+
+/**
+ * @author Matthew Tamayo-Rios &lt;matthew@openlattice.com&gt;
+ */
+class ShardGroupingTests {
+    companion object {
+        private val TABLE = CitusDistributedTableDefinition("test_map")
+                .addColumns(TestMapstore.ID, TestMapstore.VALUE)
+                .primaryKey(TestMapstore.ID)
+                .distributionColumn(TestMapstore.ID)
+    }
+
+    private class ShardedMapstore(hds: HikariDataSource) : TestAsyncMapstore(hds, table = TABLE),
+            KeyColumnValues<Long> {
+        override fun isShardGroupingEnabled(): Boolean = true
+
+        override fun keyValues(key: Long): Array<Any> = arrayOf(key)
+    }
+
+    @Test
+    fun testLoadAllSendsSingleShardBatches() {
+        val db = FakeDatabase()
+        (1L..40L).forEach { db.rows[it] = "value-$it" }
+        val mapstore = ShardedMapstore(db.dataSource)
+
+        Assert.assertEquals(db.rows, mapstore.loadAll((1L..40L).toList()))
+
+        Assert.assertTrue(db.queries.size > 1)
+        db.queries.forEach { query ->
+            Assert.assertEquals(1, query.keys.map { FakeDatabase.shardOf(it) }.toSet().size)
+        }
+        Assert.assertEquals(setOf(100L, 101L), db.queries.map { FakeDatabase.shardOf(it.keys.first()) }.toSet())
+    }
+
+    @Test
+    fun testStoreAllCommitsSingleShardChunks() {
+        val db = FakeDatabase()
+        val mapstore = ShardedMapstore(db.dataSource)
+        val entries = (1L..40L).associateWith { "value-$it" }
+
+        mapstore.storeAll(entries.toMutableMap())
+
+        Assert.assertEquals(entries, db.rows)
+        db.commits.forEach { commit ->
+            Assert.assertEquals(1, commit.map { FakeDatabase.shardOf(it.parameters[1] as Long) }.toSet().size)
+        }
+    }
+
+    @Test(expected = IllegalStateException::class)
+    fun testShardGroupingRequiresAsyncMapstore() {
+        object : TestMapstore(FakeDatabase().dataSource, table = TABLE), KeyColumnValues<Long> {
+            override fun isShardGroupingEnabled(): Boolean = true
+
+            override fun keyValues(key: Long): Array<Any> = arrayOf(key)
+        }
+    }
+}
@@ -0,0 +1,57 @@
+/*
+ * Copyright (C) 2021. OpenLattice, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * You can contact the owner of the copyright at support@openlattice.com
+ *
+ *
+ */
+package com.openlattice.postgres.mapstores
+
+import com.openlattice.postgres.PostgresTableDefinition
+import com.zaxxer.hikari.HikariDataSource
+import java.sql.PreparedStatement
+import java.sql.ResultSet
+
+/**
+ * Async mapstore over the `id` to `value` table emulated by [FakeDatabase].
+ *
+ * @author Matthew Tamayo-Rios &lt;matthew@openlattice.com&gt;
+ */
+open class TestAsyncMapstore @JvmOverloads constructor(
+        hds: HikariDataSource,
+        batchSize: Int = 8,
+        maxConcurrency: Int = 4,
+        table: PostgresTableDefinition = TestMapstore.TABLE
+) : AbstractAsyncPostgresMapstore<Long, String>("test_map", table, hds, batchSize, maxConcurrency) {
+    override fun generateTestKey(): Long = 1L
+
+    override fun generateTestValue(): String = "value"
+
+    override fun mapToKey(rs: ResultSet): Long = rs.getLong(TestMapstore.ID.name)
+
+    override fun mapToValue(rs: ResultSet): String = rs.getString(TestMapstore.VALUE.name)
+
+    override fun bind(ps: PreparedStatement, key: Long, value: String) {
+        ps.setLong(1, key)
+        ps.setString(2, value)
+        ps.setString(3, value)
+    }
+
+    override fun bind(ps: PreparedStatement, key: Long, offset: Int): Int {
+        ps.setLong(offset, key)
+        return offset + 1
+    }
+}